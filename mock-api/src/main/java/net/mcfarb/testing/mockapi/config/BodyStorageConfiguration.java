@@ -0,0 +1,34 @@
+package net.mcfarb.testing.mockapi.config;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.service.TieredBodyStore;
+
+/**
+ * Registers the TieredBodyStore shared by every controller and the functional
+ * router when mock.api.storage.heap-budget is set. The store's spill file is
+ * deleted when the application context is closed.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "mock.api.storage", name = "heap-budget")
+public class BodyStorageConfiguration {
+
+	private final MockApiConfiguration mockApiConfiguration;
+
+	@Bean
+	public TieredBodyStore tieredBodyStore() {
+		MockApiConfiguration.Storage storage = mockApiConfiguration.getStorage();
+		String spillDir = storage.getSpillDir() != null ? storage.getSpillDir() : System.getProperty("java.io.tmpdir");
+		log.info("Keeping at most {} of response bodies on the heap, spilling to {}", storage.getHeapBudget(),
+				spillDir);
+		return new TieredBodyStore(storage.getHeapBudget().toBytes(), Path.of(spillDir));
+	}
+}
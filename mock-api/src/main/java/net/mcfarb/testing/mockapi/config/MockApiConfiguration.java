@@ -1,12 +1,16 @@
 package net.mcfarb.testing.mockapi.config;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
 import lombok.Data;
+import net.mcfarb.testing.ddmock.model.Capacity;
 
 /**
  * Configuration properties for the Mock API application.
@@ -18,9 +22,38 @@ import lombok.Data;
  *     enabled: true
  *     base-url: http://localhost:9090
  *     timeout-ms: 30000
+ *   discovery:
+ *     enabled: true
+ *     external-dir: /opt/mock-api/mockdata
+ *   functional:
+ *     enabled: true
+ *   compression:
+ *     enabled: true
+ *     min-size: 2048
+ *   templates:
+ *     cache-size: 256
+ *   scenarios:
+ *     max-scopes: 10000
+ *   binary-formats: cbor, smile, msgpack
+ *   lazy:
+ *     enabled: true
+ *     release-source: true
+ *   storage:
+ *     heap-budget: 256MB
+ *     spill-dir: /var/tmp/mock-api
+ *   resources:
+ *     state-dir: /var/lib/mock-api/resources
+ *     compact-every: 10000
+ *   loading:
+ *     parallelism: 8
  *   controllers:
  *     user:
  *       fallback-url: http://localhost:9091
+ *       route-cache-size: 500
+ *       capacity:
+ *         requests-per-second: 200
+ *         max-in-flight: 50
+ *         max-queue: 100
  *     product:
  *       fallback-url: http://localhost:9092
  * </pre>
@@ -35,6 +68,57 @@ public class MockApiConfiguration {
 	 */
 	private Fallback fallback = new Fallback();
 
+	/**
+	 * Auto-discovery of mock files served by a single dispatcher.
+	 */
+	private Discovery discovery = new Discovery();
+
+	/**
+	 * Functional (RouterFunction) entry point for mock routes.
+	 */
+	private Functional functional = new Functional();
+
+	/**
+	 * Pre-compressed response bodies negotiated with Accept-Encoding.
+	 */
+	private Compression compression = new Compression();
+
+	/**
+	 * Response bodies referencing {{path.x}}, {{query.x}} or {{header.x}}.
+	 */
+	private Templates templates = new Templates();
+
+	/**
+	 * Routes answering from response sequences or scenario states.
+	 */
+	private Scenarios scenarios = new Scenarios();
+
+	/**
+	 * Binary formats (cbor, smile, msgpack) every JSON body is also rendered in at
+	 * load time, served to clients whose Accept header prefers them.
+	 */
+	private List<String> binaryFormats = new ArrayList<>();
+
+	/**
+	 * On-first-use binding of mock objects and rendering of responses.
+	 */
+	private Lazy lazy = new Lazy();
+
+	/**
+	 * Heap budget of the response bodies, beyond which cold bodies are spilled to disk.
+	 */
+	private Storage storage = new Storage();
+
+	/**
+	 * Persistence of the collections declared as resources in mock files
+	 */
+	private Resources resources = new Resources();
+
+	/**
+	 * Parallel loading of the mock files at startup
+	 */
+	private Loading loading = new Loading();
+
 	/**
 	 * Per-controller configuration overrides.
 	 * Key is the controller name (e.g., "user", "product").
@@ -66,6 +150,118 @@ public class MockApiConfiguration {
 		private boolean forwardHeaders = true;
 	}
 
+	@Data
+	public static class Discovery {
+		/**
+		 * Enable or disable the dispatcher that serves every mockdata/*.json file
+		 * without a controller subclass per file.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Optional directory scanned for additional *.json mock files.
+		 * Files here replace classpath files with the same name.
+		 */
+		private String externalDir;
+	}
+
+	@Data
+	public static class Functional {
+		/**
+		 * Serve discovered mock files through a RouterFunction that is consulted
+		 * before the annotated controllers. Its route cache is configured as
+		 * controller "functional".
+		 */
+		private boolean enabled = false;
+	}
+
+	@Data
+	public static class Compression {
+		/**
+		 * Build gzip and deflate variants of every response body when the mock
+		 * files are loaded, and serve them to clients accepting those encodings.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Minimum body size in bytes for a compressed variant to be built.
+		 */
+		private int minSize = 2048;
+	}
+
+	@Data
+	public static class Templates {
+		/**
+		 * Number of rendered bodies memoized per templated route, keyed by the
+		 * request values substituted into the body.
+		 */
+		private int cacheSize = 256;
+	}
+
+	@Data
+	public static class Scenarios {
+		/**
+		 * Number of scope header values whose state each scoped scenario keeps;
+		 * the least recently seen value is dropped past it.
+		 */
+		private int maxScopes = 10_000;
+	}
+
+	@Data
+	public static class Lazy {
+		/**
+		 * Bind each mock object and render each route's response when first
+		 * requested rather than at startup. Binding errors then surface on the
+		 * first request instead of failing startup.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Drop the parsed objectValue tree of a mock object once it is bound.
+		 */
+		private boolean releaseSource = false;
+	}
+
+	@Data
+	public static class Storage {
+		/**
+		 * Number of response body bytes kept on the heap, shared by every
+		 * controller. Least recently used bodies beyond it are spilled to a
+		 * memory-mapped file. Unset keeps every body on the heap.
+		 */
+		private DataSize heapBudget;
+
+		/**
+		 * Directory of the spill file. Defaults to java.io.tmpdir.
+		 */
+		private String spillDir;
+	}
+
+	@Data
+	public static class Resources {
+		/**
+		 * Directory persisting the state of resources, one subdirectory per
+		 * controller, so it survives restarts. Unset keeps resources in memory
+		 * and seeds them again on every start.
+		 */
+		private String stateDir;
+
+		/**
+		 * Number of mutations journaled before the state of a resource is
+		 * compacted into a snapshot.
+		 */
+		private int compactEvery = 10000;
+	}
+
+	@Data
+	public static class Loading {
+		/**
+		 * Number of threads parsing mock files, binding mock objects and rendering
+		 * responses at startup, shared by every controller. 0 uses one per core.
+		 */
+		private int parallelism = 0;
+	}
+
 	@Data
 	public static class ControllerConfig {
 		/**
@@ -73,6 +269,18 @@ public class MockApiConfiguration {
 		 * Example: "http://localhost:9091" or "https://user-api.example.com"
 		 */
 		private String fallbackUrl;
+
+		/**
+		 * Maximum number of resolved routes cached by this controller's MockRestProvider,
+		 * keyed by HTTP method, path and query parameters. 0 disables the cache.
+		 */
+		private int routeCacheSize = 0;
+
+		/**
+		 * Rate limit and concurrency cap shared by every route of the controller,
+		 * on top of the capacity each route may declare.
+		 */
+		private Capacity capacity;
 	}
 
 	/**
@@ -89,4 +297,26 @@ public class MockApiConfiguration {
 		}
 		return fallback.getBaseUrl();
 	}
+
+	/**
+	 * Gets the route cache size for a specific controller.
+	 *
+	 * @param controllerName The name of the controller (e.g., "user", "product")
+	 * @return The configured route cache size, or 0 if the cache is disabled
+	 */
+	public int getRouteCacheSizeForController(String controllerName) {
+		ControllerConfig controllerConfig = controllers.get(controllerName);
+		return controllerConfig != null ? controllerConfig.getRouteCacheSize() : 0;
+	}
+
+	/**
+	 * Gets the capacity of a specific controller.
+	 *
+	 * @param controllerName The name of the controller (e.g., "user", "product")
+	 * @return The configured capacity, or null if the controller's capacity is unlimited
+	 */
+	public Capacity getCapacityForController(String controllerName) {
+		ControllerConfig controllerConfig = controllers.get(controllerName);
+		return controllerConfig != null ? controllerConfig.getCapacity() : null;
+	}
 }
@@ -0,0 +1,23 @@
+package net.mcfarb.testing.mockapi.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.RequiredArgsConstructor;
+import net.mcfarb.testing.mockapi.service.MockDataLoader;
+
+/**
+ * Registers the MockDataLoader the controllers and the functional router load
+ * their mock files with, in parallel.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class MockDataLoaderConfiguration {
+
+	private final MockApiConfiguration mockApiConfiguration;
+
+	@Bean
+	public MockDataLoader mockDataLoader() {
+		return new MockDataLoader(mockApiConfiguration.getLoading().getParallelism());
+	}
+}
@@ -0,0 +1,67 @@
+package net.mcfarb.testing.mockapi.config;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.model.Capacity;
+import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
+import net.mcfarb.testing.ddmock.service.CapacityLimiter;
+import net.mcfarb.testing.ddmock.service.JsonProcessor;
+import net.mcfarb.testing.ddmock.service.MockRestProvider;
+import net.mcfarb.testing.ddmock.service.TieredBodyStore;
+import net.mcfarb.testing.mockapi.controller.MockRouterFunction;
+import net.mcfarb.testing.mockapi.service.MockDataDiscovery;
+import net.mcfarb.testing.mockapi.service.MockDataLoader;
+import net.mcfarb.testing.mockapi.service.MockRestProviderFactory;
+
+/**
+ * Registers the functional MockRouterFunction when mock.api.functional.enabled=true.
+ *
+ * The router serves every discovered mockdata file (see mock.api.discovery.external-dir)
+ * and is consulted before the annotated controllers; requests it has no mock for
+ * are handled by the controllers as usual. It is configured like a controller
+ * named "functional" (route cache size, capacity).
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "mock.api.functional", name = "enabled", havingValue = "true")
+public class MockRouterConfiguration {
+
+	public static final String CONTROLLER_NAME = "functional";
+
+	private final MockApiConfiguration mockApiConfiguration;
+	private final ObjectProvider<TieredBodyStore> bodyStore;
+	private final MockDataLoader mockDataLoader;
+
+	@Bean
+	public MockRouterFunction mockRouterFunction() {
+		JsonProcessor jsonProcessor = mockDataLoader.getJsonProcessor();
+		MockRestProvider mockRestProvider = MockRestProviderFactory.createProvider(jsonProcessor,
+				mockApiConfiguration, CONTROLLER_NAME, bodyStore.getIfAvailable());
+		Capacity capacity = mockApiConfiguration.getCapacityForController(CONTROLLER_NAME);
+		CapacityLimiter capacityLimiter = null;
+		if (capacity != null) {
+			capacity.validate();
+			capacityLimiter = new CapacityLimiter(capacity);
+		}
+
+		// loaded on the pool of the MockDataLoader with the controllers, the files parsed in parallel
+		CompletableFuture<Void> loaded = mockDataLoader.submit(CONTROLLER_NAME, () -> {
+			Map<String, MockRestGeneratorInfo> sources = new MockDataDiscovery(jsonProcessor, mockDataLoader)
+					.discover(mockApiConfiguration.getDiscovery().getExternalDir());
+			mockRestProvider.initialize(sources);
+			log.info("[{}] Serving {} mock files through the functional router: {}", CONTROLLER_NAME,
+					sources.size(), sources.keySet());
+			return null;
+		});
+		return new MockRouterFunction(mockRestProvider, loaded, capacityLimiter);
+	}
+}
@@ -3,10 +3,10 @@ package net.mcfarb.testing.mockapi.controller;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpRequest;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,18 +20,23 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.reactive.function.client.WebClient;
-
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import org.springframework.web.server.ServerWebExchange;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.model.Capacity;
 import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
-import net.mcfarb.testing.ddmock.model.MockRestMethodInfo;
+import net.mcfarb.testing.ddmock.service.CapacityLimiter;
 import net.mcfarb.testing.ddmock.service.JsonProcessor;
 import net.mcfarb.testing.ddmock.service.MockRestProvider;
+import net.mcfarb.testing.ddmock.service.PreparedResponse;
+import net.mcfarb.testing.ddmock.service.RouteMatch;
+import net.mcfarb.testing.ddmock.service.TieredBodyStore;
 import net.mcfarb.testing.mockapi.config.MockApiConfiguration;
+import net.mcfarb.testing.mockapi.service.MockDataLoader;
+import net.mcfarb.testing.mockapi.service.MockResponseWriter;
+import net.mcfarb.testing.mockapi.service.MockRestProviderFactory;
 import reactor.core.publisher.Mono;
 
 /**
@@ -49,13 +54,23 @@ public abstract class BaseRestController {
 
 	protected MockRestProvider mockRestProvider;
 	private JsonProcessor jsonProcessor;
+	private final MockResponseWriter responseWriter = new MockResponseWriter();
+	private CapacityLimiter capacityLimiter;
+	// completes once the mock data is loaded, requests arriving earlier wait for it
+	private volatile CompletableFuture<Void> loaded = CompletableFuture.completedFuture(null);
 
 	@Autowired(required = false)
-	private MockApiConfiguration mockApiConfiguration;
+	protected MockApiConfiguration mockApiConfiguration;
 
 	@Autowired(required = false)
 	private WebClient webClient;
 
+	@Autowired(required = false)
+	private TieredBodyStore bodyStore;
+
+	@Autowired(required = false)
+	private MockDataLoader mockDataLoader;
+
 	/**
 	 * Returns the base path prefix that this controller handles.
 	 * For example: "api/user" or "api/product"
@@ -82,6 +97,26 @@ public abstract class BaseRestController {
 		return getConfigFileName();
 	}
 
+	MockResponseWriter getResponseWriter() {
+		return responseWriter;
+	}
+
+	/**
+	 * Returns the limiter of the capacity configured for the whole controller,
+	 * or null if none is.
+	 */
+	CapacityLimiter getCapacityLimiter() {
+		return capacityLimiter;
+	}
+
+	/**
+	 * Returns the loader loading the mock data of every controller in parallel,
+	 * or null when the controller is not managed by Spring.
+	 */
+	protected MockDataLoader getMockDataLoader() {
+		return mockDataLoader;
+	}
+
 	/**
 	 * Returns the fallback base URL for this controller.
 	 * If not overridden, uses the global fallback URL from configuration.
@@ -97,35 +132,29 @@ public abstract class BaseRestController {
 	/**
 	 * Initializes the MockRestProvider with the controller's specific configuration.
 	 * This is called automatically after the bean is constructed.
+	 *
+	 * The mock data is loaded on the pool of the MockDataLoader, in parallel with
+	 * the other controllers, and the application only starts once every controller
+	 * has loaded. Requests reaching the controller while it (re)loads wait for it.
 	 */
 	@PostConstruct
 	protected void initialize() {
+		CompletableFuture<Void> ready = new CompletableFuture<>();
 		try {
-			log.info("[{}] Initializing with configuration from mockdata/{}.json", getBasePath(), getConfigFileName());
-
-			// Setup ObjectMapper
-			DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy, HH:mm:ss");
-			ObjectMapper objectMapper = new ObjectMapper();
-			objectMapper.setPropertyNamingStrategy(PropertyNamingStrategies.LOWER_CAMEL_CASE)
-					.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-					.setDateFormat(dateFormat);
-
-			// Setup JsonProcessor
-			jsonProcessor = new JsonProcessor();
-			jsonProcessor.setObjectMapper(objectMapper);
+			// Setup JsonProcessor with the mock ObjectMapper, shared by every controller
+			jsonProcessor = mockDataLoader != null ? mockDataLoader.getJsonProcessor()
+					: MockRestProviderFactory.createJsonProcessor();
 
 			// Setup MockRestProvider
-			mockRestProvider = new MockRestProvider();
-			mockRestProvider.setJsonProcessor(jsonProcessor);
-
-			// Load configuration from JSON file
-			MockRestGeneratorInfo mockRestInfo = jsonProcessor
-					.buildMockRestInfoObjectFromJson("mockdata/" + getConfigFileName());
-
-			mockRestProvider.initialize(mockRestInfo);
-
-			log.info("[{}] Initialized successfully with {} mock objects",
-					getBasePath(), mockRestProvider.getObjectMap().size());
+			MockRestProvider provider = MockRestProviderFactory.createProvider(jsonProcessor, mockApiConfiguration,
+					getControllerName(), bodyStore);
+
+			Capacity capacity = mockApiConfiguration != null
+					? mockApiConfiguration.getCapacityForController(getControllerName()) : null;
+			if (capacity != null) {
+				capacity.validate();
+				capacityLimiter = new CapacityLimiter(capacity);
+			}
 
 			// Validate fallback URL if enabled
 			if (isFallbackEnabled()) {
@@ -139,12 +168,62 @@ public abstract class BaseRestController {
 				}
 			}
 
+			// requests wait for the new provider from here on
+			loaded = ready;
+			mockRestProvider = provider;
+			Callable<Void> load = () -> {
+				loadMockData(jsonProcessor, provider);
+				log.info("[{}] Initialized successfully with {} mock objects",
+						getBasePath(), provider.getObjectMap().size());
+				return null;
+			};
+			if (mockDataLoader != null) {
+				mockDataLoader.submit(getControllerName(), load).whenComplete((result, error) -> {
+					if (error != null) {
+						log.error("[{}] Failed to initialize controller", getBasePath(), error);
+						ready.completeExceptionally(error);
+					} else {
+						ready.complete(null);
+					}
+				});
+			} else {
+				load.call();
+				ready.complete(null);
+			}
+
 		} catch (Exception e) {
 			log.error("[{}] Failed to initialize controller", getBasePath(), e);
+			ready.completeExceptionally(e);
 			throw new RuntimeException("Failed to initialize " + getBasePath() + " controller", e);
 		}
 	}
 
+	/**
+	 * Commits the pending mutations of persisted resources when the application
+	 * shuts down.
+	 */
+	@PreDestroy
+	protected void destroy() {
+		if (mockRestProvider != null) {
+			mockRestProvider.close();
+		}
+	}
+
+	/**
+	 * Loads the mock configuration into the MockRestProvider.
+	 * By default loads mockdata/{configFileName}.json from the classpath.
+	 * Override to load the configuration from other sources.
+	 */
+	protected void loadMockData(JsonProcessor jsonProcessor, MockRestProvider mockRestProvider) throws Exception {
+		log.info("[{}] Initializing with configuration from mockdata/{}.json", getBasePath(), getConfigFileName());
+
+		// Load configuration from JSON file
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + getConfigFileName());
+
+		mockRestProvider.initialize(mockRestInfo);
+	}
+
 	/**
 	 * Generic handler for all HTTP methods and paths under the base path.
 	 * This method dynamically routes requests based on the configuration loaded in MockRestProvider.
@@ -153,6 +232,10 @@ public abstract class BaseRestController {
 	 * - Request path (supports path parameters like {id})
 	 * - HTTP method (GET, POST, PUT, DELETE, etc.)
 	 * - Query parameters (optional)
+	 *
+	 * Matched mock responses are written straight to the exchange from their
+	 * pre-rendered bytes and the returned Mono completes empty; only 404 and
+	 * fallback responses are returned as a ResponseEntity.
 	 */
 	@RequestMapping(value = "/**", method = {
 			RequestMethod.GET,
@@ -162,10 +245,17 @@ public abstract class BaseRestController {
 			RequestMethod.PATCH
 	})
 	public Mono<ResponseEntity<Object>> handleRequest(
-			ServerHttpRequest request,
+			ServerWebExchange exchange,
 			@RequestParam(required = false) MultiValueMap<String, String> queryParams,
 			@RequestBody(required = false) String requestBody) {
 
+		CompletableFuture<Void> ready = loaded;
+		if (!ready.isDone()) {
+			return Mono.fromFuture(ready, true)
+					.then(Mono.defer(() -> handleRequest(exchange, queryParams, requestBody)));
+		}
+
+		ServerHttpRequest request = exchange.getRequest();
 		String requestPath = request.getURI().getPath();
 		String httpMethod = request.getMethod().name();
 
@@ -181,10 +271,10 @@ public abstract class BaseRestController {
 					));
 		}
 
-		// Find matching method in configuration
-		MockRestMethodInfo methodInfo = mockRestProvider.findRestMethod(requestPath, httpMethod, queryParamMap);
+		// Find matching method and its path parameters in a single pass
+		RouteMatch match = mockRestProvider.match(requestPath, httpMethod, queryParamMap);
 
-		if (methodInfo == null) {
+		if (match == null) {
 			log.warn("[{}] No mock configuration found for: {} {}", getBasePath(), httpMethod, requestPath);
 
 			// Try fallback if enabled
@@ -200,28 +290,17 @@ public abstract class BaseRestController {
 							"method", httpMethod
 					)));
 		}
-
-		// Extract path parameters if the pattern contains them
-		Map<String, String> pathParams = mockRestProvider.extractPathParameters(methodInfo.getPath(), requestPath);
-		if (!pathParams.isEmpty()) {
-			log.debug("[{}] Extracted path parameters: {}", getBasePath(), pathParams);
-		}
-
-		// Get response object from configuration
-		Object responseObject = mockRestProvider.getResponseObject(methodInfo);
-
-		// Build response with configured status code and headers
-		int statusCode = methodInfo.getStatusCode() != null ? methodInfo.getStatusCode() : HttpStatus.OK.value();
-		ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.status(statusCode);
-
-		// Add custom headers if configured
-		if (methodInfo.getHeaders() != null && !methodInfo.getHeaders().isEmpty()) {
-			methodInfo.getHeaders().forEach(responseBuilder::header);
+		if (log.isDebugEnabled() && !match.getPathVariables().isEmpty()) {
+			log.debug("[{}] Extracted path parameters: {}", getBasePath(), match.getPathVariables());
 		}
 
-		log.debug("[{}] Returning response with status: {}", getBasePath(), statusCode);
+		// Write the response rendered when the configuration was loaded
+		PreparedResponse response = match.getResponse();
+		log.debug("[{}] Returning response with status: {}", getBasePath(), response.getStatus());
 
-		return Mono.just(responseBuilder.body(responseObject));
+		// the body has been read already, so hand it to the writer for resource routes
+		exchange.getAttributes().put(MockResponseWriter.REQUEST_BODY_ATTRIBUTE, requestBody != null ? requestBody : "");
+		return responseWriter.write(exchange, match, capacityLimiter).then(Mono.empty());
 	}
 
 	/**
@@ -0,0 +1,60 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
+import net.mcfarb.testing.ddmock.service.JsonProcessor;
+import net.mcfarb.testing.ddmock.service.MockRestProvider;
+import net.mcfarb.testing.mockapi.service.MockDataDiscovery;
+
+/**
+ * Single dispatcher serving every mock file found under mockdata/ (classpath and
+ * the optional external directory) without a controller subclass per file.
+ *
+ * The basePath of every discovered file is merged into one route table, so adding
+ * mock services needs no code and does not add request mappings. Controllers with
+ * a more specific @RequestMapping, such as UserController, still take precedence
+ * for their own paths.
+ *
+ * Enable with:
+ * <pre>
+ * mock.api.discovery.enabled=true
+ * mock.api.discovery.external-dir=/opt/mock-api/mockdata
+ * </pre>
+ */
+@Slf4j
+@RestController
+@ConditionalOnProperty(prefix = "mock.api.discovery", name = "enabled", havingValue = "true")
+public class MockDispatcherController extends BaseRestController {
+
+	@Override
+	protected String getBasePath() {
+		return "/";
+	}
+
+	@Override
+	protected String getConfigFileName() {
+		return "*";
+	}
+
+	@Override
+	protected String getControllerName() {
+		return "discovery";
+	}
+
+	@Override
+	protected void loadMockData(JsonProcessor jsonProcessor, MockRestProvider mockRestProvider) throws Exception {
+		String externalDir = mockApiConfiguration != null ? mockApiConfiguration.getDiscovery().getExternalDir()
+				: null;
+		Map<String, MockRestGeneratorInfo> sources = new MockDataDiscovery(jsonProcessor, getMockDataLoader())
+				.discover(externalDir);
+
+		mockRestProvider.initialize(sources);
+
+		log.info("[{}] Serving {} discovered mock files: {}", getBasePath(), sources.size(), sources.keySet());
+	}
+}
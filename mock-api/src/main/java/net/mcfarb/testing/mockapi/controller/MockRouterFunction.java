@@ -0,0 +1,100 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.service.CapacityLimiter;
+import net.mcfarb.testing.ddmock.service.MockRestProvider;
+import net.mcfarb.testing.ddmock.service.PreparedResponse;
+import net.mcfarb.testing.ddmock.service.RouteMatch;
+import net.mcfarb.testing.mockapi.service.MockResponseWriter;
+import reactor.core.publisher.Mono;
+
+/**
+ * Functional entry point serving mock routes straight from a MockRestProvider,
+ * without annotated argument resolution.
+ *
+ * The path and query are read from the ServerRequest only while routing; the query
+ * string is parsed only when the request has one, and the request body is only
+ * read by the routes of a resource. Requests without a matching mock
+ * are not routed, so they fall through to the annotated controllers (and their
+ * fallback handling).
+ *
+ * The provider is loaded by the MockDataLoader; requests arriving before it is
+ * loaded wait for it, and fail with the cause of the failure if the load fails.
+ */
+@Slf4j
+public class MockRouterFunction implements RouterFunction<ServerResponse> {
+
+	private final MockRestProvider mockRestProvider;
+	private final CompletableFuture<Void> loaded;
+	private final CapacityLimiter capacityLimiter;
+	private final MockResponseWriter responseWriter = new MockResponseWriter();
+
+	/**
+	 * @param loaded          a future completing once the provider is loaded
+	 * @param capacityLimiter the capacity shared by every route of the router, or null
+	 */
+	public MockRouterFunction(MockRestProvider mockRestProvider, CompletableFuture<Void> loaded,
+			CapacityLimiter capacityLimiter) {
+		this.mockRestProvider = mockRestProvider;
+		this.loaded = loaded;
+		this.capacityLimiter = capacityLimiter;
+	}
+
+	MockRestProvider getMockRestProvider() {
+		return mockRestProvider;
+	}
+
+	/**
+	 * Returns the limiter of the capacity configured for the router, or null if
+	 * none is.
+	 */
+	CapacityLimiter getCapacityLimiter() {
+		return capacityLimiter;
+	}
+
+	MockResponseWriter getResponseWriter() {
+		return responseWriter;
+	}
+
+	/**
+	 * Commits the pending mutations of persisted resources; called when the
+	 * application context closes.
+	 */
+	public void close() {
+		mockRestProvider.close();
+	}
+
+	@Override
+	public Mono<HandlerFunction<ServerResponse>> route(ServerRequest request) {
+		if (!loaded.isDone() || loaded.isCompletedExceptionally()) {
+			// waits for the load, or errors with the exception it failed with
+			return Mono.fromFuture(loaded, true).then(Mono.defer(() -> route(request)));
+		}
+
+		Map<String, String> queryParams = null;
+		if (request.uri().getRawQuery() != null) {
+			queryParams = request.queryParams().toSingleValueMap();
+		}
+
+		RouteMatch match = mockRestProvider.match(request.uri().getPath(), request.method().name(), queryParams);
+		if (match == null) {
+			return Mono.empty();
+		}
+		return Mono.just(serverRequest -> handle(match));
+	}
+
+	private Mono<ServerResponse> handle(RouteMatch match) {
+		// Status, headers and body are all written from the pre-rendered response
+		PreparedResponse response = match.getResponse();
+		return ServerResponse.status(response.getStatus())
+				.build((exchange, context) -> responseWriter.write(exchange, match, capacityLimiter));
+	}
+}
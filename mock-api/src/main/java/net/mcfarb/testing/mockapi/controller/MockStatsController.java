@@ -0,0 +1,82 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import net.mcfarb.testing.ddmock.model.CacheStats;
+import net.mcfarb.testing.ddmock.service.CapacityLimiter;
+import net.mcfarb.testing.ddmock.service.MockRestProvider;
+import net.mcfarb.testing.ddmock.service.TieredBodyStore;
+import net.mcfarb.testing.mockapi.config.MockRouterConfiguration;
+import net.mcfarb.testing.mockapi.service.MockResponseWriter;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reports runtime statistics of the configuration-driven controllers and of
+ * the functional router, keyed by controller name, and of the body storage
+ * shared by all of them when a heap budget is configured.
+ *
+ * Example: GET /mock-api/stats
+ * <pre>
+ * { "user": { "routeCache": { "hits": 90, "misses": 10, "size": 10, "maxSize": 500, "hitRatio": 0.9 },
+ *             "objects": { "total": 40, "untouched": 31 },
+ *             "faults": { "error": 12, "reset": 3, "truncate": 0, "hang": 1 },
+ *             "capacity": { "inFlight": 48, "queued": 3, "rateLimited": 120, "rejected": 7 } },
+ *   "storage": { "heapBudget": 268435456, "heapBytes": 268211712, "spilledBodies": 1200, ... } }
+ * </pre>
+ */
+@RestController
+@RequestMapping("/mock-api/stats")
+public class MockStatsController {
+
+	@Autowired(required = false)
+	private List<BaseRestController> controllers = List.of();
+
+	@Autowired(required = false)
+	private MockRouterFunction routerFunction;
+
+	@Autowired(required = false)
+	private TieredBodyStore bodyStore;
+
+	@GetMapping
+	public Mono<Map<String, Object>> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		for (BaseRestController controller : controllers) {
+			stats.put(controller.getControllerName(), providerStats(controller.mockRestProvider,
+					controller.getResponseWriter(), controller.getCapacityLimiter()));
+		}
+		if (routerFunction != null) {
+			stats.put(MockRouterConfiguration.CONTROLLER_NAME, providerStats(routerFunction.getMockRestProvider(),
+					routerFunction.getResponseWriter(), routerFunction.getCapacityLimiter()));
+		}
+		if (bodyStore != null) {
+			stats.put("storage", bodyStore.getStats());
+		}
+		return Mono.just(stats);
+	}
+
+	private Map<String, Object> providerStats(MockRestProvider mockRestProvider, MockResponseWriter responseWriter,
+			CapacityLimiter capacityLimiter) {
+		Map<String, Object> providerStats = new LinkedHashMap<>();
+		CacheStats routeCacheStats = mockRestProvider.getRouteCacheStats();
+		if (routeCacheStats != null) {
+			providerStats.put("routeCache", routeCacheStats);
+		}
+		// untouched objects are the ones lazy loading never had to bind
+		Map<String, Integer> objectStats = new LinkedHashMap<>();
+		objectStats.put("total", mockRestProvider.getObjectMap().size());
+		objectStats.put("untouched", mockRestProvider.getUntouchedObjectCount());
+		providerStats.put("objects", objectStats);
+		providerStats.put("faults", responseWriter.getInjectedFaults());
+		if (capacityLimiter != null) {
+			providerStats.put("capacity", capacityLimiter.getStats());
+		}
+		return providerStats;
+	}
+}
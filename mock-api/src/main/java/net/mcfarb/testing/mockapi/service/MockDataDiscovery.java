@@ -0,0 +1,120 @@
+package net.mcfarb.testing.mockapi.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
+import net.mcfarb.testing.ddmock.service.JsonProcessor;
+
+/**
+ * Finds every mock file under mockdata/ on the classpath and, optionally, in an
+ * external directory, and parses the ones that declare REST APIs.
+ *
+ * Files are keyed by their name without the .json extension. A file in the
+ * external directory replaces a classpath file with the same name.
+ *
+ * Given a MockDataLoader, the files are parsed in parallel on its pool, each
+ * timed under its file name.
+ */
+@Slf4j
+public class MockDataDiscovery {
+
+	private static final String CLASSPATH_PATTERN = "classpath*:mockdata/*.json";
+
+	private final ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+	private final JsonProcessor jsonProcessor;
+	private final MockDataLoader loader;
+
+	public MockDataDiscovery(JsonProcessor jsonProcessor) {
+		this(jsonProcessor, null);
+	}
+
+	/**
+	 * @param loader the loader parsing the files in parallel, or null to parse them one by one
+	 */
+	public MockDataDiscovery(JsonProcessor jsonProcessor, MockDataLoader loader) {
+		this.jsonProcessor = jsonProcessor;
+		this.loader = loader;
+	}
+
+	/**
+	 * Parses all discovered mock files.
+	 *
+	 * @param externalDir optional directory with additional *.json files, may be null
+	 * @return the parsed files keyed by name, classpath files first
+	 */
+	public Map<String, MockRestGeneratorInfo> discover(String externalDir) throws IOException {
+		Map<String, Resource> resources = new LinkedHashMap<>();
+		for (Resource resource : resolver.getResources(CLASSPATH_PATTERN)) {
+			resources.putIfAbsent(sourceName(resource), resource);
+		}
+		if (externalDir != null && !externalDir.isEmpty()) {
+			File directory = new File(externalDir);
+			if (!directory.isDirectory()) {
+				throw new IOException("Mock data directory " + externalDir + " does not exist");
+			}
+			String pattern = "file:" + directory.getAbsolutePath() + "/*.json";
+			for (Resource resource : resolver.getResources(pattern)) {
+				if (resources.put(sourceName(resource), resource) != null) {
+					log.info("{} from {} replaces the classpath mock file", resource.getFilename(), externalDir);
+				}
+			}
+		}
+
+		Map<String, CompletableFuture<MockRestGeneratorInfo>> parsed = new LinkedHashMap<>();
+		for (Map.Entry<String, Resource> entry : resources.entrySet()) {
+			parsed.put(entry.getKey(), parse(entry.getValue()));
+		}
+
+		Map<String, MockRestGeneratorInfo> sources = new LinkedHashMap<>();
+		for (Map.Entry<String, Resource> entry : resources.entrySet()) {
+			MockRestGeneratorInfo mockRestInfo = join(parsed.get(entry.getKey()));
+			// files that only define mock services are not served over REST
+			if (mockRestInfo.getMockRestApis() == null || mockRestInfo.getMockRestApis().isEmpty()) {
+				log.debug("Skipping {}, it declares no mockRestApis", entry.getValue().getDescription());
+				continue;
+			}
+			sources.put(entry.getKey(), mockRestInfo);
+		}
+		return sources;
+	}
+
+	private CompletableFuture<MockRestGeneratorInfo> parse(Resource resource) throws IOException {
+		if (loader == null) {
+			return CompletableFuture.completedFuture(read(resource));
+		}
+		return loader.submit(resource.getFilename(), () -> read(resource));
+	}
+
+	private MockRestGeneratorInfo read(Resource resource) throws IOException {
+		return jsonProcessor.buildMockRestInfoObjectFromStream(resource.getInputStream(), resource.getDescription());
+	}
+
+	private static MockRestGeneratorInfo join(CompletableFuture<MockRestGeneratorInfo> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException ioException) {
+				throw ioException;
+			}
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw e;
+		}
+	}
+
+	private String sourceName(Resource resource) {
+		String filename = resource.getFilename();
+		return filename.substring(0, filename.length() - ".json".length());
+	}
+}
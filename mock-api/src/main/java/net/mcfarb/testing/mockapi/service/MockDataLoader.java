@@ -0,0 +1,119 @@
+package net.mcfarb.testing.mockapi.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.service.JsonProcessor;
+
+/**
+ * Loads the mock data of every controller in parallel at startup.
+ *
+ * Controllers submit their load from @PostConstruct instead of running it, so
+ * all of them load at once on a ForkJoinPool sized to the cores. Within a load,
+ * mock files are parsed as separate tasks, and the MockRestProvider binds the
+ * objects and renders the routes with parallel streams, which run as fork-join
+ * tasks of the same pool.
+ *
+ * Every load is part of a shared readiness future. Once all singletons are
+ * created, the loader waits for it, so a mock file that fails to load still
+ * fails the startup, and the server only starts once everything is loaded. The
+ * time taken by each mock file and controller is then logged, slowest first.
+ *
+ * Mock files are read with one JsonProcessor shared by every controller, as
+ * its ObjectMapper is thread safe once configured.
+ */
+@Slf4j
+public class MockDataLoader implements SmartInitializingSingleton, DisposableBean {
+
+	private final ForkJoinPool pool;
+	private final JsonProcessor jsonProcessor = MockRestProviderFactory.createJsonProcessor();
+	private final Queue<CompletableFuture<?>> loads = new ConcurrentLinkedQueue<>();
+	private final Queue<Timing> timings = new ConcurrentLinkedQueue<>();
+	private final long createdNanos = System.nanoTime();
+
+	/**
+	 * @param parallelism the number of threads loading at once, 0 for one per core
+	 */
+	public MockDataLoader(int parallelism) {
+		this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+	}
+
+	public JsonProcessor getJsonProcessor() {
+		return jsonProcessor;
+	}
+
+	/**
+	 * Runs a task on the loading pool, timed under the given name, e.g. the name
+	 * of the mock file it parses or of the controller it loads. The task is part
+	 * of the readiness future.
+	 *
+	 * @return a future completing with the task's result, or with its exception
+	 */
+	public <T> CompletableFuture<T> submit(String name, Callable<T> task) {
+		CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+			long start = System.nanoTime();
+			try {
+				return task.call();
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			} finally {
+				timings.add(new Timing(name, System.nanoTime() - start));
+			}
+		}, pool);
+		loads.add(future);
+		return future;
+	}
+
+	/**
+	 * Returns a future completing once every task submitted so far has, or with
+	 * the exception of the first one that failed.
+	 */
+	public CompletableFuture<Void> ready() {
+		return CompletableFuture.allOf(loads.toArray(CompletableFuture[]::new));
+	}
+
+	/**
+	 * Waits for the loads submitted while the singletons were created, and logs
+	 * how long each of them took.
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		try {
+			ready().join();
+		} catch (CompletionException e) {
+			throw new IllegalStateException("Failed to load the mock data", e.getCause());
+		}
+		List<Timing> sorted = new ArrayList<>(timings);
+		sorted.sort(Comparator.comparingLong(Timing::getNanos).reversed());
+		String perTask = sorted.stream()
+				.map(timing -> timing.getName() + " " + TimeUnit.NANOSECONDS.toMillis(timing.getNanos()) + " ms")
+				.collect(Collectors.joining(", "));
+		log.info("Loaded the mock data in {} ms on {} threads: {}",
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - createdNanos), pool.getParallelism(), perTask);
+	}
+
+	@Override
+	public void destroy() {
+		pool.shutdown();
+	}
+
+	@Value
+	private static class Timing {
+		String name;
+		long nanos;
+	}
+}
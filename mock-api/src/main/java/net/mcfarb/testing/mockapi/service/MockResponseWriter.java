@@ -0,0 +1,771 @@
+package net.mcfarb.testing.mockapi.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import io.netty.channel.ChannelOption;
+import net.mcfarb.testing.ddmock.model.Faults;
+import net.mcfarb.testing.ddmock.model.Faults.Fault;
+import net.mcfarb.testing.ddmock.model.Latency;
+import net.mcfarb.testing.ddmock.model.MockRestMethodInfo;
+import net.mcfarb.testing.ddmock.model.Page;
+import net.mcfarb.testing.ddmock.model.Pagination;
+import net.mcfarb.testing.ddmock.model.Throttle;
+import net.mcfarb.testing.ddmock.service.CapacityLimiter;
+import net.mcfarb.testing.ddmock.service.CapacityLimiter.Permit;
+import net.mcfarb.testing.ddmock.service.MockRoute;
+import net.mcfarb.testing.ddmock.service.PreparedBody;
+import net.mcfarb.testing.ddmock.service.PreparedResponse;
+import net.mcfarb.testing.ddmock.service.ResourceStore.Operation;
+import net.mcfarb.testing.ddmock.service.ResourceStore.Result;
+import net.mcfarb.testing.ddmock.service.ResponseTemplate;
+import net.mcfarb.testing.ddmock.service.RouteMatch;
+import net.mcfarb.testing.ddmock.service.RouteScenario;
+import net.mcfarb.testing.ddmock.service.VariantSelector;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+/**
+ * Writes the responses pre-rendered by a MockRestProvider to the exchange.
+ *
+ * The body bytes are wrapped in a DataBuffer and written as is, so responses are
+ * never serialized again per request. Used by both the annotated controllers and
+ * the functional router.
+ *
+ * When the response has compressed variants, the one to send is chosen from the
+ * request's Accept-Encoding header; the variants were built at load time, so no
+ * compression happens while writing. The ETag of each variant is precomputed as
+ * well, so conditional requests only cost a header comparison.
+ *
+ * File-backed bodies are transferred from their file without being read onto
+ * the heap, and bodies spilled by a TieredBodyStore are written straight from
+ * their memory-mapped region. List bodies of streamed routes are flushed one
+ * element at a time, and paginated routes write the requested page straight
+ * from the pre-serialized elements. Templated bodies are rendered from the
+ * matched path variables, query parameters and headers, reusing the template's
+ * memoized rendering when the same values were seen before.
+ *
+ * JSON bodies also rendered in binary formats (CBOR, Smile, MessagePack) are
+ * sent in the format the request's Accept header prefers, JSON on ties.
+ *
+ * Routes declaring a latency are delayed on a Reactor timer before anything is
+ * written, and throttled routes trickle their body in chunks paced by timers.
+ * Faults are drawn per request from the ThreadLocalRandom, so injecting them
+ * takes no lock. Routes and controllers declaring a capacity admit requests
+ * through their CapacityLimiter first, answering the excess with a 429 or 503.
+ *
+ * Routes generated for a resource read and write the elements of its
+ * ResourceStore instead of a pre-rendered response. Routes with a scenario, or
+ * a returnId sequence, send the response of the state the request moves them
+ * out of, selected by a compare-and-set once the request is admitted. Routes
+ * with variants send the one their alias table selects, at random or by a hash
+ * of a request value.
+ */
+public class MockResponseWriter {
+
+	static final String TOTAL_COUNT = "X-Total-Count";
+	static final String NEXT_CURSOR = "X-Next-Cursor";
+	private static final String LINK = "Link";
+
+	/**
+	 * Exchange attribute holding the request body once an annotated controller has
+	 * read it, as the body of a request can only be read once.
+	 */
+	public static final String REQUEST_BODY_ATTRIBUTE = MockResponseWriter.class.getName() + ".requestBody";
+
+	private static final int FILE_BUFFER_SIZE = 16 * 1024;
+	private static final byte[] EMPTY_BODY = {};
+
+	private static final byte[] ARRAY_START = { '[' };
+	private static final byte[] ARRAY_SEPARATOR = { ',' };
+	private static final byte[] ARRAY_END = { ']' };
+
+	private final Map<Fault, LongAdder> injectedFaults = new EnumMap<>(Fault.class);
+
+	public MockResponseWriter() {
+		for (Fault fault : Fault.values()) {
+			injectedFaults.put(fault, new LongAdder());
+		}
+	}
+
+	/**
+	 * Writes the status, headers and body of the response. Responses with a 200
+	 * status are answered with a bodiless 304 when the request's If-None-Match
+	 * matches the ETag of the selected body variant.
+	 *
+	 * Routes declaring a latency are written once a delay drawn from it has
+	 * elapsed. The delay is a timer of the parallel scheduler rather than a
+	 * sleeping thread, so delayed requests hold no event loop or worker thread.
+	 *
+	 * Routes declaring faults may then answer with an error, reset the
+	 * connection, truncate the body or never answer, each injected fault being
+	 * counted.
+	 *
+	 * @param match the route matched by the request, holding the pre-rendered response
+	 * @return a Mono completing once the response has been written
+	 */
+	public Mono<Void> write(ServerWebExchange exchange, RouteMatch match) {
+		return write(exchange, match, null);
+	}
+
+	/**
+	 * Writes the response once the request is admitted by the capacity of the
+	 * controller and of the route. Requests over a rate limit are answered with
+	 * a 429 and requests a bulkhead has no room for with a 503, both with a
+	 * Retry-After header. A bulkhead permit is held until the response is
+	 * written, including its latency and throttling.
+	 *
+	 * @param controllerLimiter the capacity shared by every route of the controller, or null
+	 * @see #write(ServerWebExchange, RouteMatch)
+	 */
+	public Mono<Void> write(ServerWebExchange exchange, RouteMatch match, CapacityLimiter controllerLimiter) {
+		CapacityLimiter routeLimiter = match.getRoute().getLimiter();
+		if (controllerLimiter == null && routeLimiter == null) {
+			return respond(exchange, match);
+		}
+
+		// rate limits first, so a request refused a token never takes a permit; the route's first, and its
+		// token given back when the controller refuses one, so a refused request spends neither budget
+		ServerHttpResponse response = exchange.getResponse();
+		long routeWait = routeLimiter != null ? routeLimiter.tryTakeToken() : 0;
+		if (routeWait > 0) {
+			return writeRejected(response, HttpStatus.TOO_MANY_REQUESTS, routeLimiter.retryAfterSeconds(routeWait),
+					"Rate limit exceeded");
+		}
+		long controllerWait = controllerLimiter != null ? controllerLimiter.tryTakeToken() : 0;
+		if (controllerWait > 0) {
+			if (routeLimiter != null) {
+				routeLimiter.returnToken();
+			}
+			return writeRejected(response, HttpStatus.TOO_MANY_REQUESTS,
+					controllerLimiter.retryAfterSeconds(controllerWait), "Rate limit exceeded");
+		}
+		return acquire(controllerLimiter).flatMap(controllerPermit -> controllerPermit.isRejected()
+				? writeRejected(response, HttpStatus.SERVICE_UNAVAILABLE, controllerLimiter.retryAfterSeconds(0),
+						"Too many requests in flight")
+				: acquire(routeLimiter).flatMap(routePermit -> routePermit.isRejected()
+						? writeRejected(response, HttpStatus.SERVICE_UNAVAILABLE, routeLimiter.retryAfterSeconds(0),
+								"Too many requests in flight")
+						: respond(exchange, match).doFinally(signal -> routePermit.release()))
+						.doFinally(signal -> controllerPermit.release()));
+	}
+
+	private static Mono<Permit> acquire(CapacityLimiter limiter) {
+		return limiter != null ? limiter.acquire() : Mono.just(Permit.NONE);
+	}
+
+	private Mono<Void> respond(ServerWebExchange exchange, RouteMatch route) {
+		RouteMatch match = selectVariant(exchange, advanceScenario(exchange, route));
+		MockRestMethodInfo method = match.getMethodInfo();
+		Faults faults = method.getFaults();
+		Fault fault = faults != null ? faults.select(ThreadLocalRandom.current().nextDouble()) : null;
+		if (fault != null) {
+			injectedFaults.get(fault).increment();
+		}
+
+		Latency latency = method.getLatency();
+		if (latency != null) {
+			long delay = latency.sampleNanos(ThreadLocalRandom.current());
+			if (delay > 0) {
+				return Mono.delay(Duration.ofNanos(delay))
+						.then(Mono.defer(() -> writeResponse(exchange, match, faults, fault)));
+			}
+		}
+		return writeResponse(exchange, match, faults, fault);
+	}
+
+	/**
+	 * Moves the scenario of the route, if it has one, and returns the match
+	 * sending the response of the state the request observed. The state is
+	 * scoped by the value of the scenario's scope header when it declares one.
+	 */
+	private static RouteMatch advanceScenario(ServerWebExchange exchange, RouteMatch match) {
+		RouteScenario scenario = match.getRoute().getScenario();
+		if (scenario == null) {
+			return match;
+		}
+		String scopeHeader = scenario.getMachine().getScopeHeader();
+		String scope = scopeHeader != null ? exchange.getRequest().getHeaders().getFirst(scopeHeader) : null;
+		PreparedResponse response = scenario.advance(scope);
+		return response != null ? match.withResponse(response) : match;
+	}
+
+	/**
+	 * Returns the match sending the variant selected for the request, if the route
+	 * has variants.
+	 */
+	private static RouteMatch selectVariant(ServerWebExchange exchange, RouteMatch match) {
+		VariantSelector variants = match.getRoute().getVariantSelector();
+		if (variants == null) {
+			return match;
+		}
+		ServerHttpRequest request = exchange.getRequest();
+		return match.withResponse(
+				variants.select(match.getPathVariables(), request.getQueryParams(), request.getHeaders()));
+	}
+
+	/**
+	 * Returns the number of faults injected so far, by fault (error, reset,
+	 * truncate and hang).
+	 */
+	public Map<String, Long> getInjectedFaults() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		injectedFaults.forEach((fault, count) -> counts.put(fault.name().toLowerCase(Locale.ROOT), count.sum()));
+		return counts;
+	}
+
+	private Mono<Void> writeResponse(ServerWebExchange exchange, RouteMatch match, Faults faults, Fault fault) {
+		if (fault == null) {
+			return writeResponse(exchange, match);
+		}
+		return switch (fault) {
+			case ERROR -> writeError(exchange.getResponse(), HttpStatusCode.valueOf(faults.getErrorStatus()),
+					"Injected fault");
+			case RESET -> reset(exchange.getResponse());
+			case TRUNCATE -> writeResponse(
+					exchange.mutate().response(new TruncatingResponse(exchange.getResponse())).build(), match);
+			case HANG -> Mono.never();
+		};
+	}
+
+	private Mono<Void> writeResponse(ServerWebExchange exchange, RouteMatch match) {
+		if (match.getRoute().getResourceStore() != null) {
+			return writeResource(exchange, match);
+		}
+		PreparedResponse prepared = match.getResponse();
+		ServerHttpResponse response = exchange.getResponse();
+		response.setStatusCode(HttpStatusCode.valueOf(prepared.getStatus()));
+		HttpHeaders headers = response.getHeaders();
+		headers.putAll(prepared.getHeaders());
+
+		if (!prepared.hasBody()) {
+			return response.setComplete();
+		}
+		PreparedBody body = prepared.getBody();
+		Throttle throttle = match.getMethodInfo().getThrottle();
+		if (body.hasElements()) {
+			return writeElements(exchange, prepared, body, throttle);
+		}
+		ResponseTemplate template = prepared.getTemplate();
+		if (template != null) {
+			ServerHttpRequest request = exchange.getRequest();
+			body = template.render(match.getPathVariables(), request.getQueryParams(), request.getHeaders());
+		} else if (!body.getFormats().isEmpty() && isJson(headers.getContentType())) {
+			headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+			MediaType format = selectFormat(accept(exchange.getRequest()), headers.getContentType(),
+					body.getFormats());
+			if (format != null) {
+				body = body.getFormat(format);
+				headers.setContentType(format);
+			}
+		}
+		if (!body.getEncodings().isEmpty()) {
+			headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			String encoding = selectEncoding(
+					exchange.getRequest().getHeaders().get(HttpHeaders.ACCEPT_ENCODING), body.getEncodings());
+			if (encoding != null) {
+				body = body.getEncoding(encoding);
+				headers.set(HttpHeaders.CONTENT_ENCODING, encoding);
+			}
+		}
+
+		headers.setETag(body.getETag());
+		if (exchange.checkNotModified(body.getETag())) {
+			return response.setComplete();
+		}
+
+		headers.setContentLength(body.getContentLength());
+		if (body.isFileBacked()) {
+			if (throttle != null) {
+				return writeThrottled(response, DataBufferUtils.read(body.getResource(), response.bufferFactory(),
+						Math.min(throttle.chunkBytes(), FILE_BUFFER_SIZE)), throttle);
+			}
+			return writeFile(response, body.getResource(), body.getContentLength());
+		}
+		// a view of the heap bytes, or of the mapped spill file region of a spilled body
+		PreparedBody content = body;
+		Mono<DataBuffer> buffer = Mono.fromSupplier(() -> response.bufferFactory().wrap(content.getContent()));
+		if (throttle != null) {
+			return writeThrottled(response, buffer.flux(), throttle);
+		}
+		return response.writeWith(buffer);
+	}
+
+	/**
+	 * Executes the operation of a route generated for a resource on its store and
+	 * writes the outcome, once it is durable when the store is persisted. Created
+	 * elements get a Location header pointing at them.
+	 */
+	private Mono<Void> writeResource(ServerWebExchange exchange, RouteMatch match) {
+		MockRoute route = match.getRoute();
+		Operation operation = route.getResourceOperation();
+		boolean hasBody = operation == Operation.CREATE || operation == Operation.REPLACE
+				|| operation == Operation.UPDATE;
+		Mono<byte[]> requestBody = hasBody ? requestBody(exchange) : Mono.just(EMPTY_BODY);
+		return requestBody.flatMap(body -> {
+			Result result = route.getResourceStore().execute(operation, match.getPathVariables().get("id"), body);
+			if (result.getCommitted().isDone() && !result.getCommitted().isCompletedExceptionally()) {
+				return writeResult(exchange, result);
+			}
+			// persisted mutations are acknowledged once their journal record is synced
+			return Mono.fromFuture(result.getCommitted(), true)
+					.then(Mono.just(true))
+					.onErrorReturn(false)
+					.flatMap(committed -> committed ? writeResult(exchange, result)
+							: writeError(exchange.getResponse(), HttpStatus.INTERNAL_SERVER_ERROR,
+									"Failed to persist the resource"));
+		});
+	}
+
+	private Mono<Void> writeResult(ServerWebExchange exchange, Result result) {
+		ServerHttpResponse response = exchange.getResponse();
+		if (result.getError() != null) {
+			return writeError(response, HttpStatusCode.valueOf(result.getStatus()), result.getError());
+		}
+		response.setStatusCode(HttpStatusCode.valueOf(result.getStatus()));
+		if (result.getBody() == null) {
+			return response.setComplete();
+		}
+		HttpHeaders headers = response.getHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.setContentLength(result.getBody().length);
+		if (result.getId() != null) {
+			String path = exchange.getRequest().getURI().getRawPath();
+			headers.setLocation(URI.create((path.endsWith("/") ? path : path + "/")
+					+ UriUtils.encodePathSegment(result.getId(), StandardCharsets.UTF_8)));
+		}
+		return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(result.getBody())));
+	}
+
+	/**
+	 * Returns the request body: the one already read by an annotated controller,
+	 * otherwise the one of the request, joined into a single array.
+	 */
+	private static Mono<byte[]> requestBody(ServerWebExchange exchange) {
+		String body = exchange.getAttribute(REQUEST_BODY_ATTRIBUTE);
+		if (body != null) {
+			return Mono.just(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return DataBufferUtils.join(exchange.getRequest().getBody()).map(buffer -> {
+			byte[] bytes = new byte[buffer.readableByteCount()];
+			buffer.read(bytes);
+			DataBufferUtils.release(buffer);
+			return bytes;
+		}).defaultIfEmpty(EMPTY_BODY);
+	}
+
+	/**
+	 * Writes a body made of List elements: the page selected by the request when
+	 * the route is paginated, otherwise every element. Streamed routes send the
+	 * elements as they are (already framed), others as a JSON array. Pages are
+	 * views over the pre-serialized elements, so nothing is copied or serialized.
+	 */
+	private Mono<Void> writeElements(ServerWebExchange exchange, PreparedResponse prepared, PreparedBody body,
+			Throttle throttle) {
+		ServerHttpResponse response = exchange.getResponse();
+		List<byte[]> elements = body.getElements();
+		String eTag = body.getETag();
+
+		Pagination pagination = prepared.getPagination();
+		if (pagination != null) {
+			Page page;
+			try {
+				page = pagination.resolve(exchange.getRequest().getQueryParams().toSingleValueMap(),
+						elements.size());
+			} catch (IllegalArgumentException e) {
+				return writeBadRequest(response, e.getMessage());
+			}
+			elements = elements.subList(page.getFrom(), page.getTo());
+			// the page is a different representation than the whole list
+			eTag = eTag.substring(0, eTag.length() - 1) + "-" + page.getFrom() + "-" + page.getTo() + "\"";
+			addPageHeaders(exchange.getRequest(), response.getHeaders(), pagination, page);
+		}
+
+		response.getHeaders().setETag(eTag);
+		if (exchange.checkNotModified(eTag)) {
+			return response.setComplete();
+		}
+		if (prepared.getStream() != null) {
+			return writeStream(response, elements, throttle);
+		}
+		return writeJsonArray(response, elements, throttle);
+	}
+
+	/**
+	 * Writes streamed elements, flushing every element on its own. Elements are
+	 * only wrapped as the client's demand requests them, so a slow reader applies
+	 * backpressure instead of the whole body being buffered.
+	 */
+	private Mono<Void> writeStream(ServerHttpResponse response, List<byte[]> elements, Throttle throttle) {
+		Flux<DataBuffer> content = Flux.fromIterable(elements).map(element -> response.bufferFactory().wrap(element));
+		if (throttle != null) {
+			return writeThrottled(response, content, throttle);
+		}
+		return response.writeAndFlushWith(content.map(Mono::just));
+	}
+
+	/**
+	 * Writes elements as a JSON array. The brackets and separators are shared
+	 * constant buffers written between the elements, so the array is never
+	 * assembled in memory.
+	 */
+	private Mono<Void> writeJsonArray(ServerHttpResponse response, List<byte[]> elements, Throttle throttle) {
+		long contentLength = ARRAY_START.length + ARRAY_END.length
+				+ (long) Math.max(0, elements.size() - 1) * ARRAY_SEPARATOR.length;
+		for (byte[] element : elements) {
+			contentLength += element.length;
+		}
+		response.getHeaders().setContentLength(contentLength);
+
+		DataBufferFactory bufferFactory = response.bufferFactory();
+		Flux<DataBuffer> content = Flux.range(0, elements.size())
+				.concatMap(i -> i == 0
+						? Mono.just(bufferFactory.wrap(elements.get(i)))
+						: Flux.just(bufferFactory.wrap(ARRAY_SEPARATOR), bufferFactory.wrap(elements.get(i))));
+		Flux<DataBuffer> array = Flux.concat(
+				Mono.fromSupplier(() -> bufferFactory.wrap(ARRAY_START)),
+				content,
+				Mono.fromSupplier(() -> bufferFactory.wrap(ARRAY_END)));
+		if (throttle != null) {
+			return writeThrottled(response, array, throttle);
+		}
+		return response.writeWith(array);
+	}
+
+	/**
+	 * Writes a body in chunks of at most the throttle's chunk size, each flushed
+	 * on its own. Every chunk waits for the time the previous one takes at the
+	 * throttled rate, so the rate holds whatever the sizes of the buffers are.
+	 * The pauses are Reactor timers, so throttled connections hold no thread.
+	 */
+	private Mono<Void> writeThrottled(ServerHttpResponse response, Flux<DataBuffer> content, Throttle throttle) {
+		int chunkBytes = throttle.chunkBytes();
+		long intervalNanos = throttle.intervalNanos();
+		return response.writeAndFlushWith(Flux.defer(() -> {
+			long[] previousBytes = { 0 };
+			return content
+					.concatMapIterable(buffer -> split(buffer, chunkBytes))
+					.delayUntil(chunk -> {
+						long delay = previousBytes[0] * intervalNanos / chunkBytes;
+						previousBytes[0] = chunk.readableByteCount();
+						return delay > 0 ? Mono.delay(Duration.ofNanos(delay)) : Mono.empty();
+					});
+		}).map(Mono::just));
+	}
+
+	/**
+	 * Splits a buffer into chunks of at most chunkBytes bytes sharing its memory.
+	 */
+	private static List<DataBuffer> split(DataBuffer buffer, int chunkBytes) {
+		List<DataBuffer> chunks = new ArrayList<>(buffer.readableByteCount() / chunkBytes + 1);
+		while (buffer.readableByteCount() > chunkBytes) {
+			chunks.add(buffer.split(buffer.readPosition() + chunkBytes));
+		}
+		chunks.add(buffer);
+		return chunks;
+	}
+
+	/**
+	 * Adds the total element count and the Link header (RFC 8288) of a page, and
+	 * the token of the next page for cursor pagination.
+	 */
+	private void addPageHeaders(ServerHttpRequest request, HttpHeaders headers, Pagination pagination, Page page) {
+		headers.set(TOTAL_COUNT, String.valueOf(page.getTotal()));
+
+		UriComponentsBuilder uri = UriComponentsBuilder.fromUri(request.getURI())
+				.replaceQueryParam(pagination.getLimitParameter(), page.getLimit());
+		List<String> links = new ArrayList<>(4);
+		if (pagination.getMode() == Pagination.Mode.CURSOR) {
+			String cursorParameter = pagination.getCursorParameter();
+			links.add(link(uri.cloneBuilder().replaceQueryParam(cursorParameter), "first"));
+			if (page.hasPrevious()) {
+				links.add(link(uri.cloneBuilder().replaceQueryParam(cursorParameter,
+						pagination.encodeCursor(page.getPreviousOffset())), "prev"));
+			}
+			if (page.hasNext()) {
+				String nextCursor = pagination.encodeCursor(page.getNextOffset());
+				headers.set(NEXT_CURSOR, nextCursor);
+				links.add(link(uri.cloneBuilder().replaceQueryParam(cursorParameter, nextCursor), "next"));
+			}
+		} else {
+			String offsetParameter = pagination.getOffsetParameter();
+			links.add(link(uri.cloneBuilder().replaceQueryParam(offsetParameter, 0), "first"));
+			if (page.hasPrevious()) {
+				links.add(link(uri.cloneBuilder().replaceQueryParam(offsetParameter, page.getPreviousOffset()),
+						"prev"));
+			}
+			if (page.hasNext()) {
+				links.add(link(uri.cloneBuilder().replaceQueryParam(offsetParameter, page.getNextOffset()), "next"));
+			}
+			links.add(link(uri.cloneBuilder().replaceQueryParam(offsetParameter, page.getLastOffset()), "last"));
+		}
+		headers.set(LINK, String.join(", ", links));
+	}
+
+	private String link(UriComponentsBuilder uri, String rel) {
+		return "<" + uri.build(true).toUriString() + ">; rel=\"" + rel + "\"";
+	}
+
+	/**
+	 * Replaces the mock response with a 400 for invalid pagination parameters.
+	 * The message is one of the fixed messages of Pagination, never request input.
+	 */
+	private Mono<Void> writeBadRequest(ServerHttpResponse response, String message) {
+		return writeError(response, HttpStatus.BAD_REQUEST, message);
+	}
+
+	private Mono<Void> writeRejected(ServerHttpResponse response, HttpStatus status, long retryAfterSeconds,
+			String message) {
+		Mono<Void> write = writeError(response, status, message);
+		response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+		return write;
+	}
+
+	private Mono<Void> writeError(ServerHttpResponse response, HttpStatusCode status, String message) {
+		response.setStatusCode(status);
+		response.getHeaders().clear();
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		byte[] content = ("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+		response.getHeaders().setContentLength(content.length);
+		return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(content)));
+	}
+
+	/**
+	 * Writes a file-backed body. Files on the file system are handed to the server
+	 * for a zero-copy transfer when it supports one; other resources (e.g. inside
+	 * a jar) are streamed in fixed-size buffers, so the file is never held in memory.
+	 */
+	private Mono<Void> writeFile(ServerHttpResponse response, Resource resource, long contentLength) {
+		if (response instanceof ZeroCopyHttpOutputMessage zeroCopyResponse && resource.isFile()) {
+			try {
+				return zeroCopyResponse.writeWith(resource.getFile().toPath(), 0, contentLength);
+			} catch (IOException e) {
+				return Mono.error(e);
+			}
+		}
+		return response.writeWith(DataBufferUtils.read(resource, response.bufferFactory(), FILE_BUFFER_SIZE));
+	}
+
+	/**
+	 * Resets the connection: with SO_LINGER set to 0, closing the socket sends a
+	 * TCP RST instead of a FIN, so the client sees a connection reset.
+	 */
+	private Mono<Void> reset(ServerHttpResponse response) {
+		Connection connection = connection(response);
+		if (connection == null) {
+			return Mono.error(new IllegalStateException("Connection resets require a Reactor Netty server"));
+		}
+		connection.channel().config().setOption(ChannelOption.SO_LINGER, 0);
+		connection.channel().close();
+		return Mono.empty();
+	}
+
+	/**
+	 * Returns the Reactor Netty connection of the response, or null when it is
+	 * not served by Reactor Netty (e.g. a mock exchange in tests).
+	 */
+	private static Connection connection(ServerHttpResponse response) {
+		try {
+			return ServerHttpResponseDecorator.getNativeResponse(response) instanceof Connection connection
+					? connection : null;
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Response sending only the first half of its body, by Content-Length (or of
+	 * the first buffer when the length is unknown), and then closing the
+	 * connection, so the client sees the body end prematurely.
+	 */
+	private static class TruncatingResponse extends ServerHttpResponseDecorator {
+
+		private TruncatingResponse(ServerHttpResponse delegate) {
+			super(delegate);
+		}
+
+		@Override
+		public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+			return super.writeWith(truncate(Flux.from(body))).then(Mono.fromRunnable(this::close));
+		}
+
+		@Override
+		public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+			return super.writeAndFlushWith(truncate(Flux.from(body).concatMap(Flux::from)).map(Mono::just))
+					.then(Mono.fromRunnable(this::close));
+		}
+
+		private Flux<DataBuffer> truncate(Flux<? extends DataBuffer> body) {
+			long contentLength = getHeaders().getContentLength();
+			return Flux.defer(() -> {
+				long[] remaining = { contentLength > 0 ? contentLength / 2 : -1 };
+				return body.<DataBuffer>handle((buffer, sink) -> {
+					if (remaining[0] < 0) {
+						remaining[0] = buffer.readableByteCount() / 2;
+					}
+					if (buffer.readableByteCount() < remaining[0]) {
+						remaining[0] -= buffer.readableByteCount();
+						sink.next(buffer);
+						return;
+					}
+					DataBuffer head = buffer.split(buffer.readPosition() + (int) remaining[0]);
+					DataBufferUtils.release(buffer);
+					sink.next(head);
+					sink.complete();
+				});
+			});
+		}
+
+		private void close() {
+			Connection connection = connection(getDelegate());
+			if (connection != null) {
+				connection.channel().close();
+			}
+		}
+	}
+
+	private static boolean isJson(MediaType contentType) {
+		return contentType != null && MediaType.APPLICATION_JSON.isCompatibleWith(contentType);
+	}
+
+	private static List<MediaType> accept(ServerHttpRequest request) {
+		try {
+			return request.getHeaders().getAccept();
+		} catch (InvalidMediaTypeException e) {
+			return List.of();
+		}
+	}
+
+	/**
+	 * Chooses the rendering with the highest quality value in the Accept header.
+	 * The quality of a media type is the one of the most specific Accept entry
+	 * including it. Ties go to the default type, then to the earlier format.
+	 *
+	 * @param accept      the media types of the Accept header
+	 * @param defaultType the media type of the body itself
+	 * @param formats     the media types the body is also rendered in, in order of preference
+	 * @return the format to send, or null to send the body itself
+	 */
+	static MediaType selectFormat(List<MediaType> accept, MediaType defaultType, Set<MediaType> formats) {
+		if (accept.isEmpty()) {
+			return null;
+		}
+		MediaType selected = null;
+		double selectedQuality = quality(accept, defaultType);
+		for (MediaType format : formats) {
+			double quality = quality(accept, format);
+			if (quality > selectedQuality) {
+				selected = format;
+				selectedQuality = quality;
+			}
+		}
+		return selected;
+	}
+
+	private static double quality(List<MediaType> accept, MediaType mediaType) {
+		MediaType range = null;
+		for (MediaType candidate : accept) {
+			if (candidate.includes(mediaType) && (range == null || specificity(candidate) > specificity(range))) {
+				range = candidate;
+			}
+		}
+		return range != null ? range.getQualityValue() : 0;
+	}
+
+	private static int specificity(MediaType range) {
+		return range.isWildcardType() ? 0 : range.isWildcardSubtype() ? 1 : 2;
+	}
+
+	/**
+	 * Chooses the available encoding with the highest quality value in the
+	 * Accept-Encoding header. Ties go to the earlier (preferred) available encoding,
+	 * and "*" applies to every encoding not listed explicitly.
+	 *
+	 * @param acceptEncoding the Accept-Encoding header values, may be null
+	 * @param available      the available encodings in order of preference
+	 * @return the encoding to use, or null to send the identity body
+	 */
+	static String selectEncoding(List<String> acceptEncoding, Set<String> available) {
+		if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+			return null;
+		}
+		String selected = null;
+		double selectedQuality = 0;
+		for (String encoding : available) {
+			double quality = quality(acceptEncoding, encoding);
+			if (quality > selectedQuality) {
+				selected = encoding;
+				selectedQuality = quality;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Returns the quality value the header gives to the encoding: its own entry
+	 * if it is listed, otherwise the "*" entry, otherwise 0.
+	 */
+	private static double quality(List<String> acceptEncoding, String encoding) {
+		double wildcard = 0;
+		for (String value : acceptEncoding) {
+			for (String coding : value.split(",")) {
+				int separator = coding.indexOf(';');
+				String name = (separator < 0 ? coding : coding.substring(0, separator)).trim();
+				if (name.equalsIgnoreCase(encoding)) {
+					return parseQuality(coding, separator);
+				}
+				if (name.equals("*")) {
+					wildcard = parseQuality(coding, separator);
+				}
+			}
+		}
+		return wildcard;
+	}
+
+	private static double parseQuality(String coding, int separator) {
+		if (separator < 0) {
+			return 1;
+		}
+		for (String parameter : coding.substring(separator + 1).split(";")) {
+			String[] nameValue = parameter.split("=", 2);
+			if (nameValue.length == 2 && nameValue[0].trim().equalsIgnoreCase("q")) {
+				try {
+					return Double.parseDouble(nameValue[1].trim());
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+}
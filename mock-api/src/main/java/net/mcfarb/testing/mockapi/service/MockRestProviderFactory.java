@@ -0,0 +1,121 @@
+package net.mcfarb.testing.mockapi.service;
+
+import java.nio.file.Path;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import net.mcfarb.testing.ddmock.service.JsonProcessor;
+import net.mcfarb.testing.ddmock.service.MockRestProvider;
+import net.mcfarb.testing.ddmock.service.TieredBodyStore;
+import net.mcfarb.testing.mockapi.config.MockApiConfiguration;
+
+/**
+ * Creates the JsonProcessor and MockRestProvider instances used to serve mock files,
+ * so every entry point (controllers and the functional router) reads mock data
+ * with the same ObjectMapper settings.
+ */
+public final class MockRestProviderFactory {
+
+	public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+	public static final MediaType APPLICATION_MSGPACK = MediaType.parseMediaType("application/msgpack");
+
+	private MockRestProviderFactory() {
+	}
+
+	/**
+	 * Creates the ObjectMapper used to read mock files.
+	 */
+	public static ObjectMapper createObjectMapper() {
+		DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy, HH:mm:ss");
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.setPropertyNamingStrategy(PropertyNamingStrategies.LOWER_CAMEL_CASE)
+				.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+				.setDateFormat(dateFormat);
+		return objectMapper;
+	}
+
+	/**
+	 * Creates a mapper for each named binary format (cbor, smile or msgpack),
+	 * copied from the mock file ObjectMapper so it serializes with the same
+	 * settings.
+	 *
+	 * @return the mapper of each format's media type, in the order given
+	 * @throws IllegalArgumentException for an unknown format name
+	 */
+	public static Map<MediaType, ObjectMapper> createFormatMappers(List<String> formats) {
+		ObjectMapper objectMapper = createObjectMapper();
+		Map<MediaType, ObjectMapper> formatMappers = new LinkedHashMap<>();
+		for (String format : formats) {
+			switch (format.trim().toLowerCase(Locale.ROOT)) {
+				case "cbor" -> formatMappers.put(MediaType.APPLICATION_CBOR, objectMapper.copyWith(new CBORFactory()));
+				case "smile" -> formatMappers.put(APPLICATION_SMILE, objectMapper.copyWith(new SmileFactory()));
+				case "msgpack" -> formatMappers.put(APPLICATION_MSGPACK, objectMapper.copyWith(new MessagePackFactory()));
+				default -> throw new IllegalArgumentException(
+						"Unknown binary format " + format + ", expected cbor, smile or msgpack");
+			}
+		}
+		return formatMappers;
+	}
+
+	public static JsonProcessor createJsonProcessor() {
+		JsonProcessor jsonProcessor = new JsonProcessor();
+		jsonProcessor.setObjectMapper(createObjectMapper());
+		return jsonProcessor;
+	}
+
+	public static MockRestProvider createProvider(JsonProcessor jsonProcessor) {
+		MockRestProvider mockRestProvider = new MockRestProvider();
+		mockRestProvider.setJsonProcessor(jsonProcessor);
+		return mockRestProvider;
+	}
+
+	/**
+	 * Creates a MockRestProvider configured from the mock.api settings of the given
+	 * controller. The configuration may be null, in which case defaults are used.
+	 */
+	public static MockRestProvider createProvider(JsonProcessor jsonProcessor,
+			MockApiConfiguration mockApiConfiguration, String controllerName) {
+		return createProvider(jsonProcessor, mockApiConfiguration, controllerName, null);
+	}
+
+	/**
+	 * Creates a MockRestProvider configured from the mock.api settings of the given
+	 * controller whose bodies are tiered by the given store, which may be null to
+	 * keep every body on the heap.
+	 */
+	public static MockRestProvider createProvider(JsonProcessor jsonProcessor,
+			MockApiConfiguration mockApiConfiguration, String controllerName, TieredBodyStore bodyStore) {
+		MockRestProvider mockRestProvider = createProvider(jsonProcessor);
+		mockRestProvider.setBodyStore(bodyStore);
+		if (mockApiConfiguration != null) {
+			mockRestProvider.setRouteCacheSize(mockApiConfiguration.getRouteCacheSizeForController(controllerName));
+			if (mockApiConfiguration.getCompression().isEnabled()) {
+				mockRestProvider.setCompressionMinSize(mockApiConfiguration.getCompression().getMinSize());
+			}
+			mockRestProvider.setTemplateCacheSize(mockApiConfiguration.getTemplates().getCacheSize());
+			mockRestProvider.setScenarioMaxScopes(mockApiConfiguration.getScenarios().getMaxScopes());
+			mockRestProvider.setLazy(mockApiConfiguration.getLazy().isEnabled());
+			mockRestProvider.setReleaseSource(mockApiConfiguration.getLazy().isReleaseSource());
+			mockRestProvider.setFormatMappers(createFormatMappers(mockApiConfiguration.getBinaryFormats()));
+			MockApiConfiguration.Resources resources = mockApiConfiguration.getResources();
+			if (resources.getStateDir() != null) {
+				mockRestProvider.setResourceStateDirectory(Path.of(resources.getStateDir()).resolve(controllerName),
+						resources.getCompactEvery());
+			}
+		}
+		return mockRestProvider;
+	}
+}
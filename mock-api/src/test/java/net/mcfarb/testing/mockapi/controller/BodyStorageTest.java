@@ -0,0 +1,51 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Tests that responses are served from the spill file when no body fits the
+ * configured heap budget.
+ */
+@SpringBootTest(properties = {
+		"mock.api.storage.heap-budget=0B",
+		"mock.api.fallback.enabled=false"
+})
+@AutoConfigureWebTestClient
+public class BodyStorageTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	public void testSpilledBodiesAreServed() {
+		webTestClient
+				.get()
+				.uri("/api/user/123")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.id").isEqualTo("1")
+				.jsonPath("$.name").isEqualTo("John Doe");
+
+		webTestClient
+				.get()
+				.uri("/mock-api/stats")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.storage.heapBudget").isEqualTo(0)
+				.jsonPath("$.storage.heapBytes").isEqualTo(0)
+				.jsonPath("$.storage.spilledReads").isEqualTo(1)
+				.jsonPath("$.storage.spilledBodies").value(Integer.class,
+						count -> assertTrue(count > 0));
+	}
+}
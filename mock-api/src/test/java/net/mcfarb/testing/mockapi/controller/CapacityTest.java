@@ -0,0 +1,133 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests the rate limit and concurrency cap of controllers and routes.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.discovery.enabled=true",
+		"mock.api.discovery.external-dir=src/test/resources/capacity-mockdata",
+		"mock.api.controllers.product.capacity.requests-per-second=0.5",
+		"mock.api.controllers.product.capacity.burst=2",
+		"mock.api.controllers.discovery.capacity.requests-per-second=0.01",
+		"mock.api.controllers.discovery.capacity.burst=20",
+		"mock.api.fallback.enabled=false"
+})
+public class CapacityTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	public void testControllerRateLimit() {
+		for (int i = 0; i < 2; i++) {
+			webTestClient
+					.get()
+					.uri("/api/product/1")
+					.exchange()
+					.expectStatus().isOk();
+		}
+		webTestClient
+				.get()
+				.uri("/api/product/1")
+				.exchange()
+				.expectStatus().isEqualTo(429)
+				.expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "2")
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("Rate limit exceeded");
+
+		// controllers without a capacity are not limited
+		webTestClient
+				.get()
+				.uri("/api/user/123")
+				.exchange()
+				.expectStatus().isOk();
+
+		webTestClient
+				.get()
+				.uri("/mock-api/stats")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.product.capacity.rateLimited").isEqualTo(1)
+				.jsonPath("$.user.capacity").doesNotExist();
+	}
+
+	@Test
+	public void testRouteRateLimitUnderControllerRateLimit() {
+		webTestClient
+				.get()
+				.uri("/api/capacity/limited")
+				.exchange()
+				.expectStatus().isOk();
+		// more requests than the controller's burst, all refused by the route
+		for (int i = 0; i < 25; i++) {
+			webTestClient
+					.get()
+					.uri("/api/capacity/limited")
+					.exchange()
+					.expectStatus().isEqualTo(429);
+		}
+
+		// requests the route refused spent no token of the controller
+		webTestClient
+				.get()
+				.uri("/api/capacity/open")
+				.exchange()
+				.expectStatus().isOk();
+		webTestClient
+				.get()
+				.uri("/mock-api/stats")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.discovery.capacity.rateLimited").isEqualTo(0);
+	}
+
+	@Test
+	public void testRouteBulkhead() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+
+		// 2 requests in flight, 1 queued until one of them completes, 1 rejected
+		List<ResponseEntity<Void>> responses = Flux.range(0, 4)
+				.flatMap(i -> webClient.get().uri("/api/capacity/bulkhead").exchangeToMono(
+						response -> response.toBodilessEntity()), 4)
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+		Map<Integer, Long> statuses = responses.stream()
+				.collect(Collectors.groupingBy(response -> response.getStatusCode().value(), Collectors.counting()));
+		assertEquals(Map.of(200, 3L, 503, 1L), statuses);
+		ResponseEntity<Void> rejected = responses.stream()
+				.filter(response -> response.getStatusCode().value() == 503)
+				.findFirst()
+				.orElseThrow();
+		assertEquals("3", rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+		// every permit was released
+		assertEquals(200, webClient.get().uri("/api/capacity/bulkhead")
+				.exchangeToMono(response -> response.toBodilessEntity())
+				.map(response -> response.getStatusCode().value())
+				.block(Duration.ofSeconds(5)));
+	}
+}
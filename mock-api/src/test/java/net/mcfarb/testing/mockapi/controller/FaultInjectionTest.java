@@ -0,0 +1,76 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import reactor.core.Exceptions;
+import reactor.netty.http.client.PrematureCloseException;
+
+/**
+ * Tests the faults injected into routes declaring them, and the counters
+ * reported on the stats endpoint.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.discovery.enabled=true",
+		"mock.api.discovery.external-dir=src/test/resources/fault-mockdata",
+		"mock.api.fallback.enabled=false"
+})
+public class FaultInjectionTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	public void testInjectsFaults() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+
+		webTestClient
+				.get()
+				.uri("/api/faults/error")
+				.exchange()
+				.expectStatus().isEqualTo(503)
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("Injected fault");
+
+		assertThrows(WebClientRequestException.class,
+				() -> webClient.get().uri("/api/faults/reset").retrieve().toBodilessEntity().block());
+
+		// the body ends before the announced Content-Length
+		WebClientResponseException truncated = assertThrows(WebClientResponseException.class,
+				() -> webClient.get().uri("/api/faults/truncate").retrieve().bodyToMono(byte[].class).block());
+		assertEquals(200, truncated.getStatusCode().value());
+		assertEquals(PrematureCloseException.class, truncated.getCause().getClass());
+
+		RuntimeException hang = assertThrows(RuntimeException.class,
+				() -> webClient.get().uri("/api/faults/hang").retrieve().toBodilessEntity()
+						.timeout(Duration.ofMillis(500)).block());
+		assertEquals(TimeoutException.class, Exceptions.unwrap(hang).getClass());
+
+		webTestClient
+				.get()
+				.uri("/mock-api/stats")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.discovery.faults.error").isEqualTo(1)
+				.jsonPath("$.discovery.faults.reset").isEqualTo(1)
+				.jsonPath("$.discovery.faults.truncate").isEqualTo(1)
+				.jsonPath("$.discovery.faults.hang").isEqualTo(1)
+				.jsonPath("$.user.faults.error").isEqualTo(0);
+	}
+}
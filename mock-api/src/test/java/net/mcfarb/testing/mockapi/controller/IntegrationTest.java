@@ -1,8 +1,13 @@
 package net.mcfarb.testing.mockapi.controller;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
@@ -20,7 +25,8 @@ import org.springframework.test.web.reactive.server.WebTestClient;
  * - Faster test execution
  * - More focused unit testing
  */
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "mock.api.controllers.user.route-cache-size=100")
 public class IntegrationTest {
 
 	@Autowired
@@ -51,7 +57,7 @@ public class IntegrationTest {
 	}
 
 	@Test
-	public void testProductEndpointsIntegration() {
+	public void testProductEndpointsIntegration() throws IOException {
 		// Test GET all products
 		webTestClient
 				.get()
@@ -72,6 +78,18 @@ public class IntegrationTest {
 				.expectStatus().isOk()
 				.expectBody()
 				.jsonPath("$.name").isEqualTo("Laptop");
+
+		// Test file-backed export, sent with a zero-copy transfer by the server
+		webTestClient
+				.get()
+				.uri("/api/product/export")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType("text/csv")
+				.expectHeader().contentLength(
+						new ClassPathResource("mockdata/files/product-catalog.csv").getFile().length())
+				.expectBody(String.class)
+				.value(csv -> assertTrue(csv.contains("104,Mechanical Keyboard")));
 	}
 
 	@Test
@@ -117,4 +135,28 @@ public class IntegrationTest {
 				.expectBody()
 				.jsonPath("$[0].price").exists(); // Products have price
 	}
+
+	@Test
+	public void testRouteCacheStats() {
+		for (int i = 0; i < 3; i++) {
+			webTestClient
+					.get()
+					.uri("/api/user/456")
+					.accept(MediaType.APPLICATION_JSON)
+					.exchange()
+					.expectStatus().isOk();
+		}
+
+		webTestClient
+				.get()
+				.uri("/mock-api/stats")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.user.routeCache.maxSize").isEqualTo(100)
+				.jsonPath("$.user.routeCache.hitRatio").exists()
+				.jsonPath("$.user.objects.untouched").isEqualTo(0)
+				.jsonPath("$.product.routeCache").doesNotExist();
+	}
 }
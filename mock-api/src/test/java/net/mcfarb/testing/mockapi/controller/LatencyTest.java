@@ -0,0 +1,59 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests that routes declaring a latency are delayed without holding threads.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.fallback.enabled=false"
+})
+public class LatencyTest {
+
+	private static final int CONCURRENT_REQUESTS = 500;
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	public void testDelaysConcurrentRequestsOnTimers() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+
+		long start = System.nanoTime();
+		List<HttpStatusCode> statuses = Flux.range(0, CONCURRENT_REQUESTS)
+				.flatMap(i -> webClient.get().uri("/api/user/slow").retrieve().toBodilessEntity(),
+						CONCURRENT_REQUESTS)
+				.map(response -> response.getStatusCode())
+				.collectList()
+				.block(Duration.ofSeconds(30));
+		Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+		assertEquals(CONCURRENT_REQUESTS, statuses.size());
+		assertTrue(statuses.stream().allMatch(HttpStatusCode::is2xxSuccessful));
+		// every request waits at least the min delay, but the delays overlap
+		assertTrue(elapsed.toMillis() >= 200, "elapsed " + elapsed);
+		assertTrue(elapsed.toMillis() < 10_000, "elapsed " + elapsed);
+	}
+
+	@Test
+	public void testRoutesWithoutLatencyAreNotDelayed() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+		webClient.get().uri("/api/user/123").retrieve().toBodilessEntity().block();
+
+		long start = System.nanoTime();
+		webClient.get().uri("/api/user/123").retrieve().toBodilessEntity().block();
+		assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 200);
+	}
+}
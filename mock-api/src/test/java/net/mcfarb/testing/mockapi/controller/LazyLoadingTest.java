@@ -0,0 +1,54 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Tests that mock objects are only bound when a request first needs them.
+ */
+@SpringBootTest(properties = {
+		"mock.api.lazy.enabled=true",
+		"mock.api.lazy.release-source=true",
+		"mock.api.fallback.enabled=false"
+})
+@AutoConfigureWebTestClient
+public class LazyLoadingTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	public void testObjectsBoundOnFirstRequest() {
+		webTestClient
+				.get()
+				.uri("/mock-api/stats")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.user.objects.total").isEqualTo(7)
+				.jsonPath("$.user.objects.untouched").isEqualTo(7);
+
+		for (int i = 0; i < 2; i++) {
+			webTestClient
+					.get()
+					.uri("/api/user/123")
+					.accept(MediaType.APPLICATION_JSON)
+					.exchange()
+					.expectStatus().isOk()
+					.expectBody()
+					.jsonPath("$.name").isEqualTo("John Doe");
+		}
+
+		webTestClient
+				.get()
+				.uri("/mock-api/stats")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.user.objects.untouched").isEqualTo(6);
+	}
+}
@@ -0,0 +1,72 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Tests the discovery mode, where every mockdata/*.json file is served by
+ * the single MockDispatcherController.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.discovery.enabled=true",
+		"mock.api.discovery.external-dir=src/test/resources/external-mockdata",
+		"mock.api.fallback.enabled=false"
+})
+public class MockDispatcherControllerTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	public void testServesDiscoveredClasspathFile() {
+		// mockdata/UserServiceTest.json has no controller subclass
+		webTestClient
+				.get()
+				.uri("/api/users/1")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("Mock User");
+	}
+
+	@Test
+	public void testServesExternalDirectoryFile() {
+		webTestClient
+				.get()
+				.uri("/api/inventory/SKU-42")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.sku").isEqualTo("SKU-42")
+				.jsonPath("$.quantity").isEqualTo(7);
+	}
+
+	@Test
+	public void testControllerSubclassesTakePrecedence() {
+		webTestClient
+				.get()
+				.uri("/api/user/123")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("John Doe");
+	}
+
+	@Test
+	public void testUnknownPathReturnsNotFound() {
+		webTestClient
+				.get()
+				.uri("/api/unknown/path")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isNotFound()
+				.expectBody()
+				.jsonPath("$.path").isEqualTo("/api/unknown/path");
+	}
+}
@@ -0,0 +1,66 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.mockapi.MockApiApplication;
+import reactor.core.publisher.Flux;
+
+/**
+ * Compares the requests per second served by the annotated BaseRestController
+ * and by the functional MockRouterFunction for the same mock route.
+ *
+ * Excluded from the default build, run with: mvn test -Pbenchmark
+ */
+@Slf4j
+@Tag("benchmark")
+public class MockRouterFunctionBenchmarkTest {
+
+	private static final int WARMUP_REQUESTS = 5_000;
+	private static final int REQUESTS = 50_000;
+	private static final int CONCURRENCY = 64;
+
+	@Test
+	public void compareAnnotatedAndFunctionalThroughput() {
+		double annotated = measureRequestsPerSecond(false);
+		double functional = measureRequestsPerSecond(true);
+
+		log.info("GET /api/user/{id}: annotated controller {} req/s, functional router {} req/s ({}%)",
+				String.format("%.0f", annotated), String.format("%.0f", functional),
+				String.format("%+.1f", (functional / annotated - 1) * 100));
+		assertTrue(annotated > 0 && functional > 0);
+	}
+
+	private double measureRequestsPerSecond(boolean functional) {
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MockApiApplication.class)
+				.properties(
+						"server.port=0",
+						"mock.api.fallback.enabled=false",
+						"mock.api.functional.enabled=" + functional)
+				.run()) {
+			int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+			WebClient webClient = WebClient.create("http://localhost:" + port);
+
+			run(webClient, WARMUP_REQUESTS);
+			long start = System.nanoTime();
+			run(webClient, REQUESTS);
+			long elapsed = System.nanoTime() - start;
+
+			return REQUESTS / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+		}
+	}
+
+	private void run(WebClient webClient, int requests) {
+		Flux.range(0, requests)
+				.flatMap(i -> webClient.get().uri("/api/user/{id}", i).retrieve().toBodilessEntity(), CONCURRENCY)
+				.blockLast();
+	}
+}
@@ -0,0 +1,159 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import net.mcfarb.testing.mockapi.service.MockDataLoader;
+import net.mcfarb.testing.mockapi.service.MockRestProviderFactory;
+import reactor.test.StepVerifier;
+
+/**
+ * Tests the functional entry point enabled with mock.api.functional.enabled=true.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.functional.enabled=true",
+		"mock.api.discovery.external-dir=src/test/resources/resource-mockdata",
+		"mock.api.controllers.functional.route-cache-size=100",
+		"mock.api.controllers.functional.capacity.max-in-flight=100",
+		"mock.api.fallback.enabled=false"
+})
+public class MockRouterFunctionTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	public void testServesMockThroughRouterFunction() {
+		webTestClient
+				.get()
+				.uri("/api/user/123")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("John Doe");
+
+		// mockdata/UserServiceTest.json has no controller subclass
+		webTestClient
+				.get()
+				.uri("/api/users/1")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("Mock User");
+	}
+
+	@Test
+	public void testQueryParametersAndStatusCode() {
+		webTestClient
+				.get()
+				.uri("/api/product?inStock=true")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(4);
+
+		webTestClient
+				.post()
+				.uri("/api/user")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"name\": \"Test User\"}")
+				.exchange()
+				.expectStatus().isCreated()
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("User created successfully");
+	}
+
+	@Test
+	public void testStatsOfRouter() {
+		webTestClient
+				.get()
+				.uri("/api/user/123")
+				.exchange()
+				.expectStatus().isOk();
+
+		webTestClient
+				.get()
+				.uri("/mock-api/stats")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.functional.routeCache.maxSize").isEqualTo(100)
+				.jsonPath("$.functional.objects.total").value(total -> assertTrue((Integer) total > 0))
+				.jsonPath("$.functional.objects.untouched").isEqualTo(0)
+				.jsonPath("$.functional.faults").exists()
+				.jsonPath("$.functional.capacity.inFlight").exists();
+	}
+
+	@Test
+	public void testFailedLoadFailsRequests() {
+		MockDataLoader loader = new MockDataLoader(1);
+		try {
+			CompletableFuture<Void> loaded = loader.submit("failing", () -> {
+				throw new IllegalStateException("Invalid mock file");
+			});
+			MockRouterFunction routerFunction = new MockRouterFunction(
+					MockRestProviderFactory.createProvider(loader.getJsonProcessor()), loaded, null);
+			MockServerRequest request = MockServerRequest.builder()
+					.method(HttpMethod.GET)
+					.uri(URI.create("/api/user/123"))
+					.build();
+
+			// requests waiting for the load and the ones arriving after it both get its cause
+			StepVerifier.create(routerFunction.route(request))
+					.expectErrorMatches(e -> e instanceof IllegalStateException
+							&& "Invalid mock file".equals(e.getMessage()))
+					.verify();
+			StepVerifier.create(routerFunction.route(request))
+					.expectErrorMatches(e -> e instanceof IllegalStateException
+							&& "Invalid mock file".equals(e.getMessage()))
+					.verify();
+		} finally {
+			loader.destroy();
+		}
+	}
+
+	@Test
+	public void testUnmatchedRequestFallsThroughToController() {
+		webTestClient
+				.get()
+				.uri("/api/user/search/advanced")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isNotFound()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("No mock configuration found for this endpoint");
+	}
+
+	@Test
+	public void testResourceReadsRequestBody() {
+		webTestClient
+				.post()
+				.uri("/api/orders")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"id\": \"gift\", \"item\": \"Card\"}")
+				.exchange()
+				.expectStatus().isCreated()
+				.expectHeader().valueEquals("Location", "/api/orders/gift");
+
+		webTestClient
+				.get()
+				.uri("/api/orders/gift")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.item").isEqualTo("Card");
+	}
+}
@@ -0,0 +1,105 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Tests the paginated tracker list of MockTracker.
+ */
+@WebFluxTest(MockTracker.class)
+public class MockTrackerTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	public void testDefaultPageContainsWholeList() {
+		webTestClient
+				.get()
+				.uri("/api/v2/tracker")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals("X-Total-Count", "10")
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(10);
+	}
+
+	@Test
+	public void testOffsetAndLimit() {
+		webTestClient
+				.get()
+				.uri("/api/v2/tracker?offset=4&limit=3")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals("X-Total-Count", "10")
+				.expectHeader().value("Link", link -> {
+					assertTrue(link.contains("limit=3&offset=0>; rel=\"first\""), link);
+					assertTrue(link.contains("limit=3&offset=1>; rel=\"prev\""), link);
+					assertTrue(link.contains("limit=3&offset=7>; rel=\"next\""), link);
+					assertTrue(link.contains("limit=3&offset=9>; rel=\"last\""), link);
+				})
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3);
+
+		// past the end
+		webTestClient
+				.get()
+				.uri("/api/v2/tracker?offset=20")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.json("[]");
+	}
+
+	@Test
+	public void testPagesHaveTheirOwnETag() {
+		String firstPage = webTestClient
+				.get()
+				.uri("/api/v2/tracker?limit=5")
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(String.class)
+				.getResponseHeaders()
+				.getETag();
+
+		webTestClient
+				.get()
+				.uri("/api/v2/tracker?limit=5")
+				.header(HttpHeaders.IF_NONE_MATCH, firstPage)
+				.exchange()
+				.expectStatus().isNotModified();
+
+		webTestClient
+				.get()
+				.uri("/api/v2/tracker?offset=5&limit=5")
+				.header(HttpHeaders.IF_NONE_MATCH, firstPage)
+				.exchange()
+				.expectStatus().isOk();
+	}
+
+	@Test
+	public void testInvalidPaginationParameters() {
+		webTestClient
+				.get()
+				.uri("/api/v2/tracker?limit=abc")
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("Invalid limit");
+
+		webTestClient
+				.get()
+				.uri("/api/v2/tracker?offset=-1")
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+}
@@ -1,5 +1,7 @@
 package net.mcfarb.testing.mockapi.controller;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
@@ -80,6 +82,18 @@ public class ProductControllerTest {
 				.jsonPath("$[3].inStock").isEqualTo(true);
 	}
 
+	@Test
+	public void testExportCatalogFromFile() {
+		webTestClient
+				.get()
+				.uri("/api/product/export")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType("text/csv")
+				.expectBody(String.class)
+				.value(csv -> assertTrue(csv.startsWith("id,name,description,price,category,inStock\n101,Laptop")));
+	}
+
 	@Test
 	public void testCreateProduct() {
 		String newProduct = """
@@ -0,0 +1,80 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Tests that the state of resources survives a restart with
+ * mock.api.resources.state-dir set.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.discovery.enabled=true",
+		"mock.api.discovery.external-dir=src/test/resources/resource-mockdata",
+		"mock.api.fallback.enabled=false"
+})
+public class ResourcePersistenceTest {
+
+	private static final Path STATE_DIR = createStateDir();
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Autowired
+	private MockDispatcherController dispatcher;
+
+	@DynamicPropertySource
+	static void resourceProperties(DynamicPropertyRegistry registry) {
+		registry.add("mock.api.resources.state-dir", STATE_DIR::toString);
+		registry.add("mock.api.resources.compact-every", () -> 2);
+	}
+
+	private static Path createStateDir() {
+		try {
+			return Files.createTempDirectory("mock-api-resources");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	public void testStateSurvivesRestart() {
+		webTestClient
+				.post()
+				.uri("/api/orders")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"item\": \"Desk\"}")
+				.exchange()
+				.expectStatus().isCreated();
+		webTestClient
+				.delete()
+				.uri("/api/orders/1")
+				.exchange()
+				.expectStatus().isNoContent();
+
+		// restarting the controller restores the orders instead of seeding them again
+		dispatcher.destroy();
+		dispatcher.initialize();
+		assertTrue(Files.exists(STATE_DIR.resolve("discovery").resolve("api_orders").resolve("snapshot.bin")));
+
+		webTestClient
+				.get()
+				.uri("/api/orders")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].item").isEqualTo("Mouse")
+				.jsonPath("$[1].item").isEqualTo("Desk");
+	}
+}
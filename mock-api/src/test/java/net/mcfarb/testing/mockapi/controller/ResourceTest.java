@@ -0,0 +1,146 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests the routes generated for a base path declared as a resource.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.discovery.enabled=true",
+		"mock.api.discovery.external-dir=src/test/resources/resource-mockdata",
+		"mock.api.fallback.enabled=false"
+})
+public class ResourceTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	public void testCrud() {
+		webTestClient
+				.post()
+				.uri("/api/orders")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"item\": \"Monitor\", \"quantity\": 1}")
+				.exchange()
+				.expectStatus().isCreated()
+				.expectHeader().valueEquals(HttpHeaders.LOCATION, "/api/orders/3")
+				.expectBody()
+				.jsonPath("$.id").isEqualTo(3);
+
+		webTestClient
+				.get()
+				.uri("/api/orders/3")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.item").isEqualTo("Monitor");
+
+		webTestClient
+				.patch()
+				.uri("/api/orders/3")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"quantity\": 4}")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.item").isEqualTo("Monitor")
+				.jsonPath("$.quantity").isEqualTo(4);
+
+		webTestClient
+				.put()
+				.uri("/api/orders/3")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"item\": \"Monitor arm\"}")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.id").isEqualTo(3)
+				.jsonPath("$.quantity").doesNotExist();
+
+		webTestClient
+				.delete()
+				.uri("/api/orders/3")
+				.exchange()
+				.expectStatus().isNoContent();
+
+		webTestClient
+				.get()
+				.uri("/api/orders/3")
+				.exchange()
+				.expectStatus().isNotFound()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("No resource with this id");
+	}
+
+	@Test
+	public void testListAndDeclaredMethods() {
+		webTestClient
+				.get()
+				.uri("/api/orders")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$[0].item").isEqualTo("Keyboard")
+				.jsonPath("$[1].item").isEqualTo("Mouse");
+
+		// declared methods take precedence over the generated /{id}
+		webTestClient
+				.get()
+				.uri("/api/orders/summary")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.open").isEqualTo(2);
+
+		webTestClient
+				.post()
+				.uri("/api/orders")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"id\": 1}")
+				.exchange()
+				.expectStatus().isEqualTo(409);
+
+		webTestClient
+				.post()
+				.uri("/api/orders")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("not json")
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	@Test
+	public void testConcurrentCreates() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+
+		List<Map<String, Object>> created = Flux.range(0, 200)
+				.flatMap(i -> webClient.post().uri("/api/orders").contentType(MediaType.APPLICATION_JSON)
+						.bodyValue("{\"item\": \"Cable " + i + "\"}").retrieve()
+						.bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
+						}), 50)
+				.collectList()
+				.block();
+
+		// every create got an id of its own
+		assertEquals(200, created.stream().map(order -> order.get("id")).distinct().count());
+	}
+}
@@ -0,0 +1,84 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests routes answering a returnId sequence or from the states of a scenario.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.discovery.enabled=true",
+		"mock.api.discovery.external-dir=src/test/resources/scenario-mockdata",
+		"mock.api.fallback.enabled=false"
+})
+public class ScenarioTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	public void testPollingSequencePerClient() {
+		expectExportStatus("alice", "pending");
+		expectExportStatus("alice", "pending");
+		expectExportStatus("alice", "complete");
+		// the last response repeats
+		expectExportStatus("alice", "complete");
+
+		// every client polls through the sequence on its own
+		expectExportStatus("bob", "pending");
+	}
+
+	@Test
+	public void testNamedScenario() {
+		webTestClient.get().uri("/api/exports/checkout/status").exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.cart").isEqualTo("open");
+
+		webTestClient.post().uri("/api/exports/checkout/pay").exchange()
+				.expectStatus().isOk();
+		webTestClient.post().uri("/api/exports/checkout/pay").exchange()
+				.expectStatus().isEqualTo(409);
+
+		// the POST moved the scenario the GET answers from
+		webTestClient.get().uri("/api/exports/checkout/status").exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.cart").isEqualTo("paid");
+	}
+
+	@Test
+	public void testConcurrentPolling() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+
+		List<Map<String, Object>> polls = Flux.range(0, 200)
+				.flatMap(i -> webClient.get().uri("/api/exports/42").header("X-Client-Id", "burst").retrieve()
+						.bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
+						}), 50)
+				.collectList()
+				.block();
+
+		// each transition is taken by exactly one of the concurrent polls
+		assertEquals(2, polls.stream().filter(poll -> "pending".equals(poll.get("status"))).count());
+		assertEquals(198, polls.stream().filter(poll -> "complete".equals(poll.get("status"))).count());
+	}
+
+	private void expectExportStatus(String client, String status) {
+		webTestClient.get().uri("/api/exports/42").header("X-Client-Id", client).exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.status").isEqualTo(status);
+	}
+}
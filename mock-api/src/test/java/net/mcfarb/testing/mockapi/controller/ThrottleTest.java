@@ -0,0 +1,71 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests that throttled routes trickle their body without holding threads.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.fallback.enabled=false"
+})
+public class ThrottleTest {
+
+	private static final int CHUNK_SIZE = 64;
+	private static final int INTERVAL_MS = 20;
+	private static final int CONCURRENT_REQUESTS = 500;
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	public void testDripsBodyInChunks() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+		byte[] expected = webClient.get().uri("/api/user").retrieve().bodyToMono(byte[].class).block();
+
+		long start = System.nanoTime();
+		List<Integer> chunks = webClient.get().uri("/api/user/trickle")
+				.retrieve()
+				.bodyToFlux(byte[].class)
+				.map(chunk -> chunk.length)
+				.collectList()
+				.block(Duration.ofSeconds(30));
+		long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+		assertEquals(expected.length, chunks.stream().mapToInt(Integer::intValue).sum());
+		assertTrue(chunks.stream().allMatch(length -> length <= CHUNK_SIZE), "chunks " + chunks);
+		// the first chunk is sent at once, each following one an interval later
+		long minimumMillis = (long) (expected.length / CHUNK_SIZE - 1) * INTERVAL_MS;
+		assertTrue(elapsedMillis >= minimumMillis, elapsedMillis + "ms < " + minimumMillis + "ms");
+
+		byte[] body = webClient.get().uri("/api/user/trickle").retrieve().bodyToMono(byte[].class).block();
+		assertArrayEquals(expected, body);
+	}
+
+	@Test
+	public void testThrottlesConcurrentConnections() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+		int expectedLength = webClient.get().uri("/api/user").retrieve().bodyToMono(byte[].class).block().length;
+
+		List<Integer> lengths = Flux.range(0, CONCURRENT_REQUESTS)
+				.flatMap(i -> webClient.get().uri("/api/user/trickle").retrieve().bodyToMono(byte[].class),
+						CONCURRENT_REQUESTS)
+				.map(body -> body.length)
+				.collectList()
+				.block(Duration.ofSeconds(60));
+
+		assertEquals(CONCURRENT_REQUESTS, lengths.size());
+		assertTrue(lengths.stream().allMatch(length -> length == expectedLength));
+	}
+}
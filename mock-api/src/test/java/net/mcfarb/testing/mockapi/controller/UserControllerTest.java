@@ -1,13 +1,19 @@
 package net.mcfarb.testing.mockapi.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import net.mcfarb.testing.mockapi.controller.UserController;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
 
 
 import java.util.List;
@@ -46,6 +52,8 @@ public class UserControllerTest {
 				.accept(MediaType.APPLICATION_JSON)
 				.exchange()
 				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_JSON)
+				.expectHeader().exists("Content-Length")
 				.expectBody()
 				.jsonPath("$.id").isEqualTo("1")
 				.jsonPath("$.name").isEqualTo("John Doe")
@@ -53,6 +61,129 @@ public class UserControllerTest {
 				.jsonPath("$.role").isEqualTo("admin");
 	}
 
+	@Test
+	public void testGetUserByIdNotModified() {
+		String eTag = webTestClient
+				.get()
+				.uri("/api/user/123")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().exists(HttpHeaders.ETAG)
+				.returnResult(String.class)
+				.getResponseHeaders()
+				.getETag();
+
+		webTestClient
+				.get()
+				.uri("/api/user/123")
+				.accept(MediaType.APPLICATION_JSON)
+				.ifNoneMatch(eTag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, eTag)
+				.expectBody().isEmpty();
+
+		// a different resource does not match the ETag
+		webTestClient
+				.get()
+				.uri("/api/user")
+				.accept(MediaType.APPLICATION_JSON)
+				.ifNoneMatch(eTag)
+				.exchange()
+				.expectStatus().isOk();
+	}
+
+	@Test
+	public void testGetUserProfileFromTemplate() {
+		webTestClient
+				.get()
+				.uri("/api/user/42/profile?view=full")
+				.accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.ACCEPT_LANGUAGE, "en-\"GB\"")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.id").isEqualTo("42")
+				.jsonPath("$.view").isEqualTo("full")
+				.jsonPath("$.locale").isEqualTo("en-\"GB\"")
+				.jsonPath("$.displayName").isEqualTo("User 42");
+
+		// missing values render as empty strings
+		webTestClient
+				.get()
+				.uri("/api/user/7/profile")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.id").isEqualTo("7")
+				.jsonPath("$.view").isEqualTo("");
+	}
+
+	@Test
+	public void testGetUserProfileNotModified() {
+		String eTag = webTestClient
+				.get()
+				.uri("/api/user/42/profile")
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(String.class)
+				.getResponseHeaders()
+				.getETag();
+
+		webTestClient
+				.get()
+				.uri("/api/user/42/profile")
+				.ifNoneMatch(eTag)
+				.exchange()
+				.expectStatus().isNotModified();
+
+		// another id renders another body
+		webTestClient
+				.get()
+				.uri("/api/user/43/profile")
+				.ifNoneMatch(eTag)
+				.exchange()
+				.expectStatus().isOk();
+	}
+
+	@Test
+	public void testStreamUsersAsNdjson() {
+		Flux<Map> users = webTestClient
+				.get()
+				.uri("/api/user/stream")
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+				.returnResult(Map.class)
+				.getResponseBody();
+
+		// elements arrive one by one, as they are requested
+		StepVerifier.create(users, 1)
+				.expectNextMatches(user -> "Alice Johnson".equals(user.get("name")))
+				.thenRequest(2)
+				.expectNextMatches(user -> "Bob Smith".equals(user.get("name")))
+				.expectNextMatches(user -> "Charlie Brown".equals(user.get("name")))
+				.verifyComplete();
+	}
+
+	@Test
+	public void testStreamUsersAsServerSentEvents() {
+		webTestClient
+				.get()
+				.uri("/api/user/events")
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+				.expectBody(String.class)
+				.value(events -> assertEquals(3, events.split("\n\n").length))
+				.value(events -> assertTrue(events.startsWith("data:{\"id\":1,\"name\":\"Alice Johnson\"")));
+	}
+
 	@Test
 	public void testGetActiveUsers() {
 		// Note: Query parameters in WebTestClient can be tricky
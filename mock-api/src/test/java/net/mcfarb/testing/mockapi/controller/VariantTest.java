@@ -0,0 +1,69 @@
+package net.mcfarb.testing.mockapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests routes answering one of several weighted variants.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"mock.api.discovery.enabled=true",
+		"mock.api.discovery.external-dir=src/test/resources/variant-mockdata",
+		"mock.api.fallback.enabled=false"
+})
+public class VariantTest {
+
+	private static final ParameterizedTypeReference<Map<String, Object>> BANNER = new ParameterizedTypeReference<>() {
+	};
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	public void testWeightedVariants() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+
+		Map<Object, Long> counts = Flux.range(0, 1000)
+				.flatMap(i -> webClient.get().uri("/api/banners/random").retrieve().bodyToMono(BANNER), 50)
+				.collect(Collectors.groupingBy(banner -> banner.get("banner"), Collectors.counting()))
+				.block();
+
+		assertEquals(Set.of("A", "B"), counts.keySet());
+		assertTrue(counts.get("A") > counts.get("B") * 3);
+	}
+
+	@Test
+	public void testVariantStickyByPathVariable() {
+		WebClient webClient = WebClient.create("http://localhost:" + port);
+
+		Map<String, Set<String>> variantsByUser = Flux.range(0, 100)
+				.flatMap(user -> Flux.range(0, 5).concatMap(i -> webClient.get().uri("/api/banners/user-" + user)
+						.retrieve().toEntity(BANNER).map(response -> Map.entry("user-" + user, variant(response)))))
+				.collect(Collectors.groupingBy(Map.Entry::getKey,
+						Collectors.mapping(Map.Entry::getValue, Collectors.toSet())))
+				.block();
+
+		// every user always gets the same variant, and both variants are served
+		assertEquals(100, variantsByUser.size());
+		variantsByUser.values().forEach(variants -> assertEquals(1, variants.size()));
+		assertEquals(Set.of("A 200", "B 203"),
+				variantsByUser.values().stream().flatMap(Set::stream).collect(Collectors.toSet()));
+	}
+
+	private static String variant(ResponseEntity<Map<String, Object>> response) {
+		return response.getBody().get("banner") + " " + response.getStatusCode().value();
+	}
+}
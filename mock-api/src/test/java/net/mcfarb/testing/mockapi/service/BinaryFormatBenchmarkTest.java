@@ -0,0 +1,95 @@
+package net.mcfarb.testing.mockapi.service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compares the payload size and encode cost of the mock objects of the
+ * bundled mock files in JSON and in each binary format.
+ *
+ * Excluded from the default build, run with: mvn test -Pbenchmark
+ */
+@Slf4j
+@Tag("benchmark")
+public class BinaryFormatBenchmarkTest {
+
+	private static final String[] MOCK_FILES = { "/mockdata/user.json", "/mockdata/product.json",
+			"/mockdata/tracker.json" };
+	private static final int WARMUP_ROUNDS = 20_000;
+	private static final int ROUNDS = 200_000;
+
+	@Test
+	public void compareFormats() throws IOException {
+		List<JsonNode> objects = loadMockObjects();
+		Map<MediaType, ObjectMapper> mappers = new LinkedHashMap<>();
+		mappers.put(MediaType.APPLICATION_JSON, MockRestProviderFactory.createObjectMapper());
+		mappers.putAll(MockRestProviderFactory.createFormatMappers(List.of("cbor", "smile", "msgpack")));
+
+		Map<MediaType, Long> sizes = new LinkedHashMap<>();
+		Map<MediaType, Double> costs = new LinkedHashMap<>();
+		for (Map.Entry<MediaType, ObjectMapper> entry : mappers.entrySet()) {
+			sizes.put(entry.getKey(), size(entry.getValue(), objects));
+			costs.put(entry.getKey(), encodeNanos(entry.getValue(), objects));
+		}
+
+		long jsonSize = sizes.get(MediaType.APPLICATION_JSON);
+		double jsonCost = costs.get(MediaType.APPLICATION_JSON);
+		for (MediaType format : mappers.keySet()) {
+			long size = sizes.get(format);
+			double cost = costs.get(format);
+			log.info("{}: {} bytes for {} objects ({}% of JSON), {} ns/object ({}% of JSON)",
+					format, size, objects.size(), String.format("%.1f", size * 100.0 / jsonSize),
+					String.format("%.0f", cost), String.format("%.1f", cost * 100 / jsonCost));
+			assertTrue(size > 0);
+		}
+	}
+
+	private List<JsonNode> loadMockObjects() throws IOException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		List<JsonNode> objects = new ArrayList<>();
+		for (String mockFile : MOCK_FILES) {
+			try (InputStream in = getClass().getResourceAsStream(mockFile)) {
+				objects.addAll(objectMapper.readTree(in).findValues("objectValue"));
+			}
+		}
+		return objects;
+	}
+
+	private long size(ObjectMapper mapper, List<JsonNode> objects) throws IOException {
+		long size = 0;
+		for (JsonNode object : objects) {
+			size += mapper.writeValueAsBytes(object).length;
+		}
+		return size;
+	}
+
+	private double encodeNanos(ObjectMapper mapper, List<JsonNode> objects) throws IOException {
+		encode(mapper, objects, WARMUP_ROUNDS);
+		long start = System.nanoTime();
+		encode(mapper, objects, ROUNDS);
+		return (System.nanoTime() - start) / (double) ROUNDS / objects.size();
+	}
+
+	private long encode(ObjectMapper mapper, List<JsonNode> objects, int rounds) throws IOException {
+		long written = 0;
+		for (int i = 0; i < rounds; i++) {
+			written += mapper.writeValueAsBytes(objects.get(i % objects.size())).length;
+		}
+		return written;
+	}
+}
@@ -0,0 +1,105 @@
+package net.mcfarb.testing.mockapi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Tests Accept negotiation of the bodies pre-rendered in binary formats.
+ */
+@SpringBootTest(properties = {
+		"mock.api.binary-formats=cbor,smile,msgpack",
+		"mock.api.fallback.enabled=false"
+})
+@AutoConfigureWebTestClient
+public class BinaryFormatTest {
+
+	private static final MediaType CBOR = MediaType.APPLICATION_CBOR;
+	private static final MediaType SMILE = MockRestProviderFactory.APPLICATION_SMILE;
+	private static final MediaType MSGPACK = MockRestProviderFactory.APPLICATION_MSGPACK;
+	private static final Set<MediaType> AVAILABLE = new LinkedHashSet<>(List.of(CBOR, SMILE, MSGPACK));
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	public void testServesCbor() throws IOException {
+		byte[] body = webTestClient
+				.get()
+				.uri("/api/user/123")
+				.accept(CBOR)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(CBOR)
+				.expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+				.expectBody(byte[].class)
+				.returnResult()
+				.getResponseBody();
+
+		JsonNode user = new ObjectMapper(new CBORFactory()).readTree(body);
+		assertEquals("John Doe", user.get("name").asText());
+	}
+
+	@Test
+	public void testServesSmileWhenPreferred() throws IOException {
+		byte[] body = webTestClient
+				.get()
+				.uri("/api/user")
+				.header(HttpHeaders.ACCEPT, "application/json;q=0.5, application/x-jackson-smile")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(SMILE)
+				.expectBody(byte[].class)
+				.returnResult()
+				.getResponseBody();
+
+		JsonNode users = new ObjectMapper(new SmileFactory()).readTree(body);
+		assertEquals("Alice Johnson", users.get(0).get("name").asText());
+	}
+
+	@Test
+	public void testServesJsonByDefault() {
+		webTestClient
+				.get()
+				.uri("/api/user/123")
+				.accept(MediaType.ALL)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+				.expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("John Doe");
+	}
+
+	@Test
+	public void testSelectFormat() {
+		MediaType json = MediaType.APPLICATION_JSON;
+		assertNull(MockResponseWriter.selectFormat(List.of(), json, AVAILABLE));
+		assertNull(MockResponseWriter.selectFormat(List.of(MediaType.ALL), json, AVAILABLE));
+		assertNull(MockResponseWriter.selectFormat(List.of(json, CBOR), json, AVAILABLE));
+		assertNull(MockResponseWriter.selectFormat(MediaType.parseMediaTypes("application/*"), json, AVAILABLE));
+		assertEquals(CBOR, MockResponseWriter.selectFormat(List.of(CBOR), json, AVAILABLE));
+		assertEquals(MSGPACK, MockResponseWriter.selectFormat(
+				MediaType.parseMediaTypes("application/msgpack, application/json;q=0.9"), json, AVAILABLE));
+		assertEquals(SMILE, MockResponseWriter.selectFormat(
+				MediaType.parseMediaTypes("application/*;q=0.2, application/x-jackson-smile;q=0.8"), json, AVAILABLE));
+		assertNull(MockResponseWriter.selectFormat(MediaType.parseMediaTypes("text/plain"), json, AVAILABLE));
+	}
+}
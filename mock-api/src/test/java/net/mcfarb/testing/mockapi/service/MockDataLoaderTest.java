@@ -0,0 +1,73 @@
+package net.mcfarb.testing.mockapi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
+
+/**
+ * Tests the parallel loading of mock data at startup.
+ */
+public class MockDataLoaderTest {
+
+	@Test
+	public void testLoadsRunInParallel() throws Exception {
+		MockDataLoader loader = new MockDataLoader(2);
+		CountDownLatch started = new CountDownLatch(2);
+		CompletableFuture<Boolean> first = loader.submit("first", () -> {
+			started.countDown();
+			return started.await(10, TimeUnit.SECONDS);
+		});
+		CompletableFuture<Boolean> second = loader.submit("second", () -> {
+			started.countDown();
+			return started.await(10, TimeUnit.SECONDS);
+		});
+
+		// each load only completes once the other one has started
+		loader.afterSingletonsInstantiated();
+		assertTrue(first.get());
+		assertTrue(second.get());
+		loader.destroy();
+	}
+
+	@Test
+	public void testFailedLoadFailsStartup() {
+		MockDataLoader loader = new MockDataLoader(0);
+		loader.submit("ok", () -> null);
+		loader.submit("broken", () -> {
+			throw new IOException("broken.json is not valid");
+		});
+
+		IllegalStateException e = assertThrows(IllegalStateException.class, loader::afterSingletonsInstantiated);
+		assertTrue(e.getCause() instanceof IOException);
+		assertTrue(loader.ready().isCompletedExceptionally());
+		loader.destroy();
+	}
+
+	@Test
+	public void testDiscoveryParsesInParallel() throws Exception {
+		MockDataLoader loader = new MockDataLoader(0);
+		Map<String, MockRestGeneratorInfo> parallel = new MockDataDiscovery(loader.getJsonProcessor(), loader)
+				.discover("src/test/resources/scenario-mockdata");
+		Map<String, MockRestGeneratorInfo> serial = new MockDataDiscovery(loader.getJsonProcessor())
+				.discover("src/test/resources/scenario-mockdata");
+
+		// the same files in the same order, whichever parse finishes first
+		assertEquals(serial.keySet().stream().toList(), parallel.keySet().stream().toList());
+		serial.forEach((name, mockRestInfo) -> assertEquals(mockRestInfo.getMockRestApis(),
+				parallel.get(name).getMockRestApis()));
+		assertFalse(parallel.isEmpty());
+		loader.afterSingletonsInstantiated();
+		loader.destroy();
+	}
+}
@@ -0,0 +1,151 @@
+package net.mcfarb.testing.mockapi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests Accept-Encoding negotiation of the pre-compressed response variants.
+ *
+ * The client is bound to the application context rather than a running server:
+ * the Reactor Netty client transparently decompresses responses to requests
+ * carrying Accept-Encoding, which would hide the encoding that was sent.
+ */
+@SpringBootTest(properties = {
+		"mock.api.compression.enabled=true",
+		"mock.api.compression.min-size=128",
+		"mock.api.fallback.enabled=false"
+})
+public class MockResponseWriterTest {
+
+	private static final Set<String> AVAILABLE = new LinkedHashSet<>(List.of("gzip", "deflate"));
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	private WebTestClient webTestClient;
+
+	@BeforeEach
+	public void setup() {
+		webTestClient = WebTestClient.bindToApplicationContext(applicationContext).build();
+	}
+
+	@Test
+	public void testServesGzipVariant() throws IOException {
+		byte[] compressed = webTestClient
+				.get()
+				.uri("/api/user")
+				.accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+				.expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+				.expectBody(byte[].class)
+				.returnResult()
+				.getResponseBody();
+
+		try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			JsonNode users = new ObjectMapper().readTree(gzip);
+			assertEquals("Alice Johnson", users.get(0).get("name").asText());
+		}
+	}
+
+	@Test
+	public void testETagPerEncoding() {
+		String identityETag = webTestClient
+				.get()
+				.uri("/api/user")
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(String.class)
+				.getResponseHeaders()
+				.getETag();
+		String gzipETag = webTestClient
+				.get()
+				.uri("/api/user")
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(String.class)
+				.getResponseHeaders()
+				.getETag();
+		assertNotEquals(identityETag, gzipETag);
+
+		webTestClient
+				.get()
+				.uri("/api/user")
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.ifNoneMatch(gzipETag)
+				.exchange()
+				.expectStatus().isNotModified();
+
+		// the identity ETag does not validate the gzip representation
+		webTestClient
+				.get()
+				.uri("/api/user")
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.ifNoneMatch(identityETag)
+				.exchange()
+				.expectStatus().isOk();
+	}
+
+	@Test
+	public void testServesIdentityWithoutAcceptEncoding() {
+		webTestClient
+				.get()
+				.uri("/api/user")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING)
+				.expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+				.expectBody()
+				.jsonPath("$[0].name").isEqualTo("Alice Johnson");
+
+		// bodies below the minimum size are never compressed
+		webTestClient
+				.get()
+				.uri("/api/user/123")
+				.accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING)
+				.expectHeader().doesNotExist(HttpHeaders.VARY)
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("John Doe");
+	}
+
+	@Test
+	public void testSelectEncoding() {
+		assertNull(MockResponseWriter.selectEncoding(null, AVAILABLE));
+		assertNull(MockResponseWriter.selectEncoding(List.of("br"), AVAILABLE));
+		assertNull(MockResponseWriter.selectEncoding(List.of("identity"), AVAILABLE));
+		assertEquals("gzip", MockResponseWriter.selectEncoding(List.of("deflate, gzip"), AVAILABLE));
+		assertEquals("deflate", MockResponseWriter.selectEncoding(List.of("gzip;q=0.5, deflate"), AVAILABLE));
+		assertEquals("deflate", MockResponseWriter.selectEncoding(List.of("gzip;q=0", "*"), AVAILABLE));
+		assertEquals("gzip", MockResponseWriter.selectEncoding(List.of("*;q=0.1"), AVAILABLE));
+		assertNull(MockResponseWriter.selectEncoding(List.of("gzip;q=0, deflate;q=0"), AVAILABLE));
+	}
+}
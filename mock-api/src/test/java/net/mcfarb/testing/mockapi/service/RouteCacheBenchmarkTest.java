@@ -0,0 +1,86 @@
+package net.mcfarb.testing.mockapi.service;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
+import net.mcfarb.testing.ddmock.service.JsonProcessor;
+import net.mcfarb.testing.ddmock.service.MockRestProvider;
+
+/**
+ * Compares the routes resolved per second by every core at once with and
+ * without the route cache, for requests spread over many paths of one route.
+ * Enabling the cache must not make concurrent requests wait on each other.
+ *
+ * Excluded from the default build, run with: mvn test -Pbenchmark
+ */
+@Slf4j
+@Tag("benchmark")
+public class RouteCacheBenchmarkTest {
+
+	private static final int PATHS = 1_000;
+	private static final int WARMUP_MATCHES = 200_000;
+	private static final int MATCHES = 2_000_000;
+
+	@Test
+	public void compareUncachedAndCachedThroughput() throws Exception {
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		double uncached = measureMatchesPerSecond(0, threads);
+		double cached = measureMatchesPerSecond(PATHS * 2, threads);
+
+		log.info("{} threads resolving GET /api/user/{id}: uncached {} matches/s, cached {} matches/s ({}%)",
+				threads, String.format("%.0f", uncached), String.format("%.0f", cached),
+				String.format("%+.1f", (cached / uncached - 1) * 100));
+		assertTrue(cached >= uncached * 0.9, "the route cache reduced the throughput");
+	}
+
+	private double measureMatchesPerSecond(int routeCacheSize, int threads) throws Exception {
+		JsonProcessor jsonProcessor = MockRestProviderFactory.createJsonProcessor();
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor.buildMockRestInfoObjectFromJson("mockdata/user");
+		MockRestProvider mockRestProvider = MockRestProviderFactory.createProvider(jsonProcessor);
+		mockRestProvider.setRouteCacheSize(routeCacheSize);
+		mockRestProvider.initialize(mockRestInfo);
+		String[] paths = new String[PATHS];
+		for (int i = 0; i < PATHS; i++) {
+			paths[i] = "/api/user/" + i;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			run(executor, threads, mockRestProvider, paths, WARMUP_MATCHES);
+			long start = System.nanoTime();
+			run(executor, threads, mockRestProvider, paths, MATCHES);
+			long elapsed = System.nanoTime() - start;
+			return MATCHES / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void run(ExecutorService executor, int threads, MockRestProvider mockRestProvider, String[] paths,
+			int matches) throws Exception {
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int offset = t * 7;
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < matches / threads; i++) {
+					assertNotNull(mockRestProvider.match(paths[(offset + i) % paths.length], "GET", null));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+	}
+}
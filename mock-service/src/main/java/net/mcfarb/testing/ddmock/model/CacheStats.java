@@ -0,0 +1,23 @@
+package net.mcfarb.testing.ddmock.model;
+
+import lombok.Value;
+
+/**
+ * Point in time statistics of a bounded cache.
+ */
+@Value
+public class CacheStats {
+
+	long hits;
+	long misses;
+	int size;
+	int maxSize;
+
+	/**
+	 * Returns hits / (hits + misses), or 0 when the cache has not been used.
+	 */
+	public double getHitRatio() {
+		long requests = hits + misses;
+		return requests == 0 ? 0d : (double) hits / requests;
+	}
+}
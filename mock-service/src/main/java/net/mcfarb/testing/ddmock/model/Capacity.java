@@ -0,0 +1,55 @@
+package net.mcfarb.testing.ddmock.model;
+
+import lombok.Data;
+
+/**
+ * Capacity of an emulated upstream, declared on a route or on a whole
+ * controller. Requests beyond requestsPerSecond (with bursts of up to burst
+ * requests) are answered with a 429; requests beyond maxInFlight concurrent
+ * ones wait in a queue of up to maxQueue requests for at most queueTimeoutMs,
+ * and are otherwise answered with a 503. Both carry a Retry-After header.
+ */
+@Data
+public class Capacity {
+
+	private Double requestsPerSecond;
+	private Integer burst;
+	private Integer maxInFlight;
+	private int maxQueue = 0;
+	private long queueTimeoutMs = 1000;
+	private int retryAfterSeconds = 1;
+
+	/**
+	 * Checks that at least one limit is set and that every limit is positive.
+	 *
+	 * @throws IllegalArgumentException describing the first invalid parameter
+	 */
+	public void validate() {
+		if (requestsPerSecond == null && maxInFlight == null) {
+			throw new IllegalArgumentException("requestsPerSecond or maxInFlight is required");
+		}
+		if (requestsPerSecond != null && !(requestsPerSecond > 0)) {
+			throw new IllegalArgumentException("requestsPerSecond must be positive");
+		}
+		if (burst != null && burst < 1) {
+			throw new IllegalArgumentException("burst must be positive");
+		}
+		if (maxInFlight != null && maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be positive");
+		}
+		if (maxQueue < 0 || queueTimeoutMs < 0 || retryAfterSeconds < 0) {
+			throw new IllegalArgumentException("maxQueue, queueTimeoutMs and retryAfterSeconds must not be negative");
+		}
+	}
+
+	/**
+	 * Returns the number of requests admitted at once after an idle period: the
+	 * configured burst, by default one second's worth of requests.
+	 */
+	public int effectiveBurst() {
+		if (burst != null) {
+			return burst;
+		}
+		return requestsPerSecond != null ? (int) Math.max(1, Math.ceil(requestsPerSecond)) : 1;
+	}
+}
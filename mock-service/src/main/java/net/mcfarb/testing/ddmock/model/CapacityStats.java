@@ -0,0 +1,15 @@
+package net.mcfarb.testing.ddmock.model;
+
+import lombok.Value;
+
+/**
+ * Point in time statistics of a capacity limiter.
+ */
+@Value
+public class CapacityStats {
+
+	int inFlight;
+	int queued;
+	long rateLimited;
+	long rejected;
+}
@@ -0,0 +1,77 @@
+package net.mcfarb.testing.ddmock.model;
+
+import lombok.Data;
+
+/**
+ * Faults injected into the responses of a route, each with the probability of
+ * a request getting it. At most one fault is injected per request, so the
+ * rates must not add up to more than 1.
+ */
+@Data
+public class Faults {
+
+	public enum Fault {
+		/** The errorStatus is returned instead of the mock response. */
+		ERROR,
+		/** The connection is reset without any response. */
+		RESET,
+		/** The headers announce the whole body, but the connection is closed halfway through it. */
+		TRUNCATE,
+		/** The request is accepted but never answered. */
+		HANG
+	}
+
+	private double errorRate;
+	private int errorStatus = 500;
+	private double resetRate;
+	private double truncateRate;
+	private double hangRate;
+
+	/**
+	 * Checks that the rates are probabilities adding up to at most 1 and that
+	 * the error status is a 5xx.
+	 *
+	 * @throws IllegalArgumentException describing the first invalid parameter
+	 */
+	public void validate() {
+		double total = 0;
+		for (double rate : new double[] { errorRate, resetRate, truncateRate, hangRate }) {
+			if (!(rate >= 0 && rate <= 1)) {
+				throw new IllegalArgumentException("fault rates must be between 0 and 1");
+			}
+			total += rate;
+		}
+		if (total > 1) {
+			throw new IllegalArgumentException("fault rates must not add up to more than 1");
+		}
+		if (errorStatus < 500 || errorStatus > 599) {
+			throw new IllegalArgumentException("errorStatus must be a 5xx status");
+		}
+	}
+
+	/**
+	 * Returns the fault a request gets.
+	 *
+	 * @param random a uniformly distributed value in [0, 1)
+	 * @return the fault, or null if the request is answered normally
+	 */
+	public Fault select(double random) {
+		double threshold = errorRate;
+		if (random < threshold) {
+			return Fault.ERROR;
+		}
+		threshold += resetRate;
+		if (random < threshold) {
+			return Fault.RESET;
+		}
+		threshold += truncateRate;
+		if (random < threshold) {
+			return Fault.TRUNCATE;
+		}
+		threshold += hangRate;
+		if (random < threshold) {
+			return Fault.HANG;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,18 @@
+package net.mcfarb.testing.ddmock.model;
+
+import lombok.Value;
+
+/**
+ * Point in time statistics of the journal of a resource store. Each commit
+ * writes and syncs a batch of records, so records / commits is the average
+ * batch size.
+ */
+@Value
+public class JournalStats {
+
+	long records;
+	long commits;
+	long compactions;
+	long restoredElements;
+	long replayedRecords;
+}
@@ -0,0 +1,154 @@
+package net.mcfarb.testing.ddmock.model;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import lombok.Data;
+
+/**
+ * Simulated latency declared on a route, in milliseconds. A delay is drawn from
+ * the distribution for every request:
+ * <ul>
+ * <li>fixed: always value</li>
+ * <li>uniform: between min and max</li>
+ * <li>normal: mean and stdDev</li>
+ * <li>lognormal: mean and stdDev of the delays, giving the long right tail of
+ * most real services</li>
+ * <li>percentiles: the p50, p90, p99 and p999 of the delays (p50 required),
+ * interpolated linearly between the given percentiles, from min (default 0) up
+ * to max (default the highest percentile given)</li>
+ * </ul>
+ * Delays outside min and max, when set, are clamped to them, and never go below 0.
+ */
+@Data
+public class Latency {
+
+	public enum Distribution {
+		FIXED, UNIFORM, NORMAL, LOGNORMAL, PERCENTILES;
+
+		@JsonCreator
+		public static Distribution fromValue(String value) {
+			return value == null ? null
+					: valueOf(value.toUpperCase(Locale.ROOT).replace("-", "").replace("_", ""));
+		}
+	}
+
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private Distribution distribution = Distribution.FIXED;
+	private Double value;
+	private Double min;
+	private Double max;
+	private Double mean;
+	private Double stdDev;
+	private Double p50;
+	private Double p90;
+	private Double p99;
+	private Double p999;
+
+	/**
+	 * Checks that the parameters the distribution needs are set and consistent.
+	 *
+	 * @throws IllegalArgumentException describing the first invalid parameter
+	 */
+	public void validate() {
+		if (distribution == null) {
+			throw new IllegalArgumentException("distribution is required");
+		}
+		if (min != null && max != null && min > max) {
+			throw new IllegalArgumentException("min must not be greater than max");
+		}
+		switch (distribution) {
+			case FIXED -> require(value, "value");
+			case UNIFORM -> {
+				require(min, "min");
+				require(max, "max");
+			}
+			case NORMAL -> {
+				require(mean, "mean");
+				require(stdDev, "stdDev");
+			}
+			case LOGNORMAL -> {
+				require(mean, "mean");
+				require(stdDev, "stdDev");
+				if (mean <= 0) {
+					throw new IllegalArgumentException("mean of a lognormal latency must be positive");
+				}
+			}
+			case PERCENTILES -> {
+				require(p50, "p50");
+				double previous = min != null ? min : 0;
+				for (Double percentile : new Double[] { p50, p90, p99, p999, max }) {
+					if (percentile != null) {
+						if (percentile < previous) {
+							throw new IllegalArgumentException("percentiles must not decrease");
+						}
+						previous = percentile;
+					}
+				}
+			}
+		}
+	}
+
+	private static void require(Double parameter, String name) {
+		if (parameter == null || parameter < 0 || parameter.isNaN() || parameter.isInfinite()) {
+			throw new IllegalArgumentException(name + " must be set to a non-negative number");
+		}
+	}
+
+	/**
+	 * Draws the delay of one request.
+	 *
+	 * @return the delay in nanoseconds, 0 or more
+	 */
+	public long sampleNanos(RandomGenerator random) {
+		double millis = switch (distribution) {
+			case FIXED -> value;
+			case UNIFORM -> min + random.nextDouble() * (max - min);
+			case NORMAL -> mean + random.nextGaussian() * stdDev;
+			case LOGNORMAL -> {
+				// parameters of the underlying normal giving the requested mean and stdDev
+				double sigmaSquared = Math.log1p((stdDev * stdDev) / (mean * mean));
+				double mu = Math.log(mean) - sigmaSquared / 2;
+				yield Math.exp(mu + random.nextGaussian() * Math.sqrt(sigmaSquared));
+			}
+			case PERCENTILES -> percentile(random.nextDouble());
+		};
+		if (min != null) {
+			millis = Math.max(min, millis);
+		}
+		if (max != null) {
+			millis = Math.min(max, millis);
+		}
+		return (long) (Math.max(0, millis) * NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Returns the delay at quantile q of the percentile table.
+	 */
+	private double percentile(double q) {
+		double fromQuantile = 0;
+		double fromDelay = min != null ? min : 0;
+		double[] quantiles = { 0.5, 0.9, 0.99, 0.999 };
+		Double[] delays = { p50, p90, p99, p999 };
+		for (int i = 0; i < quantiles.length; i++) {
+			if (delays[i] == null) {
+				continue;
+			}
+			if (q <= quantiles[i]) {
+				return interpolate(q, fromQuantile, fromDelay, quantiles[i], delays[i]);
+			}
+			fromQuantile = quantiles[i];
+			fromDelay = delays[i];
+		}
+		return max != null ? interpolate(q, fromQuantile, fromDelay, 1, max) : fromDelay;
+	}
+
+	private static double interpolate(double q, double fromQuantile, double fromDelay, double toQuantile,
+			double toDelay) {
+		return fromDelay + (toDelay - fromDelay) * (q - fromQuantile) / (toQuantile - fromQuantile);
+	}
+}
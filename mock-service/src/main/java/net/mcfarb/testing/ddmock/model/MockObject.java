@@ -32,6 +32,14 @@ public class MockObject {
      */
     private String version;
 
+    /**
+     * Location of a file served as is instead of a deserialized objectValue,
+     * e.g. "files/report.pdf". Relative locations are resolved against mockdata/
+     * on the classpath; Spring resource prefixes such as file: are also accepted.
+     * The file is never parsed, so no class is needed.
+     */
+    private String file;
+
     public String getId() {
         return id;
     }
@@ -101,4 +109,12 @@ public class MockObject {
         this.version = version;
     }
 
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
 }
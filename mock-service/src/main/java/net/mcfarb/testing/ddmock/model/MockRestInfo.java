@@ -10,4 +10,7 @@ public class MockRestInfo {
 	private String basePath;
 	private List<MockRestMethodInfo> methods;
 
+	// serve the base path as a stateful collection seeded from a mock object
+	private ResourceInfo resource;
+
 }
@@ -1,5 +1,6 @@
 package net.mcfarb.testing.ddmock.model;
 
+import java.util.List;
 import java.util.Map;
 
 import lombok.Data;
@@ -14,4 +15,30 @@ public class MockRestMethodInfo {
 	private Map<String, String> headers;
 	private Map<String, String> queryParameters;
 
+	// stream the elements of a List object as ndjson or sse instead of one JSON array
+	private StreamMode stream;
+
+	// serve the elements of a List object a page at a time
+	private Pagination pagination;
+
+	// delay every response by a duration drawn from a distribution
+	private Latency latency;
+
+	// trickle the body to the client at a limited bandwidth
+	private Throttle throttle;
+
+	// fail a share of the requests with errors, resets, truncated bodies or hangs
+	private Faults faults;
+
+	// emulate the rate limit and concurrency cap of the upstream
+	private Capacity capacity;
+
+	// answer from the states of a scenario, moved by the requests
+	private Scenario scenario;
+
+	// answer one of several objects, drawn by weight, or sticky by a hash of the
+	// request value named by variantKey (path.name, query.name or header.name)
+	private List<Variant> variants;
+	private String variantKey;
+
 }
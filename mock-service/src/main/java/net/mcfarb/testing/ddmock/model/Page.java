@@ -0,0 +1,64 @@
+package net.mcfarb.testing.ddmock.model;
+
+/**
+ * One page of a paginated List: the index range [from, to) of its elements
+ * together with the offsets of the neighbouring pages.
+ */
+public final class Page {
+
+	private final int offset;
+	private final int limit;
+	private final int total;
+
+	public Page(int offset, int limit, int total) {
+		this.offset = offset;
+		this.limit = limit;
+		this.total = total;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Index of the first element of the page.
+	 */
+	public int getFrom() {
+		return Math.min(offset, total);
+	}
+
+	/**
+	 * Index after the last element of the page.
+	 */
+	public int getTo() {
+		return (int) Math.min((long) offset + limit, total);
+	}
+
+	public boolean hasNext() {
+		return getTo() < total;
+	}
+
+	public boolean hasPrevious() {
+		return offset > 0;
+	}
+
+	public int getNextOffset() {
+		return getTo();
+	}
+
+	public int getPreviousOffset() {
+		return Math.max(0, Math.min(offset, total) - limit);
+	}
+
+	public int getLastOffset() {
+		return total == 0 ? 0 : ((total - 1) / limit) * limit;
+	}
+}
@@ -0,0 +1,128 @@
+package net.mcfarb.testing.ddmock.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import lombok.Data;
+
+/**
+ * Pagination declared on a route returning a List mock object. Pages are served
+ * from the pre-serialized elements of the list, selected with offset/limit query
+ * parameters or with opaque cursor tokens.
+ */
+@Data
+public class Pagination {
+
+	public enum Mode {
+		OFFSET, CURSOR;
+
+		@JsonCreator
+		public static Mode fromValue(String value) {
+			return value == null ? null : valueOf(value.toUpperCase(Locale.ROOT));
+		}
+	}
+
+	private static final String CURSOR_PREFIX = "offset:";
+
+	private Mode mode = Mode.OFFSET;
+	private int defaultLimit = 20;
+	private int maxLimit = 100;
+	private String offsetParameter = "offset";
+	private String limitParameter = "limit";
+	private String cursorParameter = "cursor";
+
+	/**
+	 * Checks that a mode is set, that the default limit is positive and within
+	 * maxLimit, and that the parameter names are set and distinct.
+	 *
+	 * @throws IllegalArgumentException describing the first invalid parameter
+	 */
+	public void validate() {
+		if (mode == null) {
+			throw new IllegalArgumentException("pagination mode is required");
+		}
+		if (defaultLimit < 1) {
+			throw new IllegalArgumentException("defaultLimit must be positive");
+		}
+		if (maxLimit < defaultLimit) {
+			throw new IllegalArgumentException("maxLimit must not be below defaultLimit");
+		}
+		if (isBlank(offsetParameter) || isBlank(limitParameter) || isBlank(cursorParameter)) {
+			throw new IllegalArgumentException("offsetParameter, limitParameter and cursorParameter are required");
+		}
+		if (Set.of(offsetParameter, limitParameter, cursorParameter).size() < 3) {
+			throw new IllegalArgumentException("offsetParameter, limitParameter and cursorParameter must be distinct");
+		}
+	}
+
+	/**
+	 * Resolves the page requested by the query parameters of a request.
+	 * Limits above maxLimit are capped; offsets past the end give an empty page.
+	 *
+	 * @param queryParams the request's query parameters, may be null
+	 * @param total       the number of elements in the list
+	 * @throws IllegalArgumentException if the offset, limit or cursor is invalid
+	 */
+	public Page resolve(Map<String, String> queryParams, int total) {
+		String limitValue = queryParams != null ? queryParams.get(limitParameter) : null;
+		int limit = limitValue != null ? parse(limitValue, "limit") : defaultLimit;
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit");
+		}
+		limit = Math.min(limit, maxLimit);
+
+		int offset = 0;
+		if (mode == Mode.CURSOR) {
+			String cursor = queryParams != null ? queryParams.get(cursorParameter) : null;
+			if (cursor != null) {
+				offset = decodeCursor(cursor);
+			}
+		} else {
+			String offsetValue = queryParams != null ? queryParams.get(offsetParameter) : null;
+			if (offsetValue != null) {
+				offset = parse(offsetValue, "offset");
+			}
+		}
+		if (offset < 0) {
+			throw new IllegalArgumentException("Invalid offset");
+		}
+		return new Page(offset, limit, total);
+	}
+
+	/**
+	 * Returns the opaque cursor token pointing at the given offset.
+	 */
+	public String encodeCursor(int offset) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString((CURSOR_PREFIX + offset).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private int decodeCursor(String cursor) {
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			if (decoded.startsWith(CURSOR_PREFIX)) {
+				return Integer.parseInt(decoded.substring(CURSOR_PREFIX.length()));
+			}
+		} catch (IllegalArgumentException e) {
+			// NumberFormatException is an IllegalArgumentException as well
+		}
+		throw new IllegalArgumentException("Invalid cursor");
+	}
+
+	private static boolean isBlank(String value) {
+		return value == null || value.isBlank();
+	}
+
+	private int parse(String value, String name) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + name);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package net.mcfarb.testing.ddmock.model;
+
+import lombok.Data;
+
+/**
+ * Declares the base path of a REST API as a stateful collection of JSON
+ * objects, seeded from the List returned by the mock object seedId (none when
+ * unset). Elements are identified by their idField; POST to the base path
+ * creates one, and GET, PUT, PATCH and DELETE on basePath/{id} read, replace,
+ * merge into and remove it. The collection is reset on every reload, unless
+ * the provider persists resources to a state directory.
+ */
+@Data
+public class ResourceInfo {
+
+	private String seedId;
+	private String idField = "id";
+
+	/**
+	 * @throws IllegalArgumentException if the id field is blank
+	 */
+	public void validate() {
+		if (idField == null || idField.isBlank()) {
+			throw new IllegalArgumentException("idField must not be blank");
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package net.mcfarb.testing.ddmock.model;
+
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * State machine a route answers from, so one path can answer "pending" until it
+ * has been polled a few times and "complete" afterwards. Each state of the
+ * route maps to the response sent while the scenario is in it and to the state
+ * it moves to once that response is sent; the state "*" applies to every state
+ * the route does not list, and a state without a returnId or statusCode sends
+ * the route's own response.
+ *
+ * Routes declaring the same name share one state, so a POST can move the
+ * scenario a GET answers from. With a scopeHeader, every value of that request
+ * header has a state of its own, so concurrent clients do not observe each
+ * other's transitions.
+ *
+ * A route whose returnId is a comma separated list of ids answers them in
+ * sequence, the last one repeating; such a route may declare a scenario with a
+ * scopeHeader only.
+ */
+@Data
+public class Scenario {
+
+	public static final String ANY_STATE = "*";
+
+	private String name;
+	private String scopeHeader;
+	private String initialState = "Started";
+	private Map<String, State> states;
+
+	/**
+	 * Response of a route while its scenario is in a state.
+	 */
+	@Data
+	public static class State {
+
+		private String returnId;
+		private Integer statusCode;
+		private String next;
+	}
+
+	/**
+	 * Checks that the names of the scenario, of its states and of their next
+	 * states are not blank, and that no transition leads to "*".
+	 *
+	 * @throws IllegalArgumentException describing the first invalid parameter
+	 */
+	public void validate() {
+		if (name != null && name.isBlank()) {
+			throw new IllegalArgumentException("name must not be blank");
+		}
+		if (scopeHeader != null && scopeHeader.isBlank()) {
+			throw new IllegalArgumentException("scopeHeader must not be blank");
+		}
+		if (initialState == null || initialState.isBlank() || ANY_STATE.equals(initialState)) {
+			throw new IllegalArgumentException("initialState must name a state");
+		}
+		if (states != null) {
+			states.forEach((state, response) -> {
+				if (state == null || state.isBlank()) {
+					throw new IllegalArgumentException("state names must not be blank");
+				}
+				String next = response != null ? response.getNext() : null;
+				if (next != null && (next.isBlank() || ANY_STATE.equals(next))) {
+					throw new IllegalArgumentException("next of state " + state + " must name a state");
+				}
+			});
+		}
+	}
+}
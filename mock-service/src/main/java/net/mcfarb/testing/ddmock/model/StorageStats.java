@@ -0,0 +1,20 @@
+package net.mcfarb.testing.ddmock.model;
+
+import lombok.Value;
+
+/**
+ * Point in time statistics of a tiered body store.
+ */
+@Value
+public class StorageStats {
+
+	long heapBudget;
+	long heapBytes;
+	int heapBodies;
+	long spilledBytes;
+	int spilledBodies;
+	long spillFileSize;
+	long evictions;
+	long promotions;
+	long spilledReads;
+}
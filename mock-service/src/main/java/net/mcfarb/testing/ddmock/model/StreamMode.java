@@ -0,0 +1,51 @@
+package net.mcfarb.testing.ddmock.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * Streaming formats a route can send the elements of a List mock object in,
+ * one JSON element per chunk.
+ */
+public enum StreamMode {
+
+	/** Newline delimited JSON: each element followed by a newline. */
+	NDJSON(MediaType.APPLICATION_NDJSON, "", "\n"),
+
+	/** Server-sent events: each element sent as the data of one event. */
+	SSE(MediaType.TEXT_EVENT_STREAM, "data:", "\n\n");
+
+	private final MediaType mediaType;
+	private final byte[] prefix;
+	private final byte[] suffix;
+
+	StreamMode(MediaType mediaType, String prefix, String suffix) {
+		this.mediaType = mediaType;
+		this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+		this.suffix = suffix.getBytes(StandardCharsets.UTF_8);
+	}
+
+	public MediaType getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Wraps one serialized element in the framing of this format.
+	 */
+	public byte[] frame(byte[] element) {
+		byte[] chunk = new byte[prefix.length + element.length + suffix.length];
+		System.arraycopy(prefix, 0, chunk, 0, prefix.length);
+		System.arraycopy(element, 0, chunk, prefix.length, element.length);
+		System.arraycopy(suffix, 0, chunk, prefix.length + element.length, suffix.length);
+		return chunk;
+	}
+
+	@JsonCreator
+	public static StreamMode fromValue(String value) {
+		return value == null ? null : valueOf(value.toUpperCase(Locale.ROOT));
+	}
+}
@@ -0,0 +1,63 @@
+package net.mcfarb.testing.ddmock.model;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Data;
+
+/**
+ * Bandwidth limit declared on a route: the body is written in chunks paced so
+ * that it trickles to the client, either at bytesPerSecond or as a slow drip of
+ * chunkSize bytes every intervalMs milliseconds.
+ */
+@Data
+public class Throttle {
+
+	// bandwidth limits are paced in ticks of about this length
+	private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private Long bytesPerSecond;
+	private Integer chunkSize;
+	private Long intervalMs;
+
+	/**
+	 * Checks that exactly one of bytesPerSecond or chunkSize and intervalMs is set.
+	 *
+	 * @throws IllegalArgumentException describing the invalid parameters
+	 */
+	public void validate() {
+		if (bytesPerSecond != null) {
+			if (chunkSize != null || intervalMs != null) {
+				throw new IllegalArgumentException("bytesPerSecond cannot be combined with chunkSize or intervalMs");
+			}
+			if (bytesPerSecond < 1) {
+				throw new IllegalArgumentException("bytesPerSecond must be positive");
+			}
+		} else if (chunkSize == null || intervalMs == null) {
+			throw new IllegalArgumentException("either bytesPerSecond or both chunkSize and intervalMs are required");
+		} else if (chunkSize < 1 || intervalMs < 1) {
+			throw new IllegalArgumentException("chunkSize and intervalMs must be positive");
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written at once.
+	 */
+	public int chunkBytes() {
+		if (bytesPerSecond == null) {
+			return chunkSize;
+		}
+		long bytesPerTick = bytesPerSecond * TICK_NANOS / TimeUnit.SECONDS.toNanos(1);
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytesPerTick));
+	}
+
+	/**
+	 * Returns the pause between two chunks, in nanoseconds. For a bandwidth limit
+	 * it is computed from the chunk size, so rounding never changes the rate.
+	 */
+	public long intervalNanos() {
+		if (bytesPerSecond == null) {
+			return TimeUnit.MILLISECONDS.toNanos(intervalMs);
+		}
+		return chunkBytes() * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+	}
+}
@@ -0,0 +1,30 @@
+package net.mcfarb.testing.ddmock.model;
+
+import lombok.Data;
+
+/**
+ * One of the responses of a route answering several: the object returned, the
+ * status, and the share of requests it answers relative to the weights of the
+ * other variants of the route.
+ */
+@Data
+public class Variant {
+
+	private String returnId;
+	private Integer statusCode;
+	private double weight = 1;
+
+	/**
+	 * Checks that the variant returns an object and has a positive weight.
+	 *
+	 * @throws IllegalArgumentException describing the first invalid parameter
+	 */
+	public void validate() {
+		if (returnId == null || returnId.isBlank()) {
+			throw new IllegalArgumentException("returnId of a variant is required");
+		}
+		if (!(weight > 0) || Double.isInfinite(weight)) {
+			throw new IllegalArgumentException("weight of variant " + returnId + " must be positive");
+		}
+	}
+}
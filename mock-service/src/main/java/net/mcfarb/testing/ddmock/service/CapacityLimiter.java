@@ -0,0 +1,251 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.mcfarb.testing.ddmock.model.Capacity;
+import net.mcfarb.testing.ddmock.model.CapacityStats;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Enforces a {@link Capacity}: a token bucket limiting the request rate and a
+ * bulkhead limiting the requests in flight.
+ *
+ * The token bucket is kept as the theoretical arrival time of the next request
+ * (the generic cell rate algorithm), so taking a token is a single compare and
+ * set. The bulkhead counts permits in an atomic integer; requests finding it
+ * full wait in a bounded queue and are handed the permit of the next request
+ * completing, without any lock or blocked thread. The timer of a queued request
+ * is disposed as soon as it leaves the queue, so only waiting requests hold one.
+ */
+public class CapacityLimiter {
+
+	private final Capacity capacity;
+
+	// nanoseconds between two tokens and how far ahead of time a burst may run, 0 without a rate limit
+	private final long emissionInterval;
+	private final long burstTolerance;
+	private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+	private final int maxInFlight;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+	private final LongAdder rateLimited = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	public CapacityLimiter(Capacity capacity) {
+		this.capacity = capacity;
+		if (capacity.getRequestsPerSecond() != null) {
+			emissionInterval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / capacity.getRequestsPerSecond()));
+			burstTolerance = emissionInterval * (capacity.effectiveBurst() - 1);
+		} else {
+			emissionInterval = 0;
+			burstTolerance = 0;
+		}
+		maxInFlight = capacity.getMaxInFlight() != null ? capacity.getMaxInFlight() : Integer.MAX_VALUE;
+	}
+
+	public Capacity getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Takes a token of the rate limit.
+	 *
+	 * @return 0 if the request is admitted, otherwise the nanoseconds until a
+	 *         token will be available
+	 */
+	public long tryTakeToken() {
+		if (emissionInterval == 0) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		while (true) {
+			long arrival = theoreticalArrival.get();
+			long start = arrival - now > 0 ? arrival : now;
+			long wait = start - now - burstTolerance;
+			if (wait > 0) {
+				rateLimited.increment();
+				return wait;
+			}
+			if (theoreticalArrival.compareAndSet(arrival, start + emissionInterval)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Gives back a token taken by {@link #tryTakeToken()} for a request another
+	 * limit then refused, so the request does not count against this rate.
+	 */
+	public void returnToken() {
+		if (emissionInterval != 0) {
+			theoreticalArrival.addAndGet(-emissionInterval);
+		}
+	}
+
+	/**
+	 * Acquires a permit of the bulkhead, waiting in the queue while it is full.
+	 * The permit must be released once the request completes; releasing it more
+	 * than once has no effect.
+	 *
+	 * @return the permit, or {@link Permit#REJECTED} if the queue is full or the
+	 *         wait timed out
+	 */
+	public Mono<Permit> acquire() {
+		if (tryAcquire()) {
+			return Mono.just(new Permit(this));
+		}
+		if (queued.incrementAndGet() > capacity.getMaxQueue()) {
+			queued.decrementAndGet();
+			rejected.increment();
+			return Mono.just(Permit.REJECTED);
+		}
+		return Mono.<Permit>create(sink -> {
+			Waiter waiter = new Waiter(sink);
+			waiters.offer(waiter);
+			sink.onCancel(() -> cancel(waiter, false));
+			waiter.timeout = Schedulers.parallel().schedule(() -> cancel(waiter, true),
+					capacity.getQueueTimeoutMs(), TimeUnit.MILLISECONDS);
+			if (waiter.state.get() != Waiter.WAITING) {
+				// granted or cancelled before its timer was set
+				waiter.timeout.dispose();
+			}
+			// a permit may have been released before the waiter was queued
+			drain();
+		}).doOnDiscard(Permit.class, Permit::release);
+	}
+
+	private boolean tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= maxInFlight) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void release() {
+		inFlight.decrementAndGet();
+		drain();
+	}
+
+	/**
+	 * Hands free permits to the queued waiters. Rechecks the queue after
+	 * returning an unused permit, so a waiter queued concurrently is not missed.
+	 */
+	private void drain() {
+		while (!waiters.isEmpty() && tryAcquire()) {
+			Waiter waiter = waiters.poll();
+			if (waiter != null && waiter.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+				queued.decrementAndGet();
+				waiter.disposeTimeout();
+				waiter.sink.success(new Permit(this));
+			} else {
+				inFlight.decrementAndGet();
+			}
+		}
+	}
+
+	private void cancel(Waiter waiter, boolean timedOut) {
+		if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+			waiters.remove(waiter);
+			queued.decrementAndGet();
+			if (timedOut) {
+				rejected.increment();
+				waiter.sink.success(Permit.REJECTED);
+			} else {
+				waiter.disposeTimeout();
+			}
+		}
+	}
+
+	/**
+	 * Returns the seconds a client rejected with the given wait should retry
+	 * after: the wait rounded up for the rate limit, retryAfterSeconds for the
+	 * bulkhead.
+	 *
+	 * @param waitNanos the wait returned by {@link #tryTakeToken()}, or 0 for the bulkhead
+	 */
+	public long retryAfterSeconds(long waitNanos) {
+		if (waitNanos > 0) {
+			long second = TimeUnit.SECONDS.toNanos(1);
+			return (waitNanos + second - 1) / second;
+		}
+		return capacity.getRetryAfterSeconds();
+	}
+
+	public CapacityStats getStats() {
+		return new CapacityStats(inFlight.get(), queued.get(), rateLimited.sum(), rejected.sum());
+	}
+
+	/**
+	 * A permit of the bulkhead, held while a request is in flight.
+	 */
+	public static final class Permit {
+
+		/** Answer to a request the bulkhead has no room for. */
+		public static final Permit REJECTED = new Permit(null, true);
+
+		/** Permit of a request no bulkhead applies to, releasing it does nothing. */
+		public static final Permit NONE = new Permit(null, false);
+
+		private final CapacityLimiter limiter;
+		private final boolean rejected;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Permit(CapacityLimiter limiter) {
+			this(limiter, false);
+		}
+
+		private Permit(CapacityLimiter limiter, boolean rejected) {
+			this.limiter = limiter;
+			this.rejected = rejected;
+		}
+
+		public boolean isRejected() {
+			return rejected;
+		}
+
+		public void release() {
+			if (limiter != null && released.compareAndSet(false, true)) {
+				limiter.release();
+			}
+		}
+	}
+
+	private static final class Waiter {
+		private static final int WAITING = 0;
+		private static final int GRANTED = 1;
+		private static final int CANCELLED = 2;
+
+		private final MonoSink<Permit> sink;
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		// rejects the waiter once the queue timeout elapses, null until scheduled
+		private volatile Disposable timeout;
+
+		private Waiter(MonoSink<Permit> sink) {
+			this.sink = sink;
+		}
+
+		private void disposeTimeout() {
+			Disposable scheduled = timeout;
+			if (scheduled != null) {
+				scheduled.dispose();
+			}
+		}
+	}
+}
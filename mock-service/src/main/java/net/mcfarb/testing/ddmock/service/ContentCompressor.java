@@ -0,0 +1,67 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds the compressed variants of a pre-rendered response body, keyed by their
+ * Content-Encoding token in order of preference (gzip, then deflate).
+ *
+ * Bodies smaller than the minimum size are not compressed, and a variant is only
+ * kept if it is actually smaller than the original body.
+ */
+class ContentCompressor {
+
+	static final String GZIP = "gzip";
+	static final String DEFLATE = "deflate";
+
+	private final int minSize;
+
+	ContentCompressor(int minSize) {
+		this.minSize = minSize;
+	}
+
+	public Map<String, PreparedBody> compress(byte[] body) {
+		if (body == null || body.length < minSize) {
+			return Collections.emptyMap();
+		}
+		Map<String, PreparedBody> variants = new LinkedHashMap<>();
+		addIfSmaller(variants, GZIP, gzip(body), body);
+		addIfSmaller(variants, DEFLATE, deflate(body), body);
+		return variants.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(variants);
+	}
+
+	private void addIfSmaller(Map<String, PreparedBody> variants, String encoding, byte[] compressed, byte[] body) {
+		if (compressed.length < body.length) {
+			variants.put(encoding, new PreparedBody(compressed));
+		}
+	}
+
+	static byte[] gzip(byte[] body) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+		try (OutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(body);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+	// "deflate" in HTTP is the zlib format (RFC 1950), which is what DeflaterOutputStream writes
+	static byte[] deflate(byte[] body) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+		try (OutputStream deflate = new DeflaterOutputStream(out)) {
+			deflate.write(body);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+}
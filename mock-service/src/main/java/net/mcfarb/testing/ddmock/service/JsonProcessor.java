@@ -12,6 +12,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.mcfarb.testing.ddmock.aspects.MockBuilderException;
@@ -22,6 +23,7 @@ import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
 @Slf4j
 public class JsonProcessor {
 
+    @Getter
     @Setter
     private ObjectMapper objectMapper;
 
@@ -64,6 +66,14 @@ public class JsonProcessor {
         }
     }
 
+    public byte[] writeValueAsBytes(Object object) throws MockBuilderException {
+        try {
+            return objectMapper.writeValueAsBytes(object);
+        } catch (JsonProcessingException e) {
+            throw new MockBuilderException("Error serializing object ", e);
+        }
+    }
+
     public MockGeneratorInfo buildMockInfoObjectFromJson(String filename) throws IOException, URISyntaxException {
         log.info("building MockInfoGenerator from file {} ", filename);
         InputStream stream = getClass().getClassLoader().getResourceAsStream(filename + ".json");
@@ -81,4 +91,12 @@ public class JsonProcessor {
         }
         return objectMapper.readValue(stream, MockRestGeneratorInfo.class);
     }
+
+    public MockRestGeneratorInfo buildMockRestInfoObjectFromStream(InputStream stream, String sourceName)
+            throws IOException {
+        log.info("building MockRestGeneratorInfo from {} ", sourceName);
+        try (stream) {
+            return objectMapper.readValue(stream, MockRestGeneratorInfo.class);
+        }
+    }
 }
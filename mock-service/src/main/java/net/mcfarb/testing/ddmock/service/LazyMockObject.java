@@ -0,0 +1,88 @@
+package net.mcfarb.testing.ddmock.service;
+
+import net.mcfarb.testing.ddmock.aspects.MockBuilderException;
+import net.mcfarb.testing.ddmock.model.MockObject;
+
+/**
+ * A MockObject together with the Java object it is bound to. Binding (the
+ * Jackson conversion of the objectValue tree) runs at most once, on the first
+ * call to {@link #get()}, and concurrent callers wait for that single binding.
+ *
+ * When the source is released, the objectValue tree of the MockObject is cleared
+ * once the object is bound, so only the bound object stays reachable. The same
+ * MockObject cannot be bound again afterwards.
+ */
+final class LazyMockObject {
+
+	@FunctionalInterface
+	interface Binder {
+		Object bind(MockObject mockObject) throws MockBuilderException;
+	}
+
+	private final Class<?> declaredClass;
+	private final boolean releaseSource;
+	private MockObject source;
+	private Binder binder;
+
+	private volatile boolean bound;
+	// written before bound is set, so reads after checking bound see it
+	private Object value;
+
+	LazyMockObject(MockObject source, Binder binder, boolean releaseSource) {
+		this.declaredClass = source.getFakeClass();
+		this.source = source;
+		this.binder = binder;
+		this.releaseSource = releaseSource;
+	}
+
+	/**
+	 * Creates an object that needs no binding, e.g. a file-backed resource.
+	 */
+	static LazyMockObject of(Object value) {
+		LazyMockObject lazyObject = new LazyMockObject(new MockObject(), null, false);
+		lazyObject.value = value;
+		lazyObject.source = null;
+		lazyObject.bound = true;
+		return lazyObject;
+	}
+
+	/**
+	 * Returns the bound object, binding it first if this is the first use.
+	 *
+	 * @throws RuntimeException wrapping the MockBuilderException if binding fails
+	 */
+	Object get() {
+		if (!bound) {
+			bind();
+		}
+		return value;
+	}
+
+	private synchronized void bind() {
+		if (bound) {
+			return;
+		}
+		try {
+			value = binder.bind(source);
+		} catch (MockBuilderException e) {
+			throw new RuntimeException(e);
+		}
+		if (releaseSource) {
+			source.setBody(null);
+		}
+		source = null;
+		binder = null;
+		bound = true;
+	}
+
+	boolean isBound() {
+		return bound;
+	}
+
+	/**
+	 * Returns the class the MockObject declares, known without binding it.
+	 */
+	Class<?> getDeclaredClass() {
+		return declaredClass;
+	}
+}
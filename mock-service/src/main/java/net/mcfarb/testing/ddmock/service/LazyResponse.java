@@ -0,0 +1,33 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Response rendered by its factory on first use, then kept. The factory runs at
+ * most once.
+ */
+final class LazyResponse implements Supplier<PreparedResponse> {
+
+	private volatile PreparedResponse response;
+	private Supplier<PreparedResponse> responseFactory;
+
+	LazyResponse(Supplier<PreparedResponse> responseFactory) {
+		this.responseFactory = responseFactory;
+	}
+
+	@Override
+	public PreparedResponse get() {
+		PreparedResponse prepared = response;
+		if (prepared == null) {
+			synchronized (this) {
+				prepared = response;
+				if (prepared == null) {
+					prepared = responseFactory.get();
+					response = prepared;
+					responseFactory = null;
+				}
+			}
+		}
+		return prepared;
+	}
+}
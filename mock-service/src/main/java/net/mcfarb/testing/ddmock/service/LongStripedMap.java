@@ -0,0 +1,255 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Thread safe map from primitive long keys to values, used by
+ * {@link ResourceStore} so numeric ids are never boxed.
+ *
+ * Keys are spread over a fixed number of stripes, each an open addressing
+ * table with linear probing guarded by its own StampedLock, so writes to
+ * different stripes never contend. Reads first try an optimistic read of the
+ * stripe and only take its read lock when a write raced with them.
+ */
+class LongStripedMap<V> {
+
+	private static final int DEFAULT_STRIPES = 64;
+
+	private final Stripe<V>[] stripes;
+	private final int stripeMask;
+
+	LongStripedMap() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param stripes the number of stripes, rounded up to a power of two
+	 */
+	@SuppressWarnings("unchecked")
+	LongStripedMap(int stripes) {
+		int count = Integer.highestOneBit(Math.max(1, stripes - 1) << 1);
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			this.stripes[i] = new Stripe<>();
+		}
+		this.stripeMask = count - 1;
+	}
+
+	V get(long key) {
+		return stripe(key).get(key);
+	}
+
+	/**
+	 * Atomically replaces the value of a key. The function is passed the current
+	 * value, or null if the key has none, and returns the new value, or null to
+	 * remove the key; it runs under the lock of the key's stripe, so it sees the
+	 * writes of the key one at a time and in order.
+	 *
+	 * @return the new value, or null if the key has no value anymore
+	 */
+	V compute(long key, UnaryOperator<V> function) {
+		Stripe<V> stripe = stripe(key);
+		long stamp = stripe.lock.writeLock();
+		try {
+			V current = stripe.find(key);
+			V value = function.apply(current);
+			if (value == null) {
+				if (current != null) {
+					stripe.delete(key);
+				}
+			} else if (value != current) {
+				stripe.insert(key, value);
+			}
+			return value;
+		} finally {
+			stripe.lock.unlockWrite(stamp);
+		}
+	}
+
+	int size() {
+		int size = 0;
+		for (Stripe<V> stripe : stripes) {
+			long stamp = stripe.lock.readLock();
+			try {
+				size += stripe.size;
+			} finally {
+				stripe.lock.unlockRead(stamp);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Passes every entry to the action, one stripe at a time under its read
+	 * lock. Entries written concurrently may or may not be seen.
+	 */
+	void forEach(LongObjectConsumer<V> action) {
+		for (Stripe<V> stripe : stripes) {
+			long stamp = stripe.lock.readLock();
+			try {
+				Table<V> table = stripe.table;
+				for (int i = 0; i < table.keys.length; i++) {
+					if (table.values[i] != null) {
+						action.accept(table.keys[i], table.values[i]);
+					}
+				}
+			} finally {
+				stripe.lock.unlockRead(stamp);
+			}
+		}
+	}
+
+	private Stripe<V> stripe(long key) {
+		return stripes[(int) mix(key) & stripeMask];
+	}
+
+	/**
+	 * Scrambles the bits of a key, so sequential ids spread over every stripe
+	 * and every slot. The stripe uses the low bits, the slot the high ones.
+	 */
+	private static long mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 32);
+	}
+
+	@FunctionalInterface
+	interface LongObjectConsumer<V> {
+		void accept(long key, V value);
+	}
+
+	/**
+	 * Keys and values of a stripe, replaced as a whole on resize so an
+	 * optimistic reader always sees arrays of the same length.
+	 */
+	private static final class Table<V> {
+		private final long[] keys;
+		private final V[] values;
+
+		@SuppressWarnings("unchecked")
+		private Table(int capacity) {
+			keys = new long[capacity];
+			values = (V[]) new Object[capacity];
+		}
+	}
+
+	private static final class Stripe<V> {
+		private final StampedLock lock = new StampedLock();
+		private volatile Table<V> table = new Table<>(8);
+		private int size;
+
+		private V get(long key) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				V value = probe(table, key);
+				if (lock.validate(stamp)) {
+					return value;
+				}
+			}
+			stamp = lock.readLock();
+			try {
+				return probe(table, key);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		private V find(long key) {
+			return probe(table, key);
+		}
+
+		/**
+		 * Looks a key up in a table that may be written concurrently: the probe
+		 * is bounded by the table length, and a torn read is caught by the
+		 * caller's validation.
+		 */
+		private static <V> V probe(Table<V> table, long key) {
+			int mask = table.keys.length - 1;
+			int slot = slot(key, mask);
+			for (int i = 0; i <= mask; i++) {
+				V value = table.values[slot];
+				if (value == null) {
+					return null;
+				}
+				if (table.keys[slot] == key) {
+					return value;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		private void insert(long key, V value) {
+			Table<V> current = table;
+			int mask = current.keys.length - 1;
+			int slot = slot(key, mask);
+			while (current.values[slot] != null) {
+				if (current.keys[slot] == key) {
+					current.values[slot] = value;
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if ((size + 1) * 2 > current.keys.length) {
+				resize();
+				insert(key, value);
+				return;
+			}
+			current.keys[slot] = key;
+			current.values[slot] = value;
+			size++;
+		}
+
+		/**
+		 * Removes a key and shifts the entries probed past it back, so no
+		 * tombstones are needed.
+		 */
+		private V delete(long key) {
+			Table<V> current = table;
+			int mask = current.keys.length - 1;
+			int slot = slot(key, mask);
+			while (current.values[slot] != null && current.keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			V removed = current.values[slot];
+			if (removed == null) {
+				return null;
+			}
+			int gap = slot;
+			for (int next = (gap + 1) & mask; current.values[next] != null; next = (next + 1) & mask) {
+				int home = slot(current.keys[next], mask);
+				// move the entry into the gap unless its home slot lies cyclically in (gap, next]
+				if (((next - home) & mask) >= ((next - gap) & mask)) {
+					current.keys[gap] = current.keys[next];
+					current.values[gap] = current.values[next];
+					gap = next;
+				}
+			}
+			current.values[gap] = null;
+			current.keys[gap] = 0;
+			size--;
+			return removed;
+		}
+
+		private void resize() {
+			Table<V> old = table;
+			Table<V> resized = new Table<>(old.keys.length * 2);
+			int mask = resized.keys.length - 1;
+			for (int i = 0; i < old.keys.length; i++) {
+				if (old.values[i] != null) {
+					int slot = slot(old.keys[i], mask);
+					while (resized.values[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					resized.keys[slot] = old.keys[i];
+					resized.values[slot] = old.values[i];
+				}
+			}
+			table = resized;
+		}
+
+		private static int slot(long key, int mask) {
+			return (int) (mix(key) >>> 40) & mask;
+		}
+	}
+}
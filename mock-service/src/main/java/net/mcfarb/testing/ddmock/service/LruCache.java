@@ -0,0 +1,140 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import net.mcfarb.testing.ddmock.model.CacheStats;
+
+/**
+ * Bounded, thread safe least recently used cache that counts hits and misses.
+ *
+ * An access-ordered map reorders its entries on every read, so it needs a lock
+ * even for hits. The entries are therefore spread by key hash over segments,
+ * each an access-ordered map with its own lock and an equal share of the size,
+ * so concurrent requests only wait on each other when their keys fall in the
+ * same segment. Entries are evicted least recently used first within their
+ * segment, which approximates it for the whole cache; caches too small to be
+ * split keep a single segment and are exact.
+ */
+public class LruCache<K, V> {
+
+	// a segment holds at least this many entries, so small caches stay exact
+	private static final int MIN_SEGMENT_SIZE = 16;
+	private static final int MAX_SEGMENTS = Integer
+			.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+
+	private final int maxSize;
+	private final Segment<K, V>[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	@SuppressWarnings("unchecked")
+	public LruCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive, was " + maxSize);
+		}
+		this.maxSize = maxSize;
+		int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, maxSize / MIN_SEGMENT_SIZE)));
+		this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+		for (int i = 0; i < count; i++) {
+			// the remainder goes to the first segments, so the sizes add up to maxSize
+			segments[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Returns the cached value, or null if the key is not cached.
+	 */
+	public V get(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		V value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		count(value != null);
+		return value;
+	}
+
+	/**
+	 * Returns the cached value, caching the one computed by the function if the
+	 * key is not cached. The function runs under the lock of the key's segment,
+	 * so it must be quick and must not use the cache.
+	 */
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+		Segment<K, V> segment = segmentFor(key);
+		V value;
+		boolean hit;
+		synchronized (segment) {
+			value = segment.get(key);
+			hit = value != null;
+			if (!hit) {
+				value = function.apply(key);
+				segment.put(key, value);
+			}
+		}
+		count(hit);
+		return value;
+	}
+
+	public void put(K key, V value) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, value);
+		}
+	}
+
+	/**
+	 * Removes every entry. Hit and miss counters are kept.
+	 */
+	public void clear() {
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public CacheStats getStats() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return new CacheStats(hits.sum(), misses.sum(), size, maxSize);
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		if (segments.length == 1) {
+			return segments[0];
+		}
+		int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+	}
+
+	private void count(boolean hit) {
+		if (hit) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+	}
+
+	private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		private Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
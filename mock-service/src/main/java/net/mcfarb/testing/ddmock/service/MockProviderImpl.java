@@ -8,13 +8,16 @@ import static org.mockito.ArgumentMatchers.anyLong;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import org.mockito.Mockito;
+import org.mockito.stubbing.OngoingStubbing;
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -35,6 +38,11 @@ public class MockProviderImpl<T extends TestParent, S> implements BeanProvider<T
     Map<String, Object> objectMap = new HashMap<>();
     Map<String, S> serviceMap = new HashMap<>();
 
+    // every MockObject by id, bound on initialize or, when lazy, on first use
+    Map<String, LazyMockObject> lazyObjectMap = new HashMap<>();
+    // objects returned by the stubs of each bean, bound by the first getBean when lazy
+    Map<String, List<LazyMockObject>> serviceObjectMap = new HashMap<>();
+
     FunctionUtils utils = new FunctionUtils();
 
     private MockGeneratorInfo mockGeneratorInfo;
@@ -45,6 +53,19 @@ public class MockProviderImpl<T extends TestParent, S> implements BeanProvider<T
 
     boolean initialized = false;
 
+    /**
+     * Binds mock objects on the first getBean of a service returning them rather
+     * than on initialize, so objects no test asks for are never converted.
+     */
+    @Setter
+    boolean lazy = false;
+
+    /**
+     * Clears the objectValue tree of each MockObject once it is bound.
+     */
+    @Setter
+    boolean releaseSource = false;
+
     public S getBean(String beanName) {
         if (!initialized) {
             throw new BeanInitializationException(
@@ -53,10 +74,20 @@ public class MockProviderImpl<T extends TestParent, S> implements BeanProvider<T
         S bean = serviceMap.get(beanName);
         if (bean == null) {
             log.info("Bean with name {} not found in serviceMap", beanName);
+        } else if (lazy) {
+            serviceObjectMap.getOrDefault(beanName, List.of()).forEach(LazyMockObject::get);
         }
         return bean;
     }
 
+    /**
+     * Returns how many mock objects have not been bound, i.e. were never used.
+     * Always 0 unless lazy.
+     */
+    public int getUntouchedObjectCount() {
+        return (int) lazyObjectMap.values().stream().filter(lazyObject -> !lazyObject.isBound()).count();
+    }
+
     public void initialize(MockGeneratorInfo mockGeneratorInfo) throws BeanInitializationException {
         if (initialized) {
             log.warn("MockProviderImpl is already initialized. Skipping initialization.");
@@ -77,10 +108,14 @@ public class MockProviderImpl<T extends TestParent, S> implements BeanProvider<T
     public Consumer<MockObject> buildObject = (mockObject) -> {
         try {
             if (mockObject.getFakeClass() != null) {
-                Object fake = null;
-                fake = jsonProcessor.buildObject(mockObject, mockObject.getFakeClass(), mockObject.getGenericClass(),
-                        mockObject.getKeyClass(), mockObject.getValueClass(), mockObject.getVersion());
-                objectMap.put(mockObject.getId(), fake);
+                LazyMockObject lazyObject = new LazyMockObject(mockObject,
+                        source -> jsonProcessor.buildObject(source, source.getFakeClass(), source.getGenericClass(),
+                                source.getKeyClass(), source.getValueClass(), source.getVersion()),
+                        releaseSource);
+                lazyObjectMap.put(mockObject.getId(), lazyObject);
+                if (!lazy) {
+                    objectMap.put(mockObject.getId(), lazyObject.get());
+                }
             } else {
                 throw new MockBuilderException(
                         " Class name must be specified when defining MockObjects. Mock Object with id %s has no associated class.",
@@ -100,20 +135,21 @@ public class MockProviderImpl<T extends TestParent, S> implements BeanProvider<T
             Class<?> methodReturnType = method.getReturnType();
 
             String returnString[] = mockMethod.getReturnId().split(",");
+            LazyMockObject lazyObjects[] = new LazyMockObject[returnString.length];
             Object returnObject[] = new Object[returnString.length];
 
-            int guard = 0;
-            for (String objectName : returnString) {
-                returnObject[guard] = objectMap.get(objectName);
-                guard++;
-            }
-
             for (int i = 0; i < returnObject.length; i++) {
-                if (!objectMap.containsKey(returnString[i])) {
+                lazyObjects[i] = lazyObjectMap.get(returnString[i]);
+                if (lazyObjects[i] == null) {
                     throw new MockBuilderException(
                             " Object with name %s Not Found when processing service %s and method %s", returnString[i],
                             beanName, mockMethod.getMethodName());
                 }
+                if (lazy && methodReturnType.isAssignableFrom(lazyObjects[i].getDeclaredClass())) {
+                    // the declared class is enough to check the stub without binding the object
+                    continue;
+                }
+                returnObject[i] = lazyObjects[i].get();
                 if (returnObject[i] != null && methodReturnType.isAssignableFrom(returnObject[i].getClass())) {
                     continue;
                 } else if (returnObject != null) {
@@ -122,7 +158,12 @@ public class MockProviderImpl<T extends TestParent, S> implements BeanProvider<T
                             returnObject.getClass().getName(), methodReturnType, mockMethod.getMethodName());
                 }
             }
-            mockedService = this.mockWhen(mockedService, method, returnObject);
+            if (lazy) {
+                mockedService = mockWhenLazily(mockedService, method, lazyObjects);
+                serviceObjectMap.computeIfAbsent(beanName, k -> new ArrayList<>()).addAll(Arrays.asList(lazyObjects));
+            } else {
+                mockedService = this.mockWhen(mockedService, method, returnObject);
+            }
 
         } catch (MockBuilderException | IllegalAccessException | InvocationTargetException | NoSuchMethodException
                 | SecurityException e) {
@@ -143,6 +184,32 @@ public class MockProviderImpl<T extends TestParent, S> implements BeanProvider<T
 
     protected S mockWhen(S mockedObject, Method method, Object[] returnObject)
             throws IllegalAccessException, InvocationTargetException {
+        /*
+         * thenReturn(vargargs) does not exist, but thenReturn(foo, vargargs) does exist
+         * so we grab the first element and pass it as param 1, then pass the rest of
+         * the array as the param 2
+         */
+        Mockito.when(method.invoke(mockedObject, anyArguments(method))).thenReturn(returnObject[0],
+                Arrays.copyOfRange(returnObject, 1, returnObject.length));
+        return mockedObject;
+    }
+
+    /**
+     * Stubs the method like mockWhen, but each object is only bound when the stub
+     * first returns it. Consecutive answers keep the thenReturn semantics: one
+     * object per call, the last one repeated.
+     */
+    private S mockWhenLazily(S mockedObject, Method method, LazyMockObject[] returnObjects)
+            throws IllegalAccessException, InvocationTargetException {
+        OngoingStubbing<Object> stubbing = Mockito.when(method.invoke(mockedObject, anyArguments(method)));
+        for (LazyMockObject returnObject : returnObjects) {
+            stubbing = stubbing.thenAnswer(invocation -> returnObject.get());
+        }
+        return mockedObject;
+    }
+
+    // argument matchers accepting any value for each parameter of the method
+    private Object[] anyArguments(Method method) {
         Object[] array = new Object[method.getParameterCount()];
 
         for (int i = 0; i < method.getParameterCount(); i++) {
@@ -163,14 +230,7 @@ public class MockProviderImpl<T extends TestParent, S> implements BeanProvider<T
                 array[i] = any();
             }
         }
-        /*
-         * thenReturn(vargargs) does not exist, but thenReturn(foo, vargargs) does exist
-         * so we grab the first element and pass it as param 1, then pass the rest of
-         * the array as the param 2
-         */
-        Mockito.when(method.invoke(mockedObject, array)).thenReturn(returnObject[0],
-                Arrays.copyOfRange(returnObject, 1, returnObject.length));
-        return mockedObject;
+        return array;
     }
 
 }
\ No newline at end of file
@@ -1,57 +1,298 @@
 package net.mcfarb.testing.ddmock.service;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.mcfarb.testing.ddmock.aspects.MockBuilderException;
+import net.mcfarb.testing.ddmock.model.CacheStats;
 import net.mcfarb.testing.ddmock.model.MockObject;
 import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
 import net.mcfarb.testing.ddmock.model.MockRestInfo;
 import net.mcfarb.testing.ddmock.model.MockRestMethodInfo;
+import net.mcfarb.testing.ddmock.model.ResourceInfo;
+import net.mcfarb.testing.ddmock.model.Scenario;
+import net.mcfarb.testing.ddmock.model.StreamMode;
+import net.mcfarb.testing.ddmock.model.Variant;
 
 @Slf4j
-public class MockRestProvider {
+public class MockRestProvider implements Closeable {
+
+	private static final String MOCKDATA_DIRECTORY = "mockdata/";
+	private static final int DEFAULT_TEMPLATE_CACHE_SIZE = 256;
+	private static final int DEFAULT_SCENARIO_MAX_SCOPES = 10_000;
+	private static final int DEFAULT_COMPACT_EVERY = 10_000;
+
+	private volatile Map<String, LazyMockObject> objectMap = new HashMap<>();
+	private volatile RouteTrie routeTrie = new RouteTrie();
+	private volatile Map<String, ResourceStore> resourceStores = Collections.emptyMap();
+	// named scenarios, and every scenario including the ones local to a route
+	private volatile Map<String, ScenarioMachine> scenarios = Collections.emptyMap();
+	private volatile List<ScenarioMachine> scenarioMachines = Collections.emptyList();
 
-	private List<MockRestMethodInfo> restMethods = new ArrayList<>();
-	private Map<String, Object> objectMap = new HashMap<>();
+	// optional cache of resolved routes keyed by method, path and canonical query
+	private volatile LruCache<String, CachedRoute> routeCache;
 
 	@Setter
 	JsonProcessor jsonProcessor;
 
+	// compressor for response bodies, null when compression is disabled
+	private ContentCompressor compressor;
+
+	private final ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+	// number of rendered bodies memoized per response template
+	private int templateCacheSize = DEFAULT_TEMPLATE_CACHE_SIZE;
+
+	// number of scope header values whose state each scoped scenario keeps
+	private int scenarioMaxScopes = DEFAULT_SCENARIO_MAX_SCOPES;
+
+	// store keeping in-memory bodies within a heap budget, null when bodies always stay on the heap
+	private TieredBodyStore bodyStore;
+	private List<PreparedBody> storedBodies;
+
+	// bind mock objects and render responses on first use instead of when loading
+	private boolean lazy = false;
+	// clear the objectValue tree of a MockObject once it is bound
+	private boolean releaseSource = false;
+
+	// directory persisting the state of resources, null when they are kept in memory only
+	private Path resourceStateDirectory;
+	private int resourceCompactEvery = DEFAULT_COMPACT_EVERY;
+
+	// mappers rendering JSON bodies in additional formats, in order of preference
+	private Map<MediaType, ObjectMapper> formatMappers = Collections.emptyMap();
+
 	private boolean initialized = false;
 
 	public void initialize(MockRestGeneratorInfo mockRestGeneratorInfo) throws BeanInitializationException {
+		if (mockRestGeneratorInfo == null) {
+			throw new BeanInitializationException("MockRestGeneratorInfo cannot be null");
+		}
+		initialize(Collections.singletonMap(null, mockRestGeneratorInfo));
+	}
+
+	/**
+	 * Initializes the provider from several configuration sources merged into one
+	 * route table, e.g. every file found under mockdata/. The key of the map is the
+	 * source name; mock object ids are qualified as sourceName:id so that objects
+	 * with the same id in different sources do not collide. Routes are matched in
+	 * the iteration order of the map.
+	 */
+	public void initialize(Map<String, MockRestGeneratorInfo> sources) throws BeanInitializationException {
 		if (initialized) {
 			log.warn("MockRestProvider is already initialized. Skipping initialization.");
 			return;
 		}
+		if (sources == null || sources.containsValue(null)) {
+			throw new BeanInitializationException("MockRestGeneratorInfo cannot be null");
+		}
+
+		load(sources);
+
+		initialized = true;
+	}
+
+	/**
+	 * Replaces all routes and mock objects with the ones from the given configuration.
+	 * Requests resolved while reloading see either the old or the new route table,
+	 * and the route cache is invalidated.
+	 */
+	public void reload(MockRestGeneratorInfo mockRestGeneratorInfo) throws BeanInitializationException {
 		if (mockRestGeneratorInfo == null) {
 			throw new BeanInitializationException("MockRestGeneratorInfo cannot be null");
 		}
+		reload(Collections.singletonMap(null, mockRestGeneratorInfo));
+	}
 
-		// Build objects from MockObject definitions
-		mockRestGeneratorInfo.getMockObjects().forEach(this::buildObject);
+	/**
+	 * Replaces all routes and mock objects with the ones from the given sources.
+	 *
+	 * @see #initialize(Map)
+	 */
+	public void reload(Map<String, MockRestGeneratorInfo> sources) throws BeanInitializationException {
+		if (sources == null || sources.containsValue(null)) {
+			throw new BeanInitializationException("MockRestGeneratorInfo cannot be null");
+		}
 
-		// Collect all REST methods from all REST APIs
-		mockRestGeneratorInfo.getMockRestApis().forEach(this::collectRestMethods);
+		load(sources);
 
 		initialized = true;
 	}
 
-	private void buildObject(MockObject mockObject) {
+	private synchronized void load(Map<String, MockRestGeneratorInfo> sources) {
+		List<MockRoute> routes = new ArrayList<>();
+		Map<String, LazyMockObject> objects = new HashMap<>();
+		RouteTrie trie = new RouteTrie();
+		Map<String, ResourceStore> stores = new LinkedHashMap<>();
+		Map<String, PreparedBody> bodies = new ConcurrentHashMap<>();
+		Map<String, ScenarioMachine> namedScenarios = new HashMap<>();
+		List<ScenarioMachine> machines = new ArrayList<>();
+
 		try {
-			if (mockObject.getFakeClass() != null) {
-				Object fake = jsonProcessor.buildObject(mockObject, mockObject.getFakeClass(),
-						mockObject.getGenericClass(), mockObject.getKeyClass(), mockObject.getValueClass(),
-						mockObject.getVersion());
-				objectMap.put(mockObject.getId(), fake);
+			sources.forEach((sourceName, mockRestGeneratorInfo) -> {
+				// Build objects from MockObject definitions
+				mockRestGeneratorInfo.getMockObjects()
+						.forEach(mockObject -> buildObject(sourceName, mockObject, objects));
+
+				// Collect all REST methods from all REST APIs
+				mockRestGeneratorInfo.getMockRestApis()
+						.forEach(restInfo -> collectRestMethods(sourceName, restInfo, routes, objects, stores));
+			});
+
+			// Render every route's response once and compile the routes into the
+			// segment trie used for lookups. Lazy routes render on their first match.
+			Function<MockRestMethodInfo, Supplier<PreparedResponse>> responses;
+			if (lazy) {
+				responses = method -> new LazyResponse(() -> prepareLazily(trie, method, objects, bodies));
+			} else {
+				// objects are bound and routes rendered in parallel, as fork-join tasks of
+				// the calling pool or of the common pool; the trie is then built in order
+				objects.values().parallelStream().forEach(LazyMockObject::get);
+				List<PreparedResponse> rendered = routes.parallelStream()
+						.map(route -> prepareResponse(route.getMethodInfo(), objects, bodies)).toList();
+				Map<MockRestMethodInfo, PreparedResponse> routeResponses = new IdentityHashMap<>();
+				for (int i = 0; i < routes.size(); i++) {
+					routeResponses.put(routes.get(i).getMethodInfo(), rendered.get(i));
+				}
+				responses = method -> {
+					PreparedResponse response = routeResponses.containsKey(method) ? routeResponses.get(method)
+							: prepareResponse(method, objects, bodies);
+					return () -> response;
+				};
+			}
+			routes.forEach(route -> {
+				MockRestMethodInfo method = route.getMethodInfo();
+				if (method.getScenario() != null || isSequence(method.getReturnId())) {
+					route.setScenario(compileScenario(method, responses, namedScenarios, machines));
+				}
+				if (method.getVariants() != null) {
+					route.setVariantSelector(compileVariants(method, responses));
+				}
+				trie.add(route, responses.apply(method));
+			});
+		} catch (RuntimeException e) {
+			// the stores opened by this load are not served, so their journals must not stay open
+			closeStores(stores.values(), resourceStores.values());
+			throw e;
+		}
+
+		Map<String, ResourceStore> previousStores = resourceStores;
+		objectMap = objects;
+		routeTrie = trie;
+		resourceStores = stores;
+		scenarios = namedScenarios;
+		scenarioMachines = machines;
+		closeStores(previousStores.values(), stores.values());
+
+		if (bodyStore != null) {
+			List<PreparedBody> heapBodies = heapBodies(bodies.values());
+			bodyStore.replace(storedBodies, heapBodies);
+			storedBodies = new ArrayList<>(heapBodies);
+		}
+
+		LruCache<String, CachedRoute> cache = routeCache;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Closes the given stores, except the ones kept.
+	 */
+	private void closeStores(Collection<ResourceStore> stores, Collection<ResourceStore> kept) {
+		Set<ResourceStore> keptStores = Collections.newSetFromMap(new IdentityHashMap<>());
+		keptStores.addAll(kept);
+		for (ResourceStore store : stores) {
+			if (!keptStores.contains(store)) {
+				try {
+					store.close();
+				} catch (IOException e) {
+					log.warn("Failed to close a resource store", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Renders the response of a lazy route on its first match, and hands its body
+	 * to the body store unless the route table has been replaced since.
+	 */
+	private PreparedResponse prepareLazily(RouteTrie trie, MockRestMethodInfo method,
+			Map<String, LazyMockObject> objects, Map<String, PreparedBody> bodies) {
+		PreparedResponse response = prepareResponse(method, objects, bodies);
+		if (bodyStore != null && response.hasBody()) {
+			List<PreparedBody> heapBodies = heapBodies(List.of(response.getBody()));
+			synchronized (this) {
+				if (routeTrie == trie && storedBodies != null) {
+					bodyStore.replace(null, heapBodies);
+					storedBodies.addAll(heapBodies);
+				}
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Returns the bodies held as bytes on the heap, including compressed variants
+	 * and renderings in other formats.
+	 */
+	private List<PreparedBody> heapBodies(Collection<PreparedBody> bodies) {
+		List<PreparedBody> heapBodies = new ArrayList<>();
+		for (PreparedBody body : bodies) {
+			if (!body.hasElements() && !body.isFileBacked()) {
+				heapBodies.add(body);
+				body.getEncodings().forEach(encoding -> heapBodies.add(body.getEncoding(encoding)));
+				heapBodies.addAll(heapBodies(body.getFormats().stream().map(body::getFormat).toList()));
+			}
+		}
+		return heapBodies;
+	}
+
+	private void buildObject(String sourceName, MockObject mockObject, Map<String, LazyMockObject> objects) {
+		try {
+			if (mockObject.getFile() != null) {
+				// file-backed objects are served as is and never deserialized
+				objects.put(qualifyId(sourceName, mockObject.getId()), LazyMockObject.of(resolveFile(mockObject)));
+			} else if (mockObject.getFakeClass() != null) {
+				// bound right after loading, or on first use when lazy
+				objects.put(qualifyId(sourceName, mockObject.getId()),
+						new LazyMockObject(mockObject, this::bindObject, releaseSource));
 			} else {
 				throw new MockBuilderException(
 						"Class name must be specified when defining MockObjects. Mock Object with id %s has no associated class.",
@@ -62,20 +303,442 @@ public class MockRestProvider {
 		}
 	}
 
-	private void collectRestMethods(MockRestInfo restInfo) {
+	private Object bindObject(MockObject mockObject) throws MockBuilderException {
+		return jsonProcessor.buildObject(mockObject, mockObject.getFakeClass(), mockObject.getGenericClass(),
+				mockObject.getKeyClass(), mockObject.getValueClass(), mockObject.getVersion());
+	}
+
+	private Resource resolveFile(MockObject mockObject) throws MockBuilderException {
+		String location = mockObject.getFile();
+		if (!location.contains(":")) {
+			location = ResourceLoader.CLASSPATH_URL_PREFIX + MOCKDATA_DIRECTORY + location;
+		}
+		Resource resource = resourceLoader.getResource(location);
+		if (!resource.isReadable()) {
+			throw new MockBuilderException("File %s of Mock Object with id %s cannot be read.", location,
+					mockObject.getId());
+		}
+		return resource;
+	}
+
+	private void collectRestMethods(String sourceName, MockRestInfo restInfo, List<MockRoute> routes,
+			Map<String, LazyMockObject> objects, Map<String, ResourceStore> stores) {
 		String basePath = restInfo.getBasePath() != null ? restInfo.getBasePath() : "";
-		restInfo.getMethods().forEach(method -> {
-			// Combine base path with method path
-			String fullPath = combinePaths(basePath, method.getPath());
-			MockRestMethodInfo methodWithFullPath = new MockRestMethodInfo();
-			methodWithFullPath.setPath(fullPath);
-			methodWithFullPath.setHttpMethod(method.getHttpMethod());
-			methodWithFullPath.setReturnId(method.getReturnId());
-			methodWithFullPath.setStatusCode(method.getStatusCode());
-			methodWithFullPath.setHeaders(method.getHeaders());
-			methodWithFullPath.setQueryParameters(method.getQueryParameters());
-			restMethods.add(methodWithFullPath);
-		});
+		if (restInfo.getMethods() != null) {
+			restInfo.getMethods().forEach(method -> {
+				// Combine base path with method path
+				String fullPath = combinePaths(basePath, method.getPath());
+				MockRestMethodInfo methodWithFullPath = new MockRestMethodInfo();
+				methodWithFullPath.setPath(fullPath);
+				methodWithFullPath.setHttpMethod(method.getHttpMethod());
+				methodWithFullPath.setReturnId(qualifyId(sourceName, method.getReturnId()));
+				methodWithFullPath.setStatusCode(method.getStatusCode());
+				methodWithFullPath.setHeaders(method.getHeaders());
+				methodWithFullPath.setQueryParameters(method.getQueryParameters());
+				methodWithFullPath.setStream(method.getStream());
+				methodWithFullPath.setPagination(method.getPagination());
+				methodWithFullPath.setLatency(method.getLatency());
+				methodWithFullPath.setThrottle(method.getThrottle());
+				methodWithFullPath.setFaults(method.getFaults());
+				methodWithFullPath.setCapacity(method.getCapacity());
+				methodWithFullPath.setScenario(qualifyScenario(sourceName, method.getScenario()));
+				methodWithFullPath.setVariants(qualifyVariants(sourceName, method.getVariants()));
+				methodWithFullPath.setVariantKey(method.getVariantKey());
+				validate(methodWithFullPath);
+				routes.add(new MockRoute(methodWithFullPath));
+			});
+		}
+		if (restInfo.getResource() != null) {
+			// declared methods come first, so they take precedence over the generated ones
+			ResourceStore store = createStore(sourceName, basePath, restInfo.getResource(), objects);
+			stores.put(basePath, store);
+			addResourceMethod(routes, basePath, "GET", store, ResourceStore.Operation.LIST);
+			addResourceMethod(routes, basePath, "POST", store, ResourceStore.Operation.CREATE);
+			String elementPath = combinePaths(basePath, "/{id}");
+			addResourceMethod(routes, elementPath, "GET", store, ResourceStore.Operation.GET);
+			addResourceMethod(routes, elementPath, "PUT", store, ResourceStore.Operation.REPLACE);
+			addResourceMethod(routes, elementPath, "PATCH", store, ResourceStore.Operation.UPDATE);
+			addResourceMethod(routes, elementPath, "DELETE", store, ResourceStore.Operation.DELETE);
+		}
+	}
+
+	/**
+	 * Creates the store of a resource, seeded from its seed object. The seed is
+	 * bound right away, even when lazy, since the store holds its own copy.
+	 *
+	 * When resources are persisted, a store restored from its directory is not
+	 * seeded, and the store of a base path is kept across reloads.
+	 */
+	private ResourceStore createStore(String sourceName, String basePath, ResourceInfo resource,
+			Map<String, LazyMockObject> objects) {
+		ResourceStore store = null;
+		try {
+			resource.validate();
+			if (resourceStateDirectory != null && resourceStores.containsKey(basePath)) {
+				return resourceStores.get(basePath);
+			}
+			store = new ResourceStore(jsonProcessor.getObjectMapper(), resource.getIdField());
+			boolean restored = resourceStateDirectory != null
+					&& store.persistTo(resourceStateDirectory.resolve(stateDirectoryName(basePath)), resourceCompactEvery);
+			if (!restored && resource.getSeedId() != null) {
+				LazyMockObject seed = objects.get(qualifyId(sourceName, resource.getSeedId()));
+				if (seed == null) {
+					throw new IllegalArgumentException("no Mock Object with id " + resource.getSeedId());
+				}
+				store.seed(seed.get());
+			}
+			return store;
+		} catch (IllegalArgumentException | IOException e) {
+			if (store != null) {
+				closeStores(List.of(store), List.of());
+			}
+			throw new BeanInitializationException("Invalid resource " + basePath + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the name of the directory holding the state of a base path, e.g.
+	 * api_v1_orders for /api/v1/orders.
+	 */
+	private static String stateDirectoryName(String basePath) {
+		String name = basePath.replaceAll("^/+|/+$", "").replaceAll("[^A-Za-z0-9._-]", "_");
+		return name.isEmpty() ? "root" : name;
+	}
+
+	private void addResourceMethod(List<MockRoute> routes, String path, String httpMethod,
+			ResourceStore store, ResourceStore.Operation operation) {
+		MockRestMethodInfo method = new MockRestMethodInfo();
+		method.setPath(path);
+		method.setHttpMethod(httpMethod);
+		routes.add(new MockRoute(method, store, operation));
+	}
+
+	private void validate(MockRestMethodInfo method) {
+		try {
+			if (method.getLatency() != null) {
+				method.getLatency().validate();
+			}
+			if (method.getThrottle() != null) {
+				method.getThrottle().validate();
+			}
+			if (method.getFaults() != null) {
+				method.getFaults().validate();
+			}
+			if (method.getCapacity() != null) {
+				method.getCapacity().validate();
+			}
+			if (method.getPagination() != null) {
+				method.getPagination().validate();
+			}
+			Scenario scenario = method.getScenario();
+			if (scenario != null) {
+				scenario.validate();
+				boolean hasStates = scenario.getStates() != null && !scenario.getStates().isEmpty();
+				if (isSequence(method.getReturnId()) && (hasStates || scenario.getName() != null)) {
+					throw new IllegalArgumentException("a returnId sequence only takes a scenario scopeHeader");
+				}
+				if (!isSequence(method.getReturnId()) && !hasStates) {
+					throw new IllegalArgumentException("scenario states are required");
+				}
+			}
+			if (method.getVariants() != null) {
+				if (method.getVariants().isEmpty()) {
+					throw new IllegalArgumentException("variants must not be empty");
+				}
+				if (scenario != null || isSequence(method.getReturnId())) {
+					throw new IllegalArgumentException("variants cannot be combined with a scenario or sequence");
+				}
+				method.getVariants().forEach(Variant::validate);
+			}
+			if (method.getVariantKey() != null) {
+				if (method.getVariants() == null) {
+					throw new IllegalArgumentException("variantKey requires variants");
+				}
+				VariantSelector.validateKey(method.getVariantKey());
+			}
+		} catch (IllegalArgumentException e) {
+			throw new BeanInitializationException(
+					"Invalid route " + method.getHttpMethod() + " " + method.getPath() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Compiles the responses of a route in the states of its scenario, each state
+	 * rendered like a route returning the state's object with the state's status.
+	 * A returnId sequence is compiled as the states 1 to n of a scenario local to
+	 * the route, each moving to the next one and the last one staying.
+	 *
+	 * Routes declaring the same scenario name share its state, so they must agree
+	 * on its scopeHeader and initialState.
+	 */
+	private RouteScenario compileScenario(MockRestMethodInfo method,
+			Function<MockRestMethodInfo, Supplier<PreparedResponse>> responses,
+			Map<String, ScenarioMachine> namedScenarios, List<ScenarioMachine> machines) {
+		Scenario scenario = method.getScenario() != null ? method.getScenario() : new Scenario();
+		Map<String, RouteScenario.Step> steps = new LinkedHashMap<>();
+		ScenarioMachine machine;
+		if (isSequence(method.getReturnId())) {
+			String[] returnIds = method.getReturnId().split(",");
+			machine = new ScenarioMachine(null, scenario.getScopeHeader(), "1", scenarioMaxScopes);
+			machines.add(machine);
+			for (int i = 0; i < returnIds.length; i++) {
+				steps.put(String.valueOf(i + 1),
+						new RouteScenario.Step(responses.apply(responseMethod(method, returnIds[i].trim(), null)),
+								i + 1 < returnIds.length ? String.valueOf(i + 2) : null));
+			}
+		} else {
+			scenario.getStates().forEach((name, state) -> steps.put(name, new RouteScenario.Step(
+					state != null && (state.getReturnId() != null || state.getStatusCode() != null)
+							? responses.apply(responseMethod(method, state.getReturnId(), state.getStatusCode()))
+							: null,
+					state != null ? state.getNext() : null)));
+			if (scenario.getName() == null) {
+				machine = new ScenarioMachine(null, scenario.getScopeHeader(), scenario.getInitialState(),
+						scenarioMaxScopes);
+				machines.add(machine);
+			} else {
+				machine = namedScenarios.get(scenario.getName());
+				if (machine == null) {
+					machine = new ScenarioMachine(scenario.getName(), scenario.getScopeHeader(),
+							scenario.getInitialState(), scenarioMaxScopes);
+					namedScenarios.put(scenario.getName(), machine);
+					machines.add(machine);
+				} else if (!Objects.equals(machine.getScopeHeader(), scenario.getScopeHeader())
+						|| !machine.getInitialState().equals(scenario.getInitialState())) {
+					throw new BeanInitializationException("Invalid route " + method.getHttpMethod() + " "
+							+ method.getPath() + ": scenario " + scenario.getName()
+							+ " is declared with another scopeHeader or initialState");
+				}
+			}
+		}
+		return new RouteScenario(machine, steps);
+	}
+
+	/**
+	 * Compiles the weights of the variants of a route into the alias table
+	 * selecting them, each variant rendered like a route returning its object
+	 * with its status.
+	 */
+	private VariantSelector compileVariants(MockRestMethodInfo method,
+			Function<MockRestMethodInfo, Supplier<PreparedResponse>> responses) {
+		List<Variant> variants = method.getVariants();
+		List<Supplier<PreparedResponse>> variantResponses = new ArrayList<>(variants.size());
+		double[] weights = new double[variants.size()];
+		for (int i = 0; i < weights.length; i++) {
+			Variant variant = variants.get(i);
+			MockRestMethodInfo variantMethod = responseMethod(method, variant.getReturnId(), variant.getStatusCode());
+			variantResponses.add(responses.apply(variantMethod));
+			weights[i] = variant.getWeight();
+		}
+		return new VariantSelector(variantResponses, weights, method.getVariantKey());
+	}
+
+	/**
+	 * Returns the route as it answers with another object and status, in a state
+	 * of its scenario or as one of its variants: the route's own headers,
+	 * streaming and pagination are kept, and its status when none is given.
+	 */
+	private static MockRestMethodInfo responseMethod(MockRestMethodInfo method, String returnId, Integer statusCode) {
+		MockRestMethodInfo responseMethod = new MockRestMethodInfo();
+		responseMethod.setPath(method.getPath());
+		responseMethod.setHttpMethod(method.getHttpMethod());
+		responseMethod.setReturnId(returnId);
+		responseMethod.setStatusCode(statusCode != null ? statusCode : method.getStatusCode());
+		responseMethod.setHeaders(method.getHeaders());
+		responseMethod.setStream(method.getStream());
+		responseMethod.setPagination(method.getPagination());
+		return responseMethod;
+	}
+
+	private static boolean isSequence(String returnId) {
+		return returnId != null && returnId.indexOf(',') >= 0;
+	}
+
+	/**
+	 * Renders the status, headers and body of a route. Bodies are serialized once
+	 * per mock object and shared by all routes returning that object, together with
+	 * their ETag and, when compression is enabled, their compressed variants.
+	 * Templated bodies get no variants, as they are rendered per request. String
+	 * objects are written as is, file-backed objects are streamed from their file
+	 * (Content-Type guessed from the file name) and every other object is
+	 * serialized to JSON. Streamed or paginated routes get the elements of their
+	 * List object serialized one by one instead.
+	 */
+	private PreparedResponse prepareResponse(MockRestMethodInfo method, Map<String, LazyMockObject> objects,
+			Map<String, PreparedBody> bodies) {
+		int status = method.getStatusCode() != null ? method.getStatusCode() : HttpStatus.OK.value();
+		HttpHeaders headers = new HttpHeaders();
+		if (method.getHeaders() != null) {
+			method.getHeaders().forEach(headers::add);
+		}
+
+		LazyMockObject lazyObject = method.getReturnId() != null ? objects.get(method.getReturnId()) : null;
+		Object responseObject = lazyObject != null ? lazyObject.get() : null;
+		if (responseObject == null) {
+			return new PreparedResponse(status, headers, null);
+		}
+		StreamMode stream = method.getStream();
+		if (headers.getContentType() == null) {
+			if (stream != null) {
+				headers.setContentType(stream.getMediaType());
+			} else if (responseObject instanceof Resource resource) {
+				headers.setContentType(
+						MediaTypeFactory.getMediaType(resource).orElse(MediaType.APPLICATION_OCTET_STREAM));
+			} else {
+				headers.setContentType(MediaType.APPLICATION_JSON);
+			}
+		}
+		if (stream != null || method.getPagination() != null) {
+			String key = (stream != null ? stream.name() : "ELEMENTS") + " " + method.getReturnId();
+			PreparedBody body = bodies.computeIfAbsent(key, id -> prepareElements(method, responseObject, stream));
+			return new PreparedResponse(status, headers, body, stream, method.getPagination());
+		}
+		PreparedBody body = bodies.computeIfAbsent(method.getReturnId(), id -> prepareBody(responseObject));
+		if (body.isFileBacked()) {
+			return new PreparedResponse(status, headers, body);
+		}
+		// bodies referencing {{path.x}}, {{query.x}} or {{header.x}} are rendered per request
+		ResponseTemplate template = ResponseTemplate.compile(body.getBytes(), isJson(headers.getContentType()),
+				templateCacheSize);
+		return new PreparedResponse(status, headers, body, template);
+	}
+
+	private boolean isJson(MediaType contentType) {
+		return MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+				|| (contentType.getSubtype() != null && contentType.getSubtype().endsWith("+json"));
+	}
+
+	/**
+	 * Serializes every element of a List object on its own, framed for the stream
+	 * mode if there is one, so elements can be sent one or one page at a time.
+	 */
+	private PreparedBody prepareElements(MockRestMethodInfo method, Object responseObject, StreamMode stream) {
+		if (!(responseObject instanceof Iterable<?> list)) {
+			throw new BeanInitializationException(String.format(
+					"Route %s %s streams or paginates Mock Object %s, which is not a List", method.getHttpMethod(),
+					method.getPath(), method.getReturnId()));
+		}
+		List<byte[]> elements = new ArrayList<>();
+		for (Object element : list) {
+			byte[] json = toJson(element);
+			elements.add(stream != null ? stream.frame(json) : json);
+		}
+		return new PreparedBody(elements);
+	}
+
+	private PreparedBody prepareBody(Object responseObject) {
+		if (responseObject instanceof Resource resource) {
+			try {
+				return new PreparedBody(resource);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		byte[] bytes = render(responseObject);
+		if (ResponseTemplate.hasPlaceholders(bytes)) {
+			// templated bodies are always rendered per request, so variants would go unused
+			return new PreparedBody(bytes);
+		}
+		Map<MediaType, PreparedBody> formats = Collections.emptyMap();
+		if (!formatMappers.isEmpty() && !(responseObject instanceof String)) {
+			formats = new LinkedHashMap<>();
+			for (Map.Entry<MediaType, ObjectMapper> format : formatMappers.entrySet()) {
+				formats.put(format.getKey(), compress(encode(format.getValue(), responseObject)));
+			}
+		}
+		return new PreparedBody(bytes, compressor == null ? Collections.emptyMap() : compressor.compress(bytes),
+				formats);
+	}
+
+	private PreparedBody compress(byte[] bytes) {
+		return compressor == null ? new PreparedBody(bytes) : new PreparedBody(bytes, compressor.compress(bytes));
+	}
+
+	private byte[] encode(ObjectMapper mapper, Object object) {
+		try {
+			return mapper.writeValueAsBytes(object);
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException(new MockBuilderException("Error serializing object ", e));
+		}
+	}
+
+	private byte[] render(Object responseObject) {
+		if (responseObject instanceof String string) {
+			return string.getBytes(StandardCharsets.UTF_8);
+		}
+		return toJson(responseObject);
+	}
+
+	private byte[] toJson(Object object) {
+		try {
+			return jsonProcessor.writeValueAsBytes(object);
+		} catch (MockBuilderException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Qualifies a mock object id with the name of the source it was loaded from,
+	 * each id of a returnId sequence on its own. Ids from an unnamed source are
+	 * left as they are.
+	 */
+	private String qualifyId(String sourceName, String id) {
+		if (sourceName == null || id == null) {
+			return id;
+		}
+		if (!isSequence(id)) {
+			return sourceName + ":" + id;
+		}
+		return Arrays.stream(id.split(",")).map(part -> sourceName + ":" + part.trim())
+				.collect(Collectors.joining(","));
+	}
+
+	/**
+	 * Returns a copy of the variants of a route whose return ids are qualified
+	 * with the name of the source.
+	 */
+	private List<Variant> qualifyVariants(String sourceName, List<Variant> variants) {
+		if (variants == null) {
+			return null;
+		}
+		List<Variant> qualified = new ArrayList<>(variants.size());
+		for (Variant variant : variants) {
+			Variant qualifiedVariant = new Variant();
+			qualifiedVariant.setReturnId(qualifyId(sourceName, variant.getReturnId()));
+			qualifiedVariant.setStatusCode(variant.getStatusCode());
+			qualifiedVariant.setWeight(variant.getWeight());
+			qualified.add(qualifiedVariant);
+		}
+		return qualified;
+	}
+
+	/**
+	 * Returns a copy of a scenario whose states return ids qualified with the name
+	 * of the source, so the declared scenario is never changed.
+	 */
+	private Scenario qualifyScenario(String sourceName, Scenario scenario) {
+		if (scenario == null) {
+			return null;
+		}
+		Scenario qualified = new Scenario();
+		qualified.setName(scenario.getName());
+		qualified.setScopeHeader(scenario.getScopeHeader());
+		qualified.setInitialState(scenario.getInitialState());
+		if (scenario.getStates() != null) {
+			Map<String, Scenario.State> states = new LinkedHashMap<>();
+			scenario.getStates().forEach((name, state) -> {
+				Scenario.State qualifiedState = null;
+				if (state != null) {
+					qualifiedState = new Scenario.State();
+					qualifiedState.setReturnId(qualifyId(sourceName, state.getReturnId()));
+					qualifiedState.setStatusCode(state.getStatusCode());
+					qualifiedState.setNext(state.getNext());
+				}
+				states.put(name, qualifiedState);
+			});
+			qualified.setStates(states);
+		}
+		return qualified;
 	}
 
 	private String combinePaths(String basePath, String path) {
@@ -92,45 +755,180 @@ public class MockRestProvider {
 	}
 
 	public MockRestMethodInfo findRestMethod(String path, String httpMethod, Map<String, String> queryParams) {
+		RouteMatch match = match(path, httpMethod, queryParams);
+		return match != null ? match.getMethodInfo() : null;
+	}
+
+	/**
+	 * Resolves a request in a single pass over the request path.
+	 * Returns the matched method together with its captured path variables,
+	 * or null if no configured route matches.
+	 */
+	public RouteMatch match(String path, String httpMethod, Map<String, String> queryParams) {
 		if (!initialized) {
 			throw new BeanInitializationException(
 					"MockRestProvider is not initialized. Please call initialize() before accessing methods.");
 		}
 
-		Optional<MockRestMethodInfo> method = restMethods.stream()
-				.filter(m -> matchesRequest(m, path, httpMethod, queryParams))
-				.findFirst();
+		RouteTrie trie = routeTrie;
+		LruCache<String, CachedRoute> cache = routeCache;
+		if (cache == null) {
+			return trie.match(path, httpMethod, queryParams);
+		}
 
-		return method.orElse(null);
+		String key = routeCacheKey(path, httpMethod, queryParams);
+		CachedRoute cached = cache.get(key);
+		// entries resolved against a previous route table are treated as misses
+		if (cached != null && cached.routeTrie == trie) {
+			return cached.match;
+		}
+		RouteMatch match = trie.match(path, httpMethod, queryParams);
+		cache.put(key, new CachedRoute(trie, match));
+		return match;
 	}
 
-	private boolean matchesRequest(MockRestMethodInfo method, String path, String httpMethod,
-			Map<String, String> queryParams) {
-		// Match path with wildcard support
-		if (!matchesPath(method.getPath(), path)) {
-			return false;
+	/**
+	 * Enables a bounded LRU cache of resolved routes holding at most the given
+	 * number of entries, keyed by HTTP method, raw path and canonical query.
+	 * Both matches and misses are cached. A size of 0 or less disables the cache.
+	 */
+	public void setRouteCacheSize(int routeCacheSize) {
+		routeCache = routeCacheSize > 0 ? new LruCache<>(routeCacheSize) : null;
+	}
+
+	/**
+	 * Enables pre-compressed gzip and deflate variants of response bodies of at
+	 * least minSize bytes. A negative size disables compression (the default).
+	 * Takes effect on the next initialize or reload.
+	 */
+	public void setCompressionMinSize(int minSize) {
+		compressor = minSize >= 0 ? new ContentCompressor(minSize) : null;
+	}
+
+	/**
+	 * Renders every JSON body in additional formats as well, e.g. CBOR or Smile,
+	 * each with its own ObjectMapper (which should share the settings of the
+	 * JsonProcessor's). String, file-backed, streamed and paginated bodies are
+	 * only served as they are. Takes effect on the next initialize or reload.
+	 *
+	 * @param formatMappers the mapper of each media type, in order of preference
+	 */
+	public void setFormatMappers(Map<MediaType, ObjectMapper> formatMappers) {
+		this.formatMappers = new LinkedHashMap<>(formatMappers);
+	}
+
+	/**
+	 * Sets how many rendered bodies each response template memoizes, keyed by the
+	 * values substituted into it. Takes effect on the next initialize or reload.
+	 */
+	public void setTemplateCacheSize(int templateCacheSize) {
+		if (templateCacheSize <= 0) {
+			throw new IllegalArgumentException("Template cache size must be positive, was " + templateCacheSize);
 		}
+		this.templateCacheSize = templateCacheSize;
+	}
 
-		// Match HTTP method
-		if (method.getHttpMethod() != null && !method.getHttpMethod().equalsIgnoreCase(httpMethod)) {
-			return false;
+	/**
+	 * Sets how many values of its scope header a scoped scenario keeps a state
+	 * for. Past that, the least recently seen value is dropped and starts over in
+	 * the initial state. Takes effect on the next initialize or reload.
+	 */
+	public void setScenarioMaxScopes(int scenarioMaxScopes) {
+		if (scenarioMaxScopes <= 0) {
+			throw new IllegalArgumentException("Scenario max scopes must be positive, was " + scenarioMaxScopes);
 		}
+		this.scenarioMaxScopes = scenarioMaxScopes;
+	}
 
-		// Match query parameters if specified
-		if (method.getQueryParameters() != null && !method.getQueryParameters().isEmpty()) {
-			if (queryParams == null) {
-				return false;
-			}
-			// Check if all required query parameters match
-			for (Map.Entry<String, String> entry : method.getQueryParameters().entrySet()) {
-				String actualValue = queryParams.get(entry.getKey());
-				if (actualValue == null || !actualValue.equals(entry.getValue())) {
-					return false;
-				}
-			}
+	/**
+	 * Tiers the in-memory response bodies through the given store, which keeps them
+	 * within its heap budget by spilling the least recently read ones to disk. A
+	 * store may be shared by several providers. Takes effect on the next
+	 * initialize or reload; null keeps every body on the heap (the default).
+	 */
+	public synchronized void setBodyStore(TieredBodyStore bodyStore) {
+		if (this.bodyStore != null && storedBodies != null) {
+			this.bodyStore.replace(storedBodies, List.of());
 		}
+		this.bodyStore = bodyStore;
+		storedBodies = null;
+	}
 
-		return true;
+	/**
+	 * Persists the state of every resource under the given directory, one
+	 * subdirectory per base path, so it survives reloads and restarts: a
+	 * resource is only seeded when its directory holds no state. The journal of
+	 * each resource is compacted into a snapshot every compactEvery records.
+	 * Takes effect on the next initialize or reload; null keeps resources in
+	 * memory only (the default).
+	 */
+	public void setResourceStateDirectory(Path resourceStateDirectory, int compactEvery) {
+		this.resourceStateDirectory = resourceStateDirectory;
+		this.resourceCompactEvery = compactEvery;
+	}
+
+	/**
+	 * Commits the pending mutations of persisted resources and closes their
+	 * journals. Requests still changing a resource afterwards fail.
+	 */
+	@Override
+	public synchronized void close() {
+		closeStores(resourceStores.values(), List.of());
+	}
+
+	/**
+	 * Returns the store of the resource declared on a base path, or null if the
+	 * base path declares none.
+	 */
+	public ResourceStore getResourceStore(String basePath) {
+		return resourceStores.get(basePath);
+	}
+
+	/**
+	 * Returns the current state of a named scenario, or null if no route declares
+	 * it.
+	 *
+	 * @param scope the value of the scenario's scope header, or null for the unscoped state
+	 */
+	public String getScenarioState(String name, String scope) {
+		ScenarioMachine machine = scenarios.get(name);
+		return machine != null ? machine.getState(scope) : null;
+	}
+
+	/**
+	 * Moves every scenario and returnId sequence back to its initial state, for
+	 * every scope.
+	 */
+	public void resetScenarios() {
+		scenarioMachines.forEach(ScenarioMachine::reset);
+	}
+
+	/**
+	 * Returns the statistics of the route cache, or null if it is disabled.
+	 */
+	public CacheStats getRouteCacheStats() {
+		LruCache<String, CachedRoute> cache = routeCache;
+		return cache != null ? cache.getStats() : null;
+	}
+
+	private String routeCacheKey(String path, String httpMethod, Map<String, String> queryParams) {
+		StringBuilder key = new StringBuilder(64).append(httpMethod).append(' ').append(path);
+		if (queryParams != null && !queryParams.isEmpty()) {
+			// query parameter order does not change the resolved route
+			Map<String, String> sorted = queryParams.size() == 1 ? queryParams : new TreeMap<>(queryParams);
+			sorted.forEach((name, value) -> key.append('\0').append(name).append('=').append(value));
+		}
+		return key.toString();
+	}
+
+	private static final class CachedRoute {
+		private final RouteTrie routeTrie;
+		private final RouteMatch match;
+
+		private CachedRoute(RouteTrie routeTrie, RouteMatch match) {
+			this.routeTrie = routeTrie;
+			this.match = match;
+		}
 	}
 
 	/**
@@ -167,7 +965,7 @@ public class MockRestProvider {
 			String actualSegment = actualSegments[i];
 
 			// Check if it's a wildcard
-			if (isWildcard(patternSegment)) {
+			if (RouteTrie.isWildcard(patternSegment)) {
 				continue; // Wildcard matches anything
 			}
 
@@ -181,33 +979,109 @@ public class MockRestProvider {
 	}
 
 	/**
-	 * Checks if a path segment is a wildcard.
-	 * Supports: {paramName} or *
+	 * Returns the object the method returns, binding it first in lazy mode.
 	 */
-	private boolean isWildcard(String segment) {
-		if (segment == null || segment.isEmpty()) {
-			return false;
-		}
-		// Check for * wildcard
-		if ("*".equals(segment)) {
-			return true;
-		}
-		// Check for {paramName} style path parameter
-		if (segment.startsWith("{") && segment.endsWith("}")) {
-			return true;
-		}
-		return false;
-	}
-
 	public Object getResponseObject(MockRestMethodInfo method) {
 		if (method == null || method.getReturnId() == null) {
 			return null;
 		}
-		return objectMap.get(method.getReturnId());
+		LazyMockObject lazyObject = objectMap.get(method.getReturnId());
+		return lazyObject != null ? lazyObject.get() : null;
 	}
 
+	/**
+	 * Returns the mock objects by id. In lazy mode an object is bound when it is
+	 * read from the map; size() and containsKey() bind nothing.
+	 */
 	public Map<String, Object> getObjectMap() {
-		return objectMap;
+		return new ObjectMapView(objectMap);
+	}
+
+	/**
+	 * Returns how many mock objects have not been bound, i.e. were never used
+	 * since the last load. Always 0 unless lazy.
+	 */
+	public int getUntouchedObjectCount() {
+		int untouched = 0;
+		for (LazyMockObject lazyObject : objectMap.values()) {
+			if (!lazyObject.isBound()) {
+				untouched++;
+			}
+		}
+		return untouched;
+	}
+
+	/**
+	 * Binds mock objects and renders route responses on first use rather than
+	 * when the configuration is loaded, so objects no request asks for are never
+	 * converted. Binding errors then surface on first use instead of on load.
+	 * Takes effect on the next initialize or reload.
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	/**
+	 * Clears the objectValue tree of each MockObject once it is bound, so only the
+	 * bound object stays on the heap. The same configuration cannot be loaded
+	 * again afterwards. Takes effect on the next initialize or reload.
+	 */
+	public void setReleaseSource(boolean releaseSource) {
+		this.releaseSource = releaseSource;
+	}
+
+	/**
+	 * Read-only map view binding lazy objects as their values are read.
+	 */
+	private static final class ObjectMapView extends AbstractMap<String, Object> {
+		private final Map<String, LazyMockObject> objects;
+
+		private ObjectMapView(Map<String, LazyMockObject> objects) {
+			this.objects = objects;
+		}
+
+		@Override
+		public Object get(Object key) {
+			LazyMockObject lazyObject = objects.get(key);
+			return lazyObject != null ? lazyObject.get() : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return objects.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return objects.size();
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					Iterator<Entry<String, LazyMockObject>> entries = objects.entrySet().iterator();
+					return new Iterator<>() {
+						@Override
+						public boolean hasNext() {
+							return entries.hasNext();
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							Entry<String, LazyMockObject> entry = entries.next();
+							return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().get());
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return objects.size();
+				}
+			};
+		}
 	}
 
 	/**
@@ -216,6 +1090,9 @@ public class MockRestProvider {
 	 *
 	 * Example: pattern="/users/{userId}/posts/{postId}", actualPath="/users/123/posts/456"
 	 * Returns: {"userId": "123", "postId": "456"}
+	 *
+	 * When resolving a request prefer {@link #match(String, String, Map)}, which
+	 * returns the path variables without scanning the path a second time.
 	 */
 	public Map<String, String> extractPathParameters(String pattern, String actualPath) {
 		Map<String, String> params = new HashMap<>();
@@ -0,0 +1,86 @@
+package net.mcfarb.testing.ddmock.service;
+
+import net.mcfarb.testing.ddmock.model.MockRestMethodInfo;
+
+/**
+ * REST route compiled by a MockRestProvider: the method declaring it together
+ * with the runtime state the provider builds for it when loading, kept until
+ * the route table is replaced. Matches of the route all share it.
+ *
+ * The declared method stays a plain configuration object; the limiter of its
+ * capacity, the responses of its scenario or variants and the store of a
+ * resource route live here instead.
+ */
+public final class MockRoute {
+
+	private final MockRestMethodInfo methodInfo;
+	private final CapacityLimiter limiter;
+	private final ResourceStore resourceStore;
+	private final ResourceStore.Operation resourceOperation;
+	// compiled once every route is collected, before the route is added to the trie
+	private RouteScenario scenario;
+	private VariantSelector variantSelector;
+
+	MockRoute(MockRestMethodInfo methodInfo) {
+		this(methodInfo, null, null);
+	}
+
+	/**
+	 * @param resourceStore     the store a route generated for a resource operates on, or null
+	 * @param resourceOperation the operation the route executes on the store, or null
+	 */
+	MockRoute(MockRestMethodInfo methodInfo, ResourceStore resourceStore, ResourceStore.Operation resourceOperation) {
+		this.methodInfo = methodInfo;
+		this.limiter = methodInfo.getCapacity() != null ? new CapacityLimiter(methodInfo.getCapacity()) : null;
+		this.resourceStore = resourceStore;
+		this.resourceOperation = resourceOperation;
+	}
+
+	public MockRestMethodInfo getMethodInfo() {
+		return methodInfo;
+	}
+
+	/**
+	 * Returns the limiter enforcing the capacity of the route, or null if the
+	 * route declares no capacity.
+	 */
+	public CapacityLimiter getLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Returns the store the route operates on, or null unless the route was
+	 * generated for a resource.
+	 */
+	public ResourceStore getResourceStore() {
+		return resourceStore;
+	}
+
+	public ResourceStore.Operation getResourceOperation() {
+		return resourceOperation;
+	}
+
+	/**
+	 * Returns the responses of the route by state, or null unless the route has
+	 * a scenario or a returnId sequence.
+	 */
+	public RouteScenario getScenario() {
+		return scenario;
+	}
+
+	void setScenario(RouteScenario scenario) {
+		this.scenario = scenario;
+	}
+
+	/**
+	 * Returns the alias table selecting the variants of the route, or null unless
+	 * the route has variants.
+	 */
+	public VariantSelector getVariantSelector() {
+		return variantSelector;
+	}
+
+	void setVariantSelector(VariantSelector variantSelector) {
+		this.variantSelector = variantSelector;
+	}
+}
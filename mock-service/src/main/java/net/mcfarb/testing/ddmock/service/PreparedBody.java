@@ -0,0 +1,328 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Serialized body of a pre-rendered response, with the strong ETag of its bytes,
+ * its compressed variants keyed by Content-Encoding and its renderings in other
+ * formats (e.g. CBOR) keyed by media type. Every variant carries the ETag of its
+ * own bytes, so each representation has a distinct ETag.
+ *
+ * A body is either held in memory, held as the separately serialized elements of
+ * a List (for streamed or paginated routes), or backed by a file that is streamed
+ * to the client as is; file-backed bodies are never loaded onto the heap.
+ *
+ * Instances are built when the MockRestProvider is initialized and shared by all
+ * routes returning the same mock object.
+ *
+ * In-memory bodies registered with a {@link TieredBodyStore} record when and how
+ * often they are read, and may be spilled: their bytes are then dropped from the
+ * heap and read from a memory-mapped region of the store's spill file instead.
+ */
+public final class PreparedBody {
+
+	private volatile byte[] bytes;
+	// read-only mapped copy of the bytes, set once the body has been spilled
+	private volatile ByteBuffer spilled;
+	private volatile TieredBodyStore store;
+	private volatile long lastAccess;
+	private final LongAdder accesses = new LongAdder();
+	private volatile long accessesWhenSpilled;
+
+	private final List<byte[]> elements;
+	private final Resource resource;
+	private final long contentLength;
+	private final String eTag;
+	private final Map<String, PreparedBody> encodings;
+	private final Map<MediaType, PreparedBody> formats;
+
+	public PreparedBody(byte[] bytes) {
+		this(bytes, Collections.emptyMap());
+	}
+
+	/**
+	 * @param bytes     the serialized body
+	 * @param encodings compressed variants keyed by Content-Encoding, in order of preference
+	 */
+	public PreparedBody(byte[] bytes, Map<String, PreparedBody> encodings) {
+		this(bytes, encodings, Collections.emptyMap());
+	}
+
+	/**
+	 * @param bytes     the serialized body
+	 * @param encodings compressed variants keyed by Content-Encoding, in order of preference
+	 * @param formats   the body rendered in other formats keyed by media type, in order of preference
+	 */
+	public PreparedBody(byte[] bytes, Map<String, PreparedBody> encodings, Map<MediaType, PreparedBody> formats) {
+		this.bytes = bytes;
+		this.elements = null;
+		this.resource = null;
+		this.contentLength = bytes.length;
+		this.eTag = quote(DigestUtils.md5DigestAsHex(bytes));
+		this.encodings = encodings;
+		this.formats = formats;
+	}
+
+	/**
+	 * Creates a body made of the separately serialized elements of a List, which
+	 * are written one at a time or a page at a time.
+	 *
+	 * @param elements the serialized elements, in order
+	 */
+	public PreparedBody(List<byte[]> elements) {
+		this.bytes = null;
+		this.elements = Collections.unmodifiableList(elements);
+		this.resource = null;
+		MessageDigest digest = md5();
+		long length = 0;
+		for (byte[] element : elements) {
+			digest.update(element);
+			length += element.length;
+		}
+		this.contentLength = length;
+		this.eTag = quote(HexFormat.of().formatHex(digest.digest()));
+		this.encodings = Collections.emptyMap();
+		this.formats = Collections.emptyMap();
+	}
+
+	/**
+	 * Creates a file-backed body. The file is read once, as a stream, to compute
+	 * its ETag.
+	 *
+	 * @param resource the file served as the body
+	 * @throws IOException if the file cannot be read
+	 */
+	public PreparedBody(Resource resource) throws IOException {
+		this.bytes = null;
+		this.elements = null;
+		this.resource = resource;
+		this.contentLength = resource.contentLength();
+		try (InputStream stream = resource.getInputStream()) {
+			this.eTag = quote(DigestUtils.md5DigestAsHex(stream));
+		}
+		this.encodings = Collections.emptyMap();
+		this.formats = Collections.emptyMap();
+	}
+
+	private static MessageDigest md5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 is not available", e);
+		}
+	}
+
+	private static String quote(String hash) {
+		return "\"" + hash + "\"";
+	}
+
+	/**
+	 * Returns the body bytes, or null if the body is made of elements or is
+	 * file-backed. The array is shared and must not be modified; for a spilled
+	 * body it is a copy read from the spill file.
+	 *
+	 * @see #getContent()
+	 */
+	public byte[] getBytes() {
+		byte[] content = bytes;
+		if (content != null) {
+			recordAccess();
+			return content;
+		}
+		ByteBuffer region = spilled;
+		if (region == null) {
+			return null;
+		}
+		recordSpilledAccess();
+		byte[] copy = new byte[region.remaining()];
+		region.duplicate().get(copy);
+		return copy;
+	}
+
+	/**
+	 * Returns the body bytes as a buffer, or null if the body is made of elements
+	 * or is file-backed. A spilled body is returned as a view of its mapped
+	 * region, so it is written without being copied back onto the heap. The
+	 * buffer is a new view on every call and must not be modified.
+	 */
+	public ByteBuffer getContent() {
+		byte[] content = bytes;
+		if (content != null) {
+			recordAccess();
+			return ByteBuffer.wrap(content);
+		}
+		ByteBuffer region = spilled;
+		if (region == null) {
+			return null;
+		}
+		recordSpilledAccess();
+		return region.duplicate();
+	}
+
+	private void recordAccess() {
+		if (store != null) {
+			lastAccess = System.nanoTime();
+			accesses.increment();
+		}
+	}
+
+	private void recordSpilledAccess() {
+		recordAccess();
+		TieredBodyStore bodyStore = store;
+		if (bodyStore != null) {
+			bodyStore.spilledAccess(this);
+		}
+	}
+
+	/**
+	 * Returns whether the bytes of the body are currently read from the spill
+	 * file rather than held on the heap.
+	 */
+	public boolean isSpilled() {
+		return bytes == null && spilled != null;
+	}
+
+	/**
+	 * Returns the System.nanoTime() of the last read of a registered body, or 0
+	 * if it has not been read since it was registered.
+	 */
+	public long getLastAccess() {
+		return lastAccess;
+	}
+
+	/**
+	 * Returns how many times a registered body has been read.
+	 */
+	public long getAccessCount() {
+		return accesses.sum();
+	}
+
+	/**
+	 * Attaches the body to the store that tiers it, or detaches it with null.
+	 * Used by {@link TieredBodyStore}.
+	 */
+	public void setStore(TieredBodyStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Drops the bytes from the heap; reads are served from a mapped copy of the
+	 * bytes from then on. The copy is made by the writer the first time the body
+	 * is spilled and reused afterwards, since the bytes never change. Used by
+	 * {@link TieredBodyStore}.
+	 *
+	 * @param writer copies the bytes to the spill file and returns the mapped region
+	 */
+	public void spill(Function<byte[], ByteBuffer> writer) {
+		byte[] content = bytes;
+		if (content == null) {
+			return;
+		}
+		if (spilled == null) {
+			spilled = writer.apply(content).asReadOnlyBuffer();
+		}
+		accessesWhenSpilled = accesses.sum();
+		bytes = null;
+	}
+
+	/**
+	 * Returns how many times the body has been read since it was last spilled.
+	 */
+	public long getAccessesSinceSpill() {
+		return accesses.sum() - accessesWhenSpilled;
+	}
+
+	/**
+	 * Copies the bytes of a spilled body back onto the heap. Used by
+	 * {@link TieredBodyStore}.
+	 */
+	public void restore() {
+		ByteBuffer region = spilled;
+		if (bytes == null && region != null) {
+			byte[] copy = new byte[region.remaining()];
+			region.duplicate().get(copy);
+			bytes = copy;
+		}
+	}
+
+	/**
+	 * Returns the serialized elements of a List body, or null if the body is not
+	 * made of elements. The arrays are shared and must not be modified.
+	 */
+	public List<byte[]> getElements() {
+		return elements;
+	}
+
+	public boolean hasElements() {
+		return elements != null;
+	}
+
+	/**
+	 * Returns the file the body is served from, or null if it is held in memory.
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+
+	public boolean isFileBacked() {
+		return resource != null;
+	}
+
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * Returns the quoted strong ETag of the body bytes.
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * Returns the Content-Encoding tokens the body is available in, in order of
+	 * preference. Empty if the body was not compressed.
+	 */
+	public Set<String> getEncodings() {
+		return encodings.keySet();
+	}
+
+	/**
+	 * Returns the variant compressed with the given Content-Encoding, or null if
+	 * there is no such variant.
+	 */
+	public PreparedBody getEncoding(String encoding) {
+		return encodings.get(encoding);
+	}
+
+	/**
+	 * Returns the media types the body is also rendered in, in order of
+	 * preference. Empty if the body only exists in its own format.
+	 */
+	public Set<MediaType> getFormats() {
+		return formats.keySet();
+	}
+
+	/**
+	 * Returns the body rendered in the given media type, or null if there is no
+	 * such rendering.
+	 */
+	public PreparedBody getFormat(MediaType mediaType) {
+		return formats.get(mediaType);
+	}
+}
@@ -0,0 +1,96 @@
+package net.mcfarb.testing.ddmock.service;
+
+import org.springframework.http.HttpHeaders;
+
+import net.mcfarb.testing.ddmock.model.Pagination;
+import net.mcfarb.testing.ddmock.model.StreamMode;
+
+/**
+ * Response of a REST route rendered once when the MockRestProvider is initialized:
+ * status code, read-only headers (including Content-Type) and the serialized body,
+ * plus how the elements of a List body are sent (streamed and/or paginated) and,
+ * for bodies referencing request values, the compiled template.
+ */
+public final class PreparedResponse {
+
+	private final int status;
+	private final HttpHeaders headers;
+	private final PreparedBody body;
+	private final StreamMode stream;
+	private final Pagination pagination;
+	private final ResponseTemplate template;
+
+	public PreparedResponse(int status, HttpHeaders headers, PreparedBody body) {
+		this(status, headers, body, null, null, null);
+	}
+
+	public PreparedResponse(int status, HttpHeaders headers, PreparedBody body, ResponseTemplate template) {
+		this(status, headers, body, null, null, template);
+	}
+
+	public PreparedResponse(int status, HttpHeaders headers, PreparedBody body, StreamMode stream,
+			Pagination pagination) {
+		this(status, headers, body, stream, pagination, null);
+	}
+
+	/**
+	 * @param status     the HTTP status code
+	 * @param headers    the response headers, stored as a read-only copy
+	 * @param body       the serialized body, or null if the response has no body
+	 * @param stream     the format the elements of the body are streamed in, or null
+	 * @param pagination the pagination of the elements of the body, or null
+	 * @param template   the template the body is rendered from per request, or null
+	 */
+	public PreparedResponse(int status, HttpHeaders headers, PreparedBody body, StreamMode stream,
+			Pagination pagination, ResponseTemplate template) {
+		this.status = status;
+		this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+		this.body = body;
+		this.stream = stream;
+		this.pagination = pagination;
+		this.template = template;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Returns the serialized body, or null if the response has no body.
+	 */
+	public PreparedBody getBody() {
+		return body;
+	}
+
+	public boolean hasBody() {
+		return body != null;
+	}
+
+	/**
+	 * Returns the format the elements of the body are streamed in, or null if the
+	 * body is not streamed.
+	 */
+	public StreamMode getStream() {
+		return stream;
+	}
+
+	/**
+	 * Returns the pagination of the elements of the body, or null if the body is
+	 * sent whole.
+	 */
+	public Pagination getPagination() {
+		return pagination;
+	}
+
+	/**
+	 * Returns the template the body is rendered from, or null if the body is the
+	 * same for every request.
+	 */
+	public ResponseTemplate getTemplate() {
+		return template;
+	}
+}
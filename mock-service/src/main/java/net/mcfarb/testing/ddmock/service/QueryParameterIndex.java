@@ -0,0 +1,101 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index over the query parameter predicates of the routes sharing one
+ * (HTTP method, path) node of the {@link RouteTrie}.
+ *
+ * For every query parameter name used by any route of the group the index keeps,
+ * per required value, the set of routes that accept that value: the routes that
+ * require it plus the routes that do not constrain the parameter at all. A
+ * request is resolved by intersecting one bitset per parameter name, and the
+ * lowest set bit is the first matching route in declaration order.
+ */
+class QueryParameterIndex<T> {
+
+	private final List<T> routes = new ArrayList<>();
+	private final BitSet allRoutes = new BitSet();
+	private final List<ParameterIndex> parameters = new ArrayList<>();
+	private final Map<String, ParameterIndex> parametersByName = new HashMap<>();
+
+	/**
+	 * Adds a route at the end of the group.
+	 *
+	 * @param route           the route
+	 * @param queryParameters the query parameters the route requires, may be null
+	 */
+	public void add(T route, Map<String, String> queryParameters) {
+		int bit = routes.size();
+		routes.add(route);
+
+		// parameters this route does not constrain accept it for every value
+		for (ParameterIndex parameter : parameters) {
+			if (queryParameters == null || !queryParameters.containsKey(parameter.name)) {
+				parameter.unconstrained.set(bit);
+				parameter.allowedByValue.values().forEach(allowed -> allowed.set(bit));
+			}
+		}
+
+		if (queryParameters != null) {
+			for (Map.Entry<String, String> entry : queryParameters.entrySet()) {
+				ParameterIndex parameter = parametersByName.get(entry.getKey());
+				if (parameter == null) {
+					// every route added before this one ignores the new parameter
+					parameter = new ParameterIndex(entry.getKey());
+					parameter.unconstrained.or(allRoutes);
+					parameters.add(parameter);
+					parametersByName.put(parameter.name, parameter);
+				}
+				final ParameterIndex index = parameter;
+				index.allowedByValue.computeIfAbsent(entry.getValue(), v -> (BitSet) index.unconstrained.clone())
+						.set(bit);
+			}
+		}
+
+		allRoutes.set(bit);
+	}
+
+	/**
+	 * Returns the first route, in declaration order, whose query parameter
+	 * predicates are all satisfied, or null if none is.
+	 */
+	public T first(Map<String, String> queryParams) {
+		if (parameters.isEmpty()) {
+			return routes.isEmpty() ? null : routes.get(0);
+		}
+		BitSet candidates = null;
+		for (ParameterIndex parameter : parameters) {
+			String value = queryParams != null ? queryParams.get(parameter.name) : null;
+			BitSet allowed = value != null ? parameter.allowedByValue.get(value) : null;
+			if (allowed == null) {
+				allowed = parameter.unconstrained;
+			}
+			if (candidates == null) {
+				candidates = (BitSet) allowed.clone();
+			} else {
+				candidates.and(allowed);
+			}
+			if (candidates.isEmpty()) {
+				return null;
+			}
+		}
+		return routes.get(candidates.nextSetBit(0));
+	}
+
+	private static class ParameterIndex {
+		private final String name;
+		// routes that do not constrain this parameter
+		private final BitSet unconstrained = new BitSet();
+		// required value -> routes accepting that value
+		private final Map<String, BitSet> allowedByValue = new HashMap<>();
+
+		private ParameterIndex(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Reference to a value of the request a route answers: {@code path.name} for a
+ * captured path variable, {@code query.name} for a query parameter or
+ * {@code header.name} for a header. Parameters and headers with several values
+ * resolve to their first one.
+ *
+ * Shared by response templates and sticky variant selection, so both read a
+ * request the same way.
+ */
+final class RequestValue {
+
+	private enum Source {
+		PATH("path."), QUERY("query."), HEADER("header.");
+
+		private final String prefix;
+
+		Source(String prefix) {
+			this.prefix = prefix;
+		}
+	}
+
+	private final Source source;
+	private final String name;
+
+	private RequestValue(Source source, String name) {
+		this.source = source;
+		this.name = name;
+	}
+
+	/**
+	 * Parses a reference to a request value.
+	 *
+	 * @return the reference, or null if the expression does not name a request value
+	 */
+	static RequestValue parse(String expression) {
+		for (Source source : Source.values()) {
+			if (expression.startsWith(source.prefix) && expression.length() > source.prefix.length()) {
+				return new RequestValue(source, expression.substring(source.prefix.length()));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the referenced value of a request, or null if the request has none.
+	 *
+	 * @param pathVariables the captured path variables, may be null
+	 * @param queryParams   the request's query parameters, may be null
+	 * @param headers       the request's headers, may be null
+	 */
+	String resolve(Map<String, String> pathVariables, MultiValueMap<String, String> queryParams,
+			HttpHeaders headers) {
+		return switch (source) {
+			case PATH -> pathVariables != null ? pathVariables.get(name) : null;
+			case QUERY -> queryParams != null ? queryParams.getFirst(name) : null;
+			case HEADER -> headers != null ? headers.getFirst(name) : null;
+		};
+	}
+}
@@ -0,0 +1,575 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.model.JournalStats;
+
+/**
+ * Makes the elements of a ResourceStore durable in a directory, as an append
+ * only log of the mutations compacted from time to time into a snapshot.
+ *
+ * Every mutation is appended as a record holding the new element of an id, or
+ * its removal, so replaying a record twice changes nothing. Records are queued
+ * without a lock and written by a single writer thread, which drains whatever
+ * is queued into one write followed by one fsync: under load a sync commits a
+ * whole batch of records (group commit), and a mutation is acknowledged once
+ * the batch holding it is synced.
+ *
+ * Every compactEvery records the writer moves on to a new log file, and the
+ * elements are written to a snapshot on a background thread while writes go on.
+ * The snapshot is written through a memory-mapped file, moved over the previous
+ * one atomically, and records the first log it does not cover; older logs are
+ * then deleted. Mutations racing with the snapshot are in both, which replaying
+ * makes harmless. Restoring maps the snapshot, copies its elements out without
+ * parsing them and replays the logs written since, stopping at the first torn
+ * or corrupt record of a log.
+ */
+@Slf4j
+final class ResourceJournal implements Closeable {
+
+	private static final String SNAPSHOT = "snapshot.bin";
+	private static final String LOG_PREFIX = "journal-";
+	private static final String LOG_SUFFIX = ".log";
+
+	private static final int SNAPSHOT_MAGIC = 0x4D4B534E;
+	private static final int SNAPSHOT_VERSION = 1;
+	// magic, version, log generation, next id, numeric and named element counts
+	private static final int SNAPSHOT_HEADER = 4 + 4 + 8 + 8 + 4 + 4;
+
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+	private static final byte NUMERIC = 0;
+	private static final byte NAMED = 1;
+	// payload length and CRC of a record
+	private static final int RECORD_HEADER = 4 + 4;
+
+	private static final int MAX_BATCH = 4096;
+	private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+
+	private final Path directory;
+	private final int compactEvery;
+	private final LongStripedMap<byte[]> numericElements;
+	private final Map<String, byte[]> namedElements;
+	private final AtomicLong nextId;
+
+	private final Queue<Record> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicReference<CompletableFuture<Void>> compactionRequest = new AtomicReference<>();
+	private final Thread writer;
+	private final ExecutorService compactor;
+	private volatile boolean parked;
+	private volatile boolean closed;
+
+	// owned by the writer thread
+	private FileChannel logChannel;
+	private long generation;
+	private long recordsSinceCompaction;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+	private final CRC32C crc = new CRC32C();
+	private CompletableFuture<Void> compaction = COMPLETED;
+
+	private boolean restored;
+	private long restoredElements;
+	private long replayedRecords;
+	private volatile long records;
+	private volatile long commits;
+	private volatile long compactions;
+
+	private ResourceJournal(Path directory, int compactEvery, LongStripedMap<byte[]> numericElements,
+			Map<String, byte[]> namedElements, AtomicLong nextId) {
+		this.directory = directory;
+		this.compactEvery = compactEvery;
+		this.numericElements = numericElements;
+		this.namedElements = namedElements;
+		this.nextId = nextId;
+		String name = directory.getFileName() != null ? directory.getFileName().toString() : "resource";
+		this.writer = new Thread(this::run, "resource-journal-" + name);
+		this.writer.setDaemon(true);
+		this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "resource-compactor-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Restores the elements found in the directory into the given maps, then
+	 * starts journaling to it.
+	 *
+	 * @param compactEvery the number of records after which a snapshot is written, 0 or less for never
+	 */
+	static ResourceJournal open(Path directory, int compactEvery, LongStripedMap<byte[]> numericElements,
+			Map<String, byte[]> namedElements, AtomicLong nextId) throws IOException {
+		Files.createDirectories(directory);
+		ResourceJournal journal = new ResourceJournal(directory, compactEvery, numericElements, namedElements,
+				nextId);
+		journal.recover();
+		journal.logChannel = journal.openLog(journal.generation);
+		journal.writer.start();
+		return journal;
+	}
+
+	/**
+	 * Returns whether the directory held a snapshot or a log when opened.
+	 */
+	boolean isRestored() {
+		return restored;
+	}
+
+	/**
+	 * Appends the new element of a numeric id, or its removal when null.
+	 *
+	 * @return a future completed once the record is synced to disk
+	 */
+	CompletableFuture<Void> append(long id, byte[] element) {
+		return enqueue(new Record(element != null ? PUT : DELETE, id, null, element));
+	}
+
+	/**
+	 * Appends the new element of a named id, or its removal when null.
+	 *
+	 * @return a future completed once the record is synced to disk
+	 */
+	CompletableFuture<Void> append(String id, byte[] element) {
+		return enqueue(new Record(element != null ? PUT : DELETE, 0, id.getBytes(StandardCharsets.UTF_8), element));
+	}
+
+	private CompletableFuture<Void> enqueue(Record record) {
+		if (closed) {
+			return CompletableFuture.failedFuture(new IOException("Journal of " + directory + " is closed"));
+		}
+		queue.offer(record);
+		if (closed && queue.remove(record)) {
+			// closed since the check, the writer and close() may both be past the queue
+			record.committed.completeExceptionally(new IOException("Journal of " + directory + " is closed"));
+			return record.committed;
+		}
+		if (parked) {
+			LockSupport.unpark(writer);
+		}
+		return record.committed;
+	}
+
+	/**
+	 * Writes a snapshot now, regardless of compactEvery.
+	 *
+	 * @return a future completed once the snapshot is in place
+	 */
+	CompletableFuture<Void> compact() {
+		if (closed) {
+			return CompletableFuture.failedFuture(new IOException("Journal of " + directory + " is closed"));
+		}
+		CompletableFuture<Void> request = new CompletableFuture<>();
+		CompletableFuture<Void> pending = compactionRequest.compareAndExchange(null, request);
+		LockSupport.unpark(writer);
+		return pending != null ? pending : request;
+	}
+
+	JournalStats getStats() {
+		return new JournalStats(records, commits, compactions, restoredElements, replayedRecords);
+	}
+
+	/**
+	 * Commits the queued records and waits for a running snapshot to complete.
+	 * Records appended afterwards fail.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+			compactor.shutdown();
+			compactor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Record record;
+		while ((record = queue.poll()) != null) {
+			record.committed.completeExceptionally(new IOException("Journal of " + directory + " is closed"));
+		}
+		logChannel.close();
+	}
+
+	private void run() {
+		List<Record> batch = new ArrayList<>();
+		while (true) {
+			Record record;
+			while (batch.size() < MAX_BATCH && (record = queue.poll()) != null) {
+				batch.add(record);
+			}
+			if (!batch.isEmpty()) {
+				commit(batch);
+				batch.clear();
+				maybeCompact();
+				continue;
+			}
+			maybeCompact();
+			if (closed && queue.isEmpty()) {
+				return;
+			}
+			parked = true;
+			if (queue.isEmpty() && !closed && (compactionRequest.get() == null || !compaction.isDone())) {
+				LockSupport.park(this);
+			}
+			parked = false;
+		}
+	}
+
+	/**
+	 * Writes a batch of records with a single write and a single sync, then
+	 * acknowledges them.
+	 */
+	private void commit(List<Record> batch) {
+		int size = 0;
+		for (Record record : batch) {
+			size += RECORD_HEADER + record.payloadSize();
+		}
+		if (buffer.capacity() < size) {
+			buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size - 1) << 1);
+		}
+		buffer.clear();
+		for (Record record : batch) {
+			encode(record);
+		}
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				logChannel.write(buffer);
+			}
+			logChannel.force(false);
+		} catch (IOException e) {
+			log.error("Failed to commit {} records to {}", batch.size(), directory, e);
+			batch.forEach(record -> record.committed.completeExceptionally(e));
+			return;
+		}
+		records += batch.size();
+		commits++;
+		recordsSinceCompaction += batch.size();
+		batch.forEach(record -> record.committed.complete(null));
+	}
+
+	private void encode(Record record) {
+		int payloadSize = record.payloadSize();
+		buffer.putInt(payloadSize);
+		int crcPosition = buffer.position();
+		buffer.putInt(0);
+		int payloadStart = buffer.position();
+		buffer.put(record.operation);
+		if (record.namedId == null) {
+			buffer.put(NUMERIC).putLong(record.numericId);
+		} else {
+			buffer.put(NAMED).putInt(record.namedId.length).put(record.namedId);
+		}
+		if (record.element != null) {
+			buffer.put(record.element);
+		}
+		crc.reset();
+		crc.update(buffer.duplicate().position(payloadStart).limit(buffer.position()));
+		buffer.putInt(crcPosition, (int) crc.getValue());
+	}
+
+	/**
+	 * Moves on to a new log and snapshots the elements in the background, when a
+	 * snapshot was asked for or compactEvery records were written since the last
+	 * one. Only one snapshot is written at a time.
+	 */
+	private void maybeCompact() {
+		boolean due = compactEvery > 0 && recordsSinceCompaction >= compactEvery;
+		if ((!due && compactionRequest.get() == null) || !compaction.isDone()) {
+			return;
+		}
+		CompletableFuture<Void> request = compactionRequest.getAndSet(null);
+		try {
+			logChannel.close();
+			generation++;
+			logChannel = openLog(generation);
+		} catch (IOException e) {
+			log.error("Failed to start log {} in {}", generation, directory, e);
+			if (request != null) {
+				request.completeExceptionally(e);
+			}
+			return;
+		}
+		recordsSinceCompaction = 0;
+		long snapshotGeneration = generation;
+		compaction = CompletableFuture.runAsync(() -> writeSnapshot(snapshotGeneration), compactor);
+		compaction.whenComplete((result, error) -> {
+			if (error != null) {
+				log.error("Failed to write the snapshot of {}", directory, error);
+			}
+			if (request != null) {
+				if (error != null) {
+					request.completeExceptionally(error);
+				} else {
+					request.complete(null);
+				}
+			}
+			LockSupport.unpark(writer);
+		});
+	}
+
+	private FileChannel openLog(long logGeneration) throws IOException {
+		return FileChannel.open(logPath(logGeneration), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	private Path logPath(long logGeneration) {
+		return directory.resolve(String.format("%s%019d%s", LOG_PREFIX, logGeneration, LOG_SUFFIX));
+	}
+
+	private List<Long> logGenerations() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(path -> path.getFileName().toString())
+					.filter(name -> name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX))
+					.map(name -> Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())))
+					.sorted()
+					.toList();
+		}
+	}
+
+	private void recover() throws IOException {
+		long snapshotGeneration = 0;
+		Path snapshot = directory.resolve(SNAPSHOT);
+		if (Files.exists(snapshot)) {
+			snapshotGeneration = readSnapshot(snapshot);
+			restored = true;
+		}
+		long lastGeneration = 0;
+		for (long logGeneration : logGenerations()) {
+			if (logGeneration < snapshotGeneration) {
+				// covered by the snapshot, left over by an interrupted compaction
+				Files.delete(logPath(logGeneration));
+			} else {
+				replay(logPath(logGeneration));
+				restored = true;
+				lastGeneration = logGeneration;
+			}
+		}
+		generation = Math.max(Math.max(snapshotGeneration, lastGeneration + 1), 1);
+		if (restored) {
+			log.info("Restored {} elements and replayed {} records from {}", restoredElements, replayedRecords,
+					directory);
+		}
+	}
+
+	private void replay(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0) {
+				return;
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			CRC32C recordCrc = new CRC32C();
+			while (map.remaining() >= RECORD_HEADER) {
+				int length = map.getInt();
+				int expectedCrc = map.getInt();
+				if (length < 2 || length > map.remaining()) {
+					break;
+				}
+				ByteBuffer payload = map.slice(map.position(), length);
+				recordCrc.reset();
+				recordCrc.update(payload.duplicate());
+				if ((int) recordCrc.getValue() != expectedCrc) {
+					break;
+				}
+				apply(payload);
+				map.position(map.position() + length);
+				replayedRecords++;
+			}
+			if (map.hasRemaining()) {
+				// a batch the process died writing was never acknowledged
+				log.warn("Ignoring the last {} bytes of {}, a torn or corrupt record", map.remaining(), path);
+			}
+		}
+	}
+
+	private void apply(ByteBuffer payload) {
+		byte operation = payload.get();
+		byte kind = payload.get();
+		if (kind == NUMERIC) {
+			long id = payload.getLong();
+			byte[] element = operation == PUT ? remaining(payload) : null;
+			nextId.accumulateAndGet(id + 1, Math::max);
+			numericElements.compute(id, current -> element);
+		} else {
+			byte[] idBytes = new byte[payload.getInt()];
+			payload.get(idBytes);
+			String id = new String(idBytes, StandardCharsets.UTF_8);
+			if (operation == PUT) {
+				namedElements.put(id, remaining(payload));
+			} else {
+				namedElements.remove(id);
+			}
+		}
+	}
+
+	private static byte[] remaining(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Reads the elements of a snapshot through a read-only mapping.
+	 *
+	 * @return the generation of the first log the snapshot does not cover
+	 */
+	private long readSnapshot(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < SNAPSHOT_HEADER + 4 || size > Integer.MAX_VALUE) {
+				throw new IOException("Corrupt snapshot " + path);
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			CRC32C snapshotCrc = new CRC32C();
+			snapshotCrc.update(map.slice(0, (int) size - 4));
+			if ((int) snapshotCrc.getValue() != map.getInt((int) size - 4) || map.getInt() != SNAPSHOT_MAGIC
+					|| map.getInt() != SNAPSHOT_VERSION) {
+				throw new IOException("Corrupt snapshot " + path);
+			}
+			long logGeneration = map.getLong();
+			nextId.accumulateAndGet(map.getLong(), Math::max);
+			int numericCount = map.getInt();
+			int namedCount = map.getInt();
+			for (int i = 0; i < numericCount; i++) {
+				long id = map.getLong();
+				byte[] element = new byte[map.getInt()];
+				map.get(element);
+				numericElements.compute(id, current -> element);
+			}
+			for (int i = 0; i < namedCount; i++) {
+				byte[] idBytes = new byte[map.getInt()];
+				map.get(idBytes);
+				byte[] element = new byte[map.getInt()];
+				map.get(element);
+				namedElements.put(new String(idBytes, StandardCharsets.UTF_8), element);
+			}
+			restoredElements = numericCount + namedCount;
+			return logGeneration;
+		}
+	}
+
+	/**
+	 * Writes the current elements to a new snapshot covering every log before
+	 * the given one, then deletes those logs.
+	 */
+	private void writeSnapshot(long logGeneration) {
+		long[][] numericIds = { new long[1024] };
+		List<byte[]> numericValues = new ArrayList<>();
+		numericElements.forEach((id, element) -> {
+			int index = numericValues.size();
+			if (index == numericIds[0].length) {
+				numericIds[0] = Arrays.copyOf(numericIds[0], index * 2);
+			}
+			numericIds[0][index] = id;
+			numericValues.add(element);
+		});
+		List<Map.Entry<byte[], byte[]>> named = new ArrayList<>();
+		namedElements.forEach((id, element) -> named.add(Map.entry(id.getBytes(StandardCharsets.UTF_8), element)));
+		// read last, so it is past every id in the snapshot
+		long snapshotNextId = nextId.get();
+
+		long size = SNAPSHOT_HEADER + 4;
+		for (byte[] element : numericValues) {
+			size += 8 + 4 + element.length;
+		}
+		for (Map.Entry<byte[], byte[]> entry : named) {
+			size += 4 + entry.getKey().length + 4 + entry.getValue().length;
+		}
+		try {
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot of " + directory + " would exceed 2GB");
+			}
+			Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				map.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(logGeneration).putLong(snapshotNextId)
+						.putInt(numericValues.size()).putInt(named.size());
+				for (int i = 0; i < numericValues.size(); i++) {
+					byte[] value = numericValues.get(i);
+					map.putLong(numericIds[0][i]).putInt(value.length).put(value);
+				}
+				for (Map.Entry<byte[], byte[]> entry : named) {
+					map.putInt(entry.getKey().length).put(entry.getKey()).putInt(entry.getValue().length)
+							.put(entry.getValue());
+				}
+				CRC32C snapshotCrc = new CRC32C();
+				snapshotCrc.update(map.slice(0, (int) size - 4));
+				map.putInt((int) snapshotCrc.getValue());
+				map.force();
+			}
+			Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory();
+			for (long oldGeneration : logGenerations()) {
+				if (oldGeneration < logGeneration) {
+					Files.deleteIfExists(logPath(oldGeneration));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		compactions++;
+	}
+
+	/**
+	 * Syncs the directory, so the rename of the snapshot survives a crash, where
+	 * the platform allows opening a directory.
+	 */
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			log.debug("Cannot sync directory {}", directory, e);
+		}
+	}
+
+	private static final class Record {
+		private final byte operation;
+		private final long numericId;
+		private final byte[] namedId;
+		private final byte[] element;
+		private final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+		private Record(byte operation, long numericId, byte[] namedId, byte[] element) {
+			this.operation = operation;
+			this.numericId = numericId;
+			this.namedId = namedId;
+			this.element = element;
+		}
+
+		private int payloadSize() {
+			return 2 + (namedId == null ? 8 : 4 + namedId.length) + (element != null ? element.length : 0);
+		}
+	}
+}
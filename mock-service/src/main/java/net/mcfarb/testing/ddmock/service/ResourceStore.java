@@ -0,0 +1,419 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.Value;
+import net.mcfarb.testing.ddmock.model.JournalStats;
+
+/**
+ * In-memory state of a collection declared with a ResourceInfo: the JSON
+ * objects of the collection keyed by their id, each held serialized so reads
+ * write the stored bytes as they are.
+ *
+ * Ids that are decimal longs are kept in a LongStripedMap, so they are never
+ * boxed and writes only lock the stripe of their id; other ids are kept in a
+ * ConcurrentHashMap, written under one of a fixed set of striped locks. Ids of
+ * created objects without one are drawn from an AtomicLong starting past the
+ * highest numeric id seen, so no write takes a lock shared by the whole
+ * collection.
+ *
+ * Once persisted to a directory, every mutation is also appended to a
+ * ResourceJournal, from the same critical section as the mutation so the
+ * journal sees the mutations of an id in order. It is appended once the new
+ * element is visible to a snapshot: a snapshot taken after its log was
+ * rotated thus holds every mutation of that log.
+ */
+public class ResourceStore implements Closeable {
+
+	public enum Operation {
+		LIST, GET, CREATE, REPLACE, UPDATE, DELETE
+	}
+
+	/**
+	 * Outcome of an operation: its status, and either the JSON body to send or
+	 * the message of an error. Created objects also carry their id. The committed
+	 * future completes once the mutation is durable, right away unless the store
+	 * is persisted.
+	 */
+	@Value
+	public static class Result {
+		int status;
+		byte[] body;
+		String id;
+		String error;
+		CompletableFuture<Void> committed;
+
+		private static Result of(HttpStatus status, byte[] body) {
+			return of(status, body, COMMITTED);
+		}
+
+		private static Result of(HttpStatus status, byte[] body, CompletableFuture<Void> committed) {
+			return new Result(status.value(), body, null, null, committed);
+		}
+
+		private static Result error(HttpStatus status, String error) {
+			return new Result(status.value(), null, null, error, COMMITTED);
+		}
+	}
+
+	private static final CompletableFuture<Void> COMMITTED = CompletableFuture.completedFuture(null);
+
+	private static final int NAMED_STRIPES = 64;
+
+	private static final Result NOT_FOUND = Result.error(HttpStatus.NOT_FOUND, "No resource with this id");
+	private static final Result NOT_AN_OBJECT = Result.error(HttpStatus.BAD_REQUEST,
+			"Request body must be a JSON object");
+
+	private final ObjectMapper objectMapper;
+	private final String idField;
+	private final LongStripedMap<byte[]> numericElements = new LongStripedMap<>();
+	private final Map<String, byte[]> namedElements = new ConcurrentHashMap<>();
+	private final Object[] namedLocks = new Object[NAMED_STRIPES];
+	private final AtomicLong nextId = new AtomicLong(1);
+	private ResourceJournal journal;
+
+	public ResourceStore(ObjectMapper objectMapper, String idField) {
+		this.objectMapper = objectMapper;
+		this.idField = idField;
+		for (int i = 0; i < NAMED_STRIPES; i++) {
+			namedLocks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Restores the elements persisted in a directory and persists every
+	 * mutation to it from then on, as an append-only log compacted into a
+	 * memory-mapped snapshot every compactEvery records.
+	 *
+	 * @return whether elements were restored, in which case the store should not be seeded
+	 */
+	public boolean persistTo(Path directory, int compactEvery) throws IOException {
+		if (journal != null) {
+			throw new IllegalStateException("Resource store is already persisted");
+		}
+		journal = ResourceJournal.open(directory, compactEvery, numericElements, namedElements, nextId);
+		return journal.isRestored();
+	}
+
+	/**
+	 * Writes a snapshot of a persisted store now.
+	 *
+	 * @return a future completed once the snapshot is in place
+	 */
+	public CompletableFuture<Void> compact() {
+		return journal != null ? journal.compact() : COMMITTED;
+	}
+
+	/**
+	 * Returns the statistics of the journal, or null if the store is not persisted.
+	 */
+	public JournalStats getJournalStats() {
+		return journal != null ? journal.getStats() : null;
+	}
+
+	/**
+	 * Commits the pending mutations of a persisted store and closes its journal.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * Adds every element of a List object, converted to JSON. Elements without
+	 * an id get a generated one.
+	 *
+	 * @throws IllegalArgumentException if the seed is not a List of objects or has duplicate ids
+	 */
+	public void seed(Object seed) {
+		if (!(seed instanceof Iterable<?> elements)) {
+			throw new IllegalArgumentException("seed of a resource must be a List");
+		}
+		for (Object element : elements) {
+			if (!(objectMapper.valueToTree(element) instanceof ObjectNode node)) {
+				throw new IllegalArgumentException("elements of a resource must be objects");
+			}
+			if (insert(node).getStatus() != HttpStatus.CREATED.value()) {
+				throw new IllegalArgumentException("duplicate id " + node.get(idField) + " in the seed of a resource");
+			}
+		}
+		// so the next start restores the seed from the snapshot
+		compact();
+	}
+
+	/**
+	 * Executes an operation on the collection.
+	 *
+	 * @param id   the id of the element, ignored by LIST and CREATE
+	 * @param body the request body, used by CREATE, REPLACE and UPDATE
+	 */
+	public Result execute(Operation operation, String id, byte[] body) {
+		return switch (operation) {
+			case LIST -> Result.of(HttpStatus.OK, list());
+			case GET -> {
+				byte[] element = get(id);
+				yield element != null ? Result.of(HttpStatus.OK, element) : NOT_FOUND;
+			}
+			case CREATE -> create(body);
+			case REPLACE -> replace(id, body);
+			case UPDATE -> update(id, body);
+			case DELETE -> {
+				Mutation mutation = mutate(id, current -> null);
+				yield mutation.previous != null ? Result.of(HttpStatus.NO_CONTENT, null, mutation.committed) : NOT_FOUND;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of elements in the collection.
+	 */
+	public int size() {
+		return numericElements.size() + namedElements.size();
+	}
+
+	/**
+	 * Returns the elements as a JSON array, numeric ids in ascending order
+	 * followed by the others in lexicographic order.
+	 */
+	private byte[] list() {
+		int capacity = numericElements.size();
+		long[] ids = new long[capacity];
+		byte[][] elements = new byte[capacity][];
+		int[] count = { 0 };
+		numericElements.forEach((id, element) -> {
+			if (count[0] == ids.length) {
+				return; // written since the size was read
+			}
+			ids[count[0]] = id;
+			elements[count[0]++] = element;
+		});
+		Integer[] order = new Integer[count[0]];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(ids[a], ids[b]));
+
+		ByteArrayOutputStream array = new ByteArrayOutputStream();
+		array.write('[');
+		for (Integer i : order) {
+			append(array, elements[i]);
+		}
+		new TreeMap<>(namedElements).values().forEach(element -> append(array, element));
+		array.write(']');
+		return array.toByteArray();
+	}
+
+	private static void append(ByteArrayOutputStream array, byte[] element) {
+		if (array.size() > 1) {
+			array.write(',');
+		}
+		array.writeBytes(element);
+	}
+
+	private byte[] get(String id) {
+		return isNumeric(id) ? numericElements.get(Long.parseLong(id)) : namedElements.get(id);
+	}
+
+	private Result create(byte[] body) {
+		ObjectNode node = readObject(body);
+		return node != null ? insert(node) : NOT_AN_OBJECT;
+	}
+
+	private Result insert(ObjectNode node) {
+		JsonNode idNode = node.get(idField);
+		if (idNode == null || idNode.isNull()) {
+			idNode = node.numberNode(nextId.getAndIncrement());
+			node.set(idField, idNode);
+		}
+		String id = idNode.asText();
+		byte[] element = write(node);
+		if (isNumeric(id)) {
+			nextId.accumulateAndGet(Long.parseLong(id) + 1, Math::max);
+		}
+		Mutation mutation = mutate(id, current -> current != null ? current : element);
+		if (mutation.previous != null) {
+			return Result.error(HttpStatus.CONFLICT, "A resource with this id already exists");
+		}
+		return new Result(HttpStatus.CREATED.value(), element, id, null, mutation.committed);
+	}
+
+	private Result replace(String id, byte[] body) {
+		ObjectNode node = readObject(body);
+		if (node == null) {
+			return NOT_AN_OBJECT;
+		}
+		setId(node, id);
+		byte[] element = write(node);
+		Mutation mutation = mutate(id, current -> current != null ? element : null);
+		return mutation.value != null ? Result.of(HttpStatus.OK, mutation.value, mutation.committed) : NOT_FOUND;
+	}
+
+	/**
+	 * Applies the body as a JSON merge patch (RFC 7396) to the element, under the
+	 * lock of its stripe so concurrent patches of the same element all apply.
+	 */
+	private Result update(String id, byte[] body) {
+		ObjectNode patch = readObject(body);
+		if (patch == null) {
+			return NOT_AN_OBJECT;
+		}
+		Mutation mutation = mutate(id, current -> current != null ? merge(current, patch, id) : null);
+		return mutation.value != null ? Result.of(HttpStatus.OK, mutation.value, mutation.committed) : NOT_FOUND;
+	}
+
+	/**
+	 * Replaces the element of an id with the one the function returns for the
+	 * current element (null when absent, null to remove), under the lock guarding
+	 * the id, and journals the change in the same critical section.
+	 *
+	 * A snapshot reads a stripe of numericElements under its lock, so it sees a
+	 * numeric element written in the same compute as its record. It reads
+	 * namedElements without one, so a named element is stored before its record
+	 * is appended.
+	 */
+	private Mutation mutate(String id, UnaryOperator<byte[]> function) {
+		Mutation mutation = new Mutation();
+		if (isNumeric(id)) {
+			long key = Long.parseLong(id);
+			numericElements.compute(key, current -> mutation.apply(current, function.apply(current), key, null));
+		} else {
+			synchronized (namedLocks[(id.hashCode() ^ (id.hashCode() >>> 16)) & (NAMED_STRIPES - 1)]) {
+				byte[] current = namedElements.get(id);
+				byte[] value = function.apply(current);
+				if (value == null) {
+					if (current != null) {
+						namedElements.remove(id);
+					}
+				} else if (value != current) {
+					namedElements.put(id, value);
+				}
+				mutation.apply(current, value, 0, id);
+			}
+		}
+		return mutation;
+	}
+
+	private final class Mutation {
+		private byte[] previous;
+		private byte[] value;
+		private CompletableFuture<Void> committed = COMMITTED;
+
+		private byte[] apply(byte[] previous, byte[] value, long numericId, String namedId) {
+			this.previous = previous;
+			this.value = value;
+			if (journal != null && value != previous) {
+				committed = namedId == null ? journal.append(numericId, value) : journal.append(namedId, value);
+			}
+			return value;
+		}
+	}
+
+	private byte[] merge(byte[] current, ObjectNode patch, String id) {
+		try {
+			ObjectNode node = (ObjectNode) mergePatch(objectMapper.readTree(current), patch);
+			setId(node, id);
+			return write(node);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private JsonNode mergePatch(JsonNode target, JsonNode patch) {
+		if (!patch.isObject()) {
+			return patch;
+		}
+		ObjectNode result = target.isObject() ? (ObjectNode) target : objectMapper.createObjectNode();
+		for (Map.Entry<String, JsonNode> field : patch.properties()) {
+			if (field.getValue().isNull()) {
+				result.remove(field.getKey());
+			} else {
+				JsonNode existing = result.get(field.getKey());
+				result.set(field.getKey(),
+						mergePatch(existing != null ? existing : MissingNode.getInstance(), field.getValue()));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the id of an element to the one of its path, which wins over any id in
+	 * the request body.
+	 */
+	private void setId(ObjectNode node, String id) {
+		if (isNumeric(id)) {
+			node.put(idField, Long.parseLong(id));
+		} else {
+			node.put(idField, id);
+		}
+	}
+
+	private ObjectNode readObject(byte[] body) {
+		if (body == null || body.length == 0) {
+			return null;
+		}
+		try {
+			return objectMapper.readTree(body) instanceof ObjectNode node ? node : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private byte[] write(JsonNode node) {
+		try {
+			return objectMapper.writeValueAsBytes(node);
+		} catch (JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns whether an id is a long in canonical decimal form, so "7" and "007"
+	 * stay distinct ids. Ids out of the range of a long are not, and are kept as
+	 * named ids.
+	 */
+	static boolean isNumeric(String id) {
+		int length = id.length();
+		boolean negative = id.startsWith("-");
+		int start = negative ? 1 : 0;
+		if (length == start || length - start > 19 || (id.charAt(start) == '0' && length > 1)) {
+			return false;
+		}
+		// accumulated negatively like Long.parseLong, as Long.MIN_VALUE has no positive counterpart
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long multiplyMin = limit / 10;
+		long value = 0;
+		for (int i = start; i < length; i++) {
+			int digit = id.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || value < multiplyMin) {
+				return false;
+			}
+			value *= 10;
+			if (value < limit + digit) {
+				return false;
+			}
+			value -= digit;
+		}
+		return true;
+	}
+}
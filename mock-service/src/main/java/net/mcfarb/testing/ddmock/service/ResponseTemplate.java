@@ -0,0 +1,195 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.MultiValueMap;
+
+import net.mcfarb.testing.ddmock.model.CacheStats;
+
+/**
+ * Response body referencing request values: {{path.name}}, {{query.name}} or
+ * {{header.name}}.
+ *
+ * The serialized body is compiled once into literal byte segments with a slot
+ * between each pair, so rendering only looks up the slot values and copies the
+ * segments and values into one array. Rendered bodies are memoized per tuple of
+ * slot values in a bounded LRU cache, together with their ETag.
+ *
+ * Values are JSON escaped when the body is JSON, since placeholders in a JSON
+ * body always sit inside a string. Missing values render as an empty string.
+ */
+public final class ResponseTemplate {
+
+	private static final byte OPEN = '{';
+	private static final byte CLOSE = '}';
+
+	// literals.length == slots.length + 1
+	private final byte[][] literals;
+	private final RequestValue[] slots;
+	private final boolean jsonEscape;
+	private final LruCache<List<String>, PreparedBody> rendered;
+
+	private ResponseTemplate(byte[][] literals, RequestValue[] slots, boolean jsonEscape, int cacheSize) {
+		this.literals = literals;
+		this.slots = slots;
+		this.jsonEscape = jsonEscape;
+		this.rendered = new LruCache<>(cacheSize);
+	}
+
+	/**
+	 * Compiles a serialized body into a template.
+	 *
+	 * @param body       the serialized body
+	 * @param jsonEscape whether values are JSON escaped when substituted
+	 * @param cacheSize  the number of rendered bodies memoized
+	 * @return the template, or null if the body has no placeholders
+	 */
+	public static ResponseTemplate compile(byte[] body, boolean jsonEscape, int cacheSize) {
+		List<byte[]> literals = new ArrayList<>();
+		List<RequestValue> slots = new ArrayList<>();
+
+		int literalStart = 0;
+		int start;
+		while ((start = indexOfSlot(body, literalStart)) >= 0) {
+			int end = indexOfClose(body, start + 2);
+			literals.add(Arrays.copyOfRange(body, literalStart, start));
+			slots.add(RequestValue.parse(expression(body, start, end)));
+			literalStart = end + 2;
+		}
+		if (slots.isEmpty()) {
+			return null;
+		}
+		literals.add(Arrays.copyOfRange(body, literalStart, body.length));
+		return new ResponseTemplate(literals.toArray(new byte[0][]), slots.toArray(new RequestValue[0]),
+				jsonEscape, cacheSize);
+	}
+
+	/**
+	 * Returns whether a serialized body references request values, that is whether
+	 * {@link #compile} makes a template of it.
+	 */
+	public static boolean hasPlaceholders(byte[] body) {
+		return indexOfSlot(body, 0) >= 0;
+	}
+
+	/**
+	 * Returns the index of the next placeholder referencing a request value, or -1
+	 * if there is none. Placeholders naming anything else stay literal, and an
+	 * unterminated one ends the search.
+	 */
+	private static int indexOfSlot(byte[] body, int from) {
+		int i = from;
+		while (i < body.length - 1) {
+			if (body[i] == OPEN && body[i + 1] == OPEN) {
+				int end = indexOfClose(body, i + 2);
+				if (end < 0) {
+					return -1;
+				}
+				if (RequestValue.parse(expression(body, i, end)) != null) {
+					return i;
+				}
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	private static String expression(byte[] body, int start, int end) {
+		return new String(body, start + 2, end - start - 2, StandardCharsets.UTF_8).trim();
+	}
+
+	private static int indexOfClose(byte[] body, int from) {
+		for (int i = from; i < body.length - 1; i++) {
+			if (body[i] == CLOSE && body[i + 1] == CLOSE) {
+				return i;
+			}
+			if (body[i] == OPEN) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Renders the body for a request.
+	 *
+	 * @param pathVariables the captured path variables
+	 * @param queryParams   the request's query parameters, may be null
+	 * @param headers       the request's headers, may be null
+	 */
+	public PreparedBody render(Map<String, String> pathVariables, MultiValueMap<String, String> queryParams,
+			HttpHeaders headers) {
+		String[] values = new String[slots.length];
+		for (int i = 0; i < slots.length; i++) {
+			String value = slots[i].resolve(pathVariables, queryParams, headers);
+			values[i] = value != null ? value : "";
+		}
+
+		List<String> key = Arrays.asList(values);
+		PreparedBody body = rendered.get(key);
+		if (body == null) {
+			body = new PreparedBody(concatenate(values));
+			rendered.put(key, body);
+		}
+		return body;
+	}
+
+	private byte[] concatenate(String[] values) {
+		byte[][] encoded = new byte[values.length][];
+		int length = literals[0].length;
+		for (int i = 0; i < values.length; i++) {
+			encoded[i] = (jsonEscape ? escapeJson(values[i]) : values[i]).getBytes(StandardCharsets.UTF_8);
+			length += encoded[i].length + literals[i + 1].length;
+		}
+
+		byte[] body = new byte[length];
+		int position = 0;
+		System.arraycopy(literals[0], 0, body, position, literals[0].length);
+		position += literals[0].length;
+		for (int i = 0; i < encoded.length; i++) {
+			System.arraycopy(encoded[i], 0, body, position, encoded[i].length);
+			position += encoded[i].length;
+			System.arraycopy(literals[i + 1], 0, body, position, literals[i + 1].length);
+			position += literals[i + 1].length;
+		}
+		return body;
+	}
+
+	private static String escapeJson(String value) {
+		StringBuilder escaped = null;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			String replacement = switch (c) {
+				case '"' -> "\\\"";
+				case '\\' -> "\\\\";
+				case '\n' -> "\\n";
+				case '\r' -> "\\r";
+				case '\t' -> "\\t";
+				default -> c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+			};
+			if (replacement != null && escaped == null) {
+				escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+			}
+			if (escaped != null) {
+				if (replacement != null) {
+					escaped.append(replacement);
+				} else {
+					escaped.append(c);
+				}
+			}
+		}
+		return escaped != null ? escaped.toString() : value;
+	}
+
+	/**
+	 * Returns the statistics of the rendered body cache.
+	 */
+	public CacheStats getCacheStats() {
+		return rendered.getStats();
+	}
+}
@@ -0,0 +1,90 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.mcfarb.testing.ddmock.model.MockRestMethodInfo;
+
+/**
+ * Result of resolving a request against the routes of a MockRestProvider.
+ * Holds the matched method together with the bounds of every segment of the
+ * request path, so path variables are only materialized when asked for.
+ */
+public final class RouteMatch {
+
+	private final MockRoute route;
+	private final PreparedResponse response;
+	private final String path;
+	private final int[] segmentBounds;
+	private final String[] parameterNames;
+	private Map<String, String> pathVariables;
+
+	/**
+	 * @param route          the matched route
+	 * @param response       the response rendered for the matched route
+	 * @param path           the request path that was matched
+	 * @param segmentBounds  start and end index of each path segment, two entries per segment
+	 * @param parameterNames the {paramName} of each segment of the pattern, null for static or * segments
+	 */
+	public RouteMatch(MockRoute route, PreparedResponse response, String path, int[] segmentBounds,
+			String[] parameterNames) {
+		this.route = route;
+		this.response = response;
+		this.path = path;
+		this.segmentBounds = segmentBounds;
+		this.parameterNames = parameterNames;
+	}
+
+	/**
+	 * Returns the matched route, holding the runtime state shared by all its matches.
+	 */
+	public MockRoute getRoute() {
+		return route;
+	}
+
+	public MockRestMethodInfo getMethodInfo() {
+		return route.getMethodInfo();
+	}
+
+	public PreparedResponse getResponse() {
+		return response;
+	}
+
+	/**
+	 * Returns a match of the same route and path sending another response, such
+	 * as the one of the current state of the route's scenario.
+	 */
+	public RouteMatch withResponse(PreparedResponse response) {
+		return new RouteMatch(route, response, path, segmentBounds, parameterNames);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the values captured by the {paramName} segments of the matched pattern.
+	 *
+	 * Example: pattern="/users/{userId}/posts/{postId}", path="/users/123/posts/456"
+	 * Returns: {"userId": "123", "postId": "456"}
+	 */
+	public Map<String, String> getPathVariables() {
+		Map<String, String> variables = pathVariables;
+		if (variables == null) {
+			if (parameterNames == null || parameterNames.length == 0) {
+				variables = Collections.emptyMap();
+			} else {
+				Map<String, String> captured = new LinkedHashMap<>();
+				for (int i = 0; i < parameterNames.length; i++) {
+					if (parameterNames[i] != null) {
+						captured.put(parameterNames[i], path.substring(segmentBounds[2 * i], segmentBounds[2 * i + 1]));
+					}
+				}
+				variables = Collections.unmodifiableMap(captured);
+			}
+			pathVariables = variables;
+		}
+		return variables;
+	}
+}
@@ -0,0 +1,97 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import net.mcfarb.testing.ddmock.model.Scenario;
+
+/**
+ * Responses of a route in the states of its scenario, indexed by the number of
+ * the state, together with the state each of them moves the scenario to.
+ */
+public final class RouteScenario {
+
+	private static final int NO_TRANSITION = -1;
+
+	private final ScenarioMachine machine;
+	private final Step[] steps;
+	private final Step anyState;
+
+	/**
+	 * @param machine the state of the scenario, possibly shared with other routes
+	 * @param steps   the step of the route in each state it lists, "*" for the others
+	 */
+	RouteScenario(ScenarioMachine machine, Map<String, Step> steps) {
+		this.machine = machine;
+		Step any = null;
+		Step[] byState = new Step[0];
+		for (Map.Entry<String, Step> entry : steps.entrySet()) {
+			Step step = entry.getValue();
+			if (step.nextState != null) {
+				step.next = machine.stateId(step.nextState);
+			}
+			if (Scenario.ANY_STATE.equals(entry.getKey())) {
+				any = step;
+				continue;
+			}
+			int state = machine.stateId(entry.getKey());
+			if (state >= byState.length) {
+				byState = Arrays.copyOf(byState, state + 1);
+			}
+			byState[state] = step;
+		}
+		this.steps = byState;
+		this.anyState = any;
+	}
+
+	public ScenarioMachine getMachine() {
+		return machine;
+	}
+
+	/**
+	 * Selects the response for a request and applies the transition of the
+	 * current state in one compare-and-set, retried when a concurrent request
+	 * moved the state first. Every request thus observes exactly one state, and
+	 * each transition is taken by exactly one request.
+	 *
+	 * @param scope the value of the scope header of the request, or null
+	 * @return the response of the state, or null to send the route's own response
+	 */
+	public PreparedResponse advance(String scope) {
+		AtomicInteger cursor = machine.cursor(scope);
+		for (;;) {
+			int state = cursor.get();
+			Step step = state < steps.length && steps[state] != null ? steps[state] : anyState;
+			if (step == null) {
+				return null;
+			}
+			if (step.next == NO_TRANSITION || step.next == state || cursor.compareAndSet(state, step.next)) {
+				return step.response();
+			}
+		}
+	}
+
+	/**
+	 * Response of the route in one state, and the state it moves to.
+	 */
+	static final class Step {
+		private final Supplier<PreparedResponse> response;
+		private final String nextState;
+		private int next = NO_TRANSITION;
+
+		/**
+		 * @param response  the response of the state, or null to send the route's own
+		 * @param nextState the state to move to once the response is sent, or null to stay
+		 */
+		Step(Supplier<PreparedResponse> response, String nextState) {
+			this.response = response;
+			this.nextState = nextState;
+		}
+
+		private PreparedResponse response() {
+			return response != null ? response.get() : null;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpMethod;
+
+import net.mcfarb.testing.ddmock.model.MockRestMethodInfo;
+
+/**
+ * Segment trie used by {@link MockRestProvider} to resolve REST routes.
+ *
+ * Routes are tokenized once when they are added and compiled into one trie per
+ * HTTP method. Each level of the trie is a path segment; static segments are
+ * tried before {paramName} or * children, so a lookup costs time proportional
+ * to the depth of the request path rather than to the number of routes loaded.
+ *
+ * Routes ending on the same node share a {@link QueryParameterIndex}, so query
+ * parameter variants of one path are resolved with a few bitset intersections.
+ *
+ * The request path is scanned in place by index: segments are never copied out
+ * of the path, static children are looked up by hashing the segment's region
+ * of the path, and the only allocations on a match are the segment bounds and
+ * the {@link RouteMatch} itself.
+ *
+ * Routes declared without an httpMethod match every method, so they are added
+ * to every method trie and to a fallback trie used for non standard methods.
+ */
+class RouteTrie {
+
+	private static final String ANY_METHOD = "*";
+
+	private final Map<String, Node> roots = new HashMap<>();
+
+	private int size = 0;
+	private int maxDepth = 0;
+
+	public void add(MockRoute mockRoute, PreparedResponse response) {
+		add(mockRoute, () -> response);
+	}
+
+	/**
+	 * Adds a route whose response is only rendered when the route is first
+	 * matched. The factory runs at most once.
+	 */
+	public void add(MockRoute mockRoute, Supplier<PreparedResponse> responseFactory) {
+		MockRestMethodInfo method = mockRoute.getMethodInfo();
+		if (method.getPath() == null) {
+			// a route without a path can never be matched
+			return;
+		}
+		String[] segments = method.getPath().split("/");
+		String[] parameterNames = new String[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			if (isPathParameter(segments[i])) {
+				parameterNames[i] = segments[i].substring(1, segments[i].length() - 1);
+			}
+		}
+		Route route = new Route(mockRoute, responseFactory, parameterNames);
+		if (method.getHttpMethod() == null) {
+			for (HttpMethod httpMethod : HttpMethod.values()) {
+				insert(httpMethod.name(), segments, route);
+			}
+			insert(ANY_METHOD, segments, route);
+		} else {
+			insert(method.getHttpMethod().toUpperCase(Locale.ROOT), segments, route);
+		}
+		maxDepth = Math.max(maxDepth, segments.length);
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void insert(String httpMethod, String[] segments, Route route) {
+		Node node = roots.computeIfAbsent(httpMethod, k -> new Node());
+		for (String segment : segments) {
+			if (isWildcard(segment)) {
+				if (node.wildcardChild == null) {
+					node.wildcardChild = new Node();
+				}
+				node = node.wildcardChild;
+			} else {
+				node = node.staticChildren.computeIfAbsent(segment);
+			}
+		}
+		node.routes.add(route, route.mockRoute.getMethodInfo().getQueryParameters());
+	}
+
+	/**
+	 * Finds the first route matching the path, HTTP method and query parameters.
+	 * Routes attached to the same node are checked in declaration order.
+	 *
+	 * @return the match, or null if no route matches
+	 */
+	public RouteMatch match(String path, String httpMethod, Map<String, String> queryParams) {
+		if (path == null) {
+			return null;
+		}
+		Node root = null;
+		if (httpMethod != null) {
+			root = roots.get(httpMethod.toUpperCase(Locale.ROOT));
+		}
+		if (root == null) {
+			root = roots.get(ANY_METHOD);
+		}
+		if (root == null) {
+			return null;
+		}
+
+		// Same segmentation as path.split("/"): trailing empty segments are ignored
+		int end = path.length();
+		while (end > 0 && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		int start = (end == 0 && !path.isEmpty()) ? 1 : 0;
+		int segmentCount = 0;
+		if (start <= end) {
+			segmentCount = 1;
+			for (int i = start; i < end; i++) {
+				if (path.charAt(i) == '/') {
+					segmentCount++;
+				}
+			}
+		}
+		if (segmentCount > maxDepth) {
+			return null;
+		}
+
+		int[] bounds = new int[segmentCount * 2];
+		Route route = find(root, path, start, end, 0, bounds, queryParams);
+		return route == null ? null : new RouteMatch(route.mockRoute, route.response(), path, bounds,
+				route.parameterNames);
+	}
+
+	private Route find(Node node, String path, int start, int end, int depth, int[] bounds,
+			Map<String, String> queryParams) {
+		if (start > end) {
+			return node.routes.first(queryParams);
+		}
+		int segmentEnd = path.indexOf('/', start);
+		if (segmentEnd < 0 || segmentEnd > end) {
+			segmentEnd = end;
+		}
+		bounds[2 * depth] = start;
+		bounds[2 * depth + 1] = segmentEnd;
+
+		Node staticChild = node.staticChildren.get(path, start, segmentEnd);
+		if (staticChild != null) {
+			Route route = find(staticChild, path, segmentEnd + 1, end, depth + 1, bounds, queryParams);
+			if (route != null) {
+				return route;
+			}
+		}
+		if (node.wildcardChild != null) {
+			return find(node.wildcardChild, path, segmentEnd + 1, end, depth + 1, bounds, queryParams);
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if a path segment is a wildcard.
+	 * Supports: {paramName} or *
+	 */
+	static boolean isWildcard(String segment) {
+		if (segment == null || segment.isEmpty()) {
+			return false;
+		}
+		// Check for * wildcard
+		if ("*".equals(segment)) {
+			return true;
+		}
+		return isPathParameter(segment);
+	}
+
+	/**
+	 * Checks if a path segment is a named {paramName} path parameter.
+	 */
+	static boolean isPathParameter(String segment) {
+		return segment.startsWith("{") && segment.endsWith("}");
+	}
+
+	private static class Route {
+		private final MockRoute mockRoute;
+		private final String[] parameterNames;
+		private final LazyResponse response;
+
+		private Route(MockRoute mockRoute, Supplier<PreparedResponse> responseFactory, String[] parameterNames) {
+			this.mockRoute = mockRoute;
+			this.response = responseFactory instanceof LazyResponse lazy ? lazy : new LazyResponse(responseFactory);
+			this.parameterNames = parameterNames;
+		}
+
+		private PreparedResponse response() {
+			return response.get();
+		}
+	}
+
+	private static class Node {
+		private final StaticChildren staticChildren = new StaticChildren();
+		private Node wildcardChild;
+		private final QueryParameterIndex<Route> routes = new QueryParameterIndex<>();
+	}
+
+	/**
+	 * Open addressing table of static child segments that can be probed with a
+	 * region of the request path, so no substring is created per lookup.
+	 */
+	private static class StaticChildren {
+		private String[] keys = new String[4];
+		private Node[] nodes = new Node[4];
+		private int count = 0;
+
+		private Node get(String path, int start, int end) {
+			if (count == 0) {
+				return null;
+			}
+			int length = end - start;
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + path.charAt(i);
+			}
+			int mask = keys.length - 1;
+			for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+				String key = keys[i];
+				if (key == null) {
+					return null;
+				}
+				if (key.length() == length && path.regionMatches(start, key, 0, length)) {
+					return nodes[i];
+				}
+			}
+		}
+
+		private Node computeIfAbsent(String segment) {
+			Node node = get(segment, 0, segment.length());
+			if (node == null) {
+				if ((count + 1) * 2 > keys.length) {
+					resize();
+				}
+				node = new Node();
+				put(segment, node);
+				count++;
+			}
+			return node;
+		}
+
+		private void put(String segment, Node node) {
+			int mask = keys.length - 1;
+			int i = spread(segment.hashCode()) & mask;
+			while (keys[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = segment;
+			nodes[i] = node;
+		}
+
+		private void resize() {
+			String[] oldKeys = keys;
+			Node[] oldNodes = nodes;
+			keys = new String[oldKeys.length * 2];
+			nodes = new Node[oldKeys.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					put(oldKeys[i], oldNodes[i]);
+				}
+			}
+		}
+
+		private static int spread(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+	}
+}
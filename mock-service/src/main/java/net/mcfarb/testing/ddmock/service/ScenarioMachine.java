@@ -0,0 +1,108 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Current state of a scenario, shared by the routes declaring it.
+ *
+ * States are numbered when the routes are loaded, and the current state is an
+ * AtomicInteger moved by compare-and-set, so requests polling a scenario never
+ * wait on a lock. A scenario scoped by a request header keeps one such cursor
+ * per header value, created on the first request carrying it; requests without
+ * the header share the unscoped cursor.
+ *
+ * The scoped cursors are kept in an LRU cache of at most maxScopes entries, so
+ * clients sending ever new header values cannot grow it without bound. The
+ * cursor of the least recently used scope is dropped when it is full, and the
+ * scope starts over in the initial state on its next request.
+ *
+ * The state lives until the routes are reloaded or the scenario is reset.
+ */
+public final class ScenarioMachine {
+
+	private final String name;
+	private final String scopeHeader;
+	private final String initialState;
+	private final Map<String, Integer> stateIds = new HashMap<>();
+	private final List<String> stateNames = new ArrayList<>();
+	private final int initial;
+	private final AtomicInteger unscoped;
+	// null unless the scenario is scoped by a header
+	private final LruCache<String, AtomicInteger> scoped;
+
+	/**
+	 * @param name         the name routes share the scenario by, or null if it is local to a route
+	 * @param scopeHeader  the request header whose values have a state each, or null
+	 * @param initialState the state the scenario starts in
+	 * @param maxScopes    the number of header values whose state is kept
+	 */
+	public ScenarioMachine(String name, String scopeHeader, String initialState, int maxScopes) {
+		this.name = name;
+		this.scopeHeader = scopeHeader;
+		this.initialState = initialState;
+		this.initial = stateId(initialState);
+		this.unscoped = new AtomicInteger(initial);
+		this.scoped = scopeHeader != null ? new LruCache<>(maxScopes) : null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getScopeHeader() {
+		return scopeHeader;
+	}
+
+	public String getInitialState() {
+		return initialState;
+	}
+
+	/**
+	 * Returns the number of a state, numbering it if it is new. Only called while
+	 * the routes are loaded, before the scenario is published.
+	 */
+	int stateId(String state) {
+		Integer id = stateIds.get(state);
+		if (id == null) {
+			id = stateNames.size();
+			stateIds.put(state, id);
+			stateNames.add(state);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the cursor holding the state of a scope, the unscoped one if the
+	 * scenario is not scoped or the request has no value for its header.
+	 */
+	AtomicInteger cursor(String scope) {
+		if (scopeHeader == null || scope == null) {
+			return unscoped;
+		}
+		return scoped.computeIfAbsent(scope, key -> new AtomicInteger(initial));
+	}
+
+	/**
+	 * Returns the current state of a scope, without creating it.
+	 *
+	 * @param scope the value of the scope header, or null for the unscoped state
+	 */
+	public String getState(String scope) {
+		AtomicInteger cursor = scopeHeader != null && scope != null ? scoped.get(scope) : unscoped;
+		return stateNames.get(cursor != null ? cursor.get() : initial);
+	}
+
+	/**
+	 * Moves every scope back to the initial state.
+	 */
+	public void reset() {
+		unscoped.set(initial);
+		if (scoped != null) {
+			scoped.clear();
+		}
+	}
+}
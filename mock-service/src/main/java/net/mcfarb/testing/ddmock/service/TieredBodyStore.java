@@ -0,0 +1,229 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+import net.mcfarb.testing.ddmock.model.StorageStats;
+
+/**
+ * Keeps the in-memory response bodies of one or more MockRestProviders within a
+ * heap budget by spilling the least recently read ones to a local file.
+ *
+ * Spilled bodies are read back through memory-mapped regions of the spill file,
+ * so the operating system's page cache, rather than the Java heap, holds the
+ * cold part of the corpus. A spilled body is promoted back onto the heap once it
+ * has been read {@code promoteAfter} times, evicting the least recently read heap
+ * bodies to make room; bodies larger than a quarter of the budget are always
+ * served from the file, so one large fixture cannot flush every other body.
+ *
+ * The spill file is mapped in fixed-size chunks, and a body keeps its region
+ * once written, so a body evicted again is not written twice. Regions of bodies
+ * dropped by a reload are only reclaimed when the store is closed, which
+ * deletes the file. Element lists and file-backed bodies are not tiered.
+ */
+@Slf4j
+public class TieredBodyStore implements Closeable {
+
+	private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+	private static final int DEFAULT_PROMOTE_AFTER = 2;
+
+	private final long heapBudget;
+	private final Path directory;
+	private final int promoteAfter;
+
+	private final Set<PreparedBody> bodies = Collections.newSetFromMap(new IdentityHashMap<>());
+	private long heapBytes = 0;
+
+	private FileChannel channel;
+	private MappedByteBuffer chunk;
+	private long fileSize = 0;
+
+	private long evictions = 0;
+	private long promotions = 0;
+	private final LongAdder spilledReads = new LongAdder();
+
+	/**
+	 * @param heapBudget the number of body bytes kept on the heap
+	 * @param directory  the directory of the spill file, created on first spill
+	 */
+	public TieredBodyStore(long heapBudget, Path directory) {
+		this(heapBudget, directory, DEFAULT_PROMOTE_AFTER);
+	}
+
+	/**
+	 * @param heapBudget   the number of body bytes kept on the heap
+	 * @param directory    the directory of the spill file, created on first spill
+	 * @param promoteAfter the number of reads of a spilled body before it is moved back onto the heap
+	 */
+	public TieredBodyStore(long heapBudget, Path directory, int promoteAfter) {
+		if (heapBudget < 0) {
+			throw new IllegalArgumentException("Heap budget must not be negative, was " + heapBudget);
+		}
+		if (promoteAfter <= 0) {
+			throw new IllegalArgumentException("Promote after must be positive, was " + promoteAfter);
+		}
+		this.heapBudget = heapBudget;
+		this.directory = directory;
+		this.promoteAfter = promoteAfter;
+	}
+
+	/**
+	 * Replaces the bodies of a provider: the previous bodies of a reload are
+	 * released and the new ones are tiered, spilling bodies until the heap bytes
+	 * are within budget.
+	 *
+	 * @param previous the bodies registered by the provider's last load, may be null
+	 * @param current  the bodies of the provider's new load
+	 */
+	public synchronized void replace(Collection<PreparedBody> previous, Collection<PreparedBody> current) {
+		if (previous != null) {
+			for (PreparedBody body : previous) {
+				if (bodies.remove(body)) {
+					body.setStore(null);
+					if (!body.isSpilled()) {
+						heapBytes -= body.getContentLength();
+					}
+				}
+			}
+		}
+		for (PreparedBody body : current) {
+			if (body.getContentLength() > 0 && bodies.add(body)) {
+				body.setStore(this);
+				if (!body.isSpilled()) {
+					heapBytes += body.getContentLength();
+				}
+			}
+		}
+		fit(null);
+	}
+
+	/**
+	 * Called on every read of a spilled body; promotes the body once it has been
+	 * read often enough since it was spilled.
+	 */
+	public void spilledAccess(PreparedBody body) {
+		spilledReads.increment();
+		if (body.getAccessesSinceSpill() >= promoteAfter && body.getContentLength() <= heapBudget / 4) {
+			promote(body);
+		}
+	}
+
+	private synchronized void promote(PreparedBody body) {
+		if (!body.isSpilled() || !bodies.contains(body)) {
+			return;
+		}
+		body.restore();
+		heapBytes += body.getContentLength();
+		promotions++;
+		fit(body);
+	}
+
+	/**
+	 * Spills heap bodies, least recently read first, until the heap bytes are
+	 * within budget.
+	 *
+	 * @param keep a body that must stay on the heap, may be null
+	 */
+	private void fit(PreparedBody keep) {
+		if (heapBytes <= heapBudget) {
+			return;
+		}
+		List<PreparedBody> candidates = new ArrayList<>();
+		for (PreparedBody body : bodies) {
+			if (body != keep && !body.isSpilled()) {
+				candidates.add(body);
+			}
+		}
+		candidates.sort(Comparator.comparingLong(PreparedBody::getLastAccess)
+				.thenComparingLong(PreparedBody::getAccessCount));
+		for (PreparedBody body : candidates) {
+			if (heapBytes <= heapBudget) {
+				break;
+			}
+			try {
+				body.spill(this::write);
+			} catch (UncheckedIOException e) {
+				log.warn("Cannot spill response bodies to {}, keeping them on the heap", directory, e);
+				return;
+			}
+			heapBytes -= body.getContentLength();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Copies bytes to the end of the spill file and returns their mapped region.
+	 */
+	private ByteBuffer write(byte[] bytes) {
+		try {
+			if (channel == null) {
+				Files.createDirectories(directory);
+				Path file = Files.createTempFile(directory, "mock-bodies-", ".spill");
+				channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.DELETE_ON_CLOSE);
+			}
+			if (bytes.length > CHUNK_SIZE) {
+				// bodies larger than a chunk get a mapping of their own
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, bytes.length);
+				region.put(bytes);
+				fileSize += bytes.length;
+				return region.flip();
+			}
+			if (chunk == null || chunk.remaining() < bytes.length) {
+				chunk = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, CHUNK_SIZE);
+				fileSize += CHUNK_SIZE;
+			}
+			int position = chunk.position();
+			chunk.put(bytes);
+			return chunk.slice(position, bytes.length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public synchronized StorageStats getStats() {
+		int heapBodies = 0;
+		long spilledBytes = 0;
+		for (PreparedBody body : bodies) {
+			if (body.isSpilled()) {
+				spilledBytes += body.getContentLength();
+			} else {
+				heapBodies++;
+			}
+		}
+		return new StorageStats(heapBudget, heapBytes, heapBodies, spilledBytes, bodies.size() - heapBodies,
+				fileSize, evictions, promotions, spilledReads.sum());
+	}
+
+	/**
+	 * Releases every body and deletes the spill file. Spilled bodies stay
+	 * readable: their mapped regions remain valid until they are garbage collected.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		bodies.forEach(body -> body.setStore(null));
+		bodies.clear();
+		heapBytes = 0;
+		chunk = null;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+}
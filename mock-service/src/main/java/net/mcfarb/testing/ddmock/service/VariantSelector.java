@@ -0,0 +1,150 @@
+package net.mcfarb.testing.ddmock.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Selects one of the responses of a route by weight, in constant time whatever
+ * the number of variants.
+ *
+ * The weights are compiled once into an alias table (Vose's method): a request
+ * picks a column uniformly, and a biased coin then keeps the column's own
+ * variant or its alias. Both draws come from the ThreadLocalRandom, so
+ * selecting takes no lock.
+ *
+ * With a key, the two draws are taken from a hash of a request value instead
+ * ({@code path.name}, {@code query.name} or {@code header.name}), so the same
+ * value always gets the same variant while distinct values still follow the
+ * weights. A missing value hashes like an empty one.
+ */
+public final class VariantSelector {
+
+	private final List<Supplier<PreparedResponse>> responses;
+	private final double[] probability;
+	private final int[] alias;
+	// null to draw at random
+	private final RequestValue key;
+
+	/**
+	 * @param responses the response of each variant
+	 * @param weights   the weight of each variant, positive
+	 * @param key       the request value sticky selection hashes, or null to draw at random
+	 */
+	VariantSelector(List<Supplier<PreparedResponse>> responses, double[] weights, String key) {
+		this.responses = responses;
+		int n = weights.length;
+		this.probability = new double[n];
+		this.alias = new int[n];
+
+		double total = 0;
+		for (double weight : weights) {
+			total += weight;
+		}
+		// scaled so the average column holds exactly 1
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallCount = 0;
+		int largeCount = 0;
+		for (int i = 0; i < n; i++) {
+			scaled[i] = weights[i] * n / total;
+			if (scaled[i] < 1) {
+				small[smallCount++] = i;
+			} else {
+				large[largeCount++] = i;
+			}
+		}
+		while (smallCount > 0 && largeCount > 0) {
+			int less = small[--smallCount];
+			int more = large[--largeCount];
+			probability[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = (scaled[more] + scaled[less]) - 1;
+			if (scaled[more] < 1) {
+				small[smallCount++] = more;
+			} else {
+				large[largeCount++] = more;
+			}
+		}
+		// whatever is left is 1 up to rounding errors
+		while (largeCount > 0) {
+			probability[large[--largeCount]] = 1;
+		}
+		while (smallCount > 0) {
+			probability[small[--smallCount]] = 1;
+		}
+
+		this.key = key != null ? parseKey(key) : null;
+	}
+
+	/**
+	 * Checks that a key names a request value, e.g. path.id or header.X-User.
+	 *
+	 * @throws IllegalArgumentException if it does not
+	 */
+	public static void validateKey(String key) {
+		parseKey(key);
+	}
+
+	private static RequestValue parseKey(String key) {
+		RequestValue value = RequestValue.parse(key);
+		if (value == null) {
+			throw new IllegalArgumentException("variantKey must be path.name, query.name or header.name");
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the variant selected for a request.
+	 *
+	 * @param pathVariables the captured path variables
+	 * @param queryParams   the request's query parameters, may be null
+	 * @param headers       the request's headers, may be null
+	 */
+	public PreparedResponse select(Map<String, String> pathVariables, MultiValueMap<String, String> queryParams,
+			HttpHeaders headers) {
+		if (key == null) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			return responses.get(select(random.nextInt(probability.length), random.nextDouble())).get();
+		}
+		String value = key.resolve(pathVariables, queryParams, headers);
+		return responses.get(select(value != null ? value : "")).get();
+	}
+
+	/**
+	 * Returns the index of the variant a value hashes to. The high half of the
+	 * hash picks the column, the low half tosses the coin.
+	 */
+	private int select(String value) {
+		long hash = hash(value);
+		int column = (int) (((hash >>> 32) * probability.length) >>> 32);
+		return select(column, (hash & 0xFFFFFFFFL) * 0x1p-32);
+	}
+
+	private int select(int column, double coin) {
+		return coin < probability[column] ? column : alias[column];
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the characters of a value, with the MurmurHash3
+	 * finalizer so every bit of the result depends on every character. Unlike
+	 * String.hashCode it spreads short, similar values over the whole range.
+	 */
+	private static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb93fe53a87ebL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
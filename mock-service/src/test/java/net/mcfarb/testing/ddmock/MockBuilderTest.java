@@ -1,6 +1,8 @@
 package net.mcfarb.testing.ddmock;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.text.DateFormat;
@@ -90,6 +92,30 @@ public class MockBuilderTest implements TestParent {
         assertEquals(sampleDataMap.get(105L).getData2(), 5L);
     }
 
+    @Test
+    public void testLazyMockBuilder() throws Exception {
+        MockGeneratorInfo mockInfo = jsonProcessor
+                .buildMockInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+        mockProvider.setLazy(true);
+        mockProvider.setReleaseSource(true);
+        mockProvider.initialize(mockInfo);
+
+        // nothing is bound until a service returning the objects is requested
+        assertEquals(mockInfo.getMockObjects().size(), mockProvider.getUntouchedObjectCount());
+        assertNotNull(mockInfo.getMockObjects().get(0).getObjectValue());
+
+        SampleService sampleService = (SampleService) mockProvider.getBean("sampleService");
+        assertEquals(0, mockProvider.getUntouchedObjectCount());
+        assertNull(mockInfo.getMockObjects().get(0).getObjectValue());
+
+        SampleData mockedReturn1 = sampleService.getSomeData(new SampleArgClass(), "dummyArgument", 2L);
+        assertEquals(mockSampleReturn.getData1(), mockedReturn1.getData1());
+        assertEquals(mockSampleReturn2, sampleService.getSomeOtherDataNoArgs());
+        assertEquals(7, sampleService.getAListOfObjects(300).size(), "Size of list match");
+        assertEquals("mapData1", sampleService.getMapOfObjects(300).get(101L).getData1());
+    }
+
     @Test
     public void testBuildMockInfoObjectFromJson() throws Exception {
         MockGeneratorInfo mockGeneratorInfo = jsonProcessor
@@ -1,28 +1,90 @@
 package net.mcfarb.testing.ddmock;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.MultiValueMap;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import net.mcfarb.testing.ddmock.model.CacheStats;
+import net.mcfarb.testing.ddmock.model.Capacity;
+import net.mcfarb.testing.ddmock.model.Faults;
+import net.mcfarb.testing.ddmock.model.JournalStats;
+import net.mcfarb.testing.ddmock.model.Latency;
 import net.mcfarb.testing.ddmock.model.MockRestGeneratorInfo;
+import net.mcfarb.testing.ddmock.model.MockRestInfo;
 import net.mcfarb.testing.ddmock.model.MockRestMethodInfo;
+import net.mcfarb.testing.ddmock.model.Page;
+import net.mcfarb.testing.ddmock.model.Pagination;
+import net.mcfarb.testing.ddmock.model.ResourceInfo;
+import net.mcfarb.testing.ddmock.model.Scenario;
+import net.mcfarb.testing.ddmock.model.StorageStats;
+import net.mcfarb.testing.ddmock.model.StreamMode;
+import net.mcfarb.testing.ddmock.model.Throttle;
+import net.mcfarb.testing.ddmock.model.Variant;
 import net.mcfarb.testing.ddmock.sample.SampleData;
+import net.mcfarb.testing.ddmock.service.CapacityLimiter;
 import net.mcfarb.testing.ddmock.service.JsonProcessor;
+import net.mcfarb.testing.ddmock.service.LruCache;
 import net.mcfarb.testing.ddmock.service.MockRestProvider;
+import net.mcfarb.testing.ddmock.service.PreparedBody;
+import net.mcfarb.testing.ddmock.service.PreparedResponse;
+import net.mcfarb.testing.ddmock.service.ResourceStore;
+import net.mcfarb.testing.ddmock.service.ResourceStore.Operation;
+import net.mcfarb.testing.ddmock.service.ResourceStore.Result;
+import net.mcfarb.testing.ddmock.service.ResponseTemplate;
+import net.mcfarb.testing.ddmock.service.RouteMatch;
+import net.mcfarb.testing.ddmock.service.TieredBodyStore;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
 
 public class MockRestProviderTest {
 
@@ -115,6 +177,29 @@ public class MockRestProviderTest {
 		assertEquals("User 2", users.get(1).getData1());
 	}
 
+	@Test
+	public void testFindRestMethodQueryParameterVariants() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		// all required query parameters must match
+		MockRestMethodInfo method = mockRestProvider.findRestMethod("/api/v1/users", "GET",
+				Map.of("active", "false", "role", "admin"));
+		assertEquals("product1", method.getReturnId());
+
+		// routes without query parameters accept any query, declaration order is kept
+		method = mockRestProvider.findRestMethod("/api/v1/users", "GET", Map.of("active", "true", "role", "admin"));
+		assertEquals("userList", method.getReturnId());
+
+		method = mockRestProvider.findRestMethod("/api/v1/users", "GET", Map.of("active", "false"));
+		assertEquals("user1", method.getReturnId());
+
+		method = mockRestProvider.findRestMethod("/api/v1/users", "GET", null);
+		assertEquals("user1", method.getReturnId());
+	}
+
 	@Test
 	public void testFindRestMethodWithWildcard() throws Exception {
 		MockRestGeneratorInfo mockRestInfo = jsonProcessor
@@ -138,6 +223,36 @@ public class MockRestProviderTest {
 		assertEquals(999L, product.getData2());
 	}
 
+	@Test
+	public void testStaticSegmentPreferredOverWildcard() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		// /products/featured is declared after /products/* but the static segment wins
+		MockRestMethodInfo method = mockRestProvider.findRestMethod("/api/v1/products/featured", "GET", null);
+
+		assertNotNull(method);
+		assertEquals("/api/v1/products/featured", method.getPath());
+		assertEquals("userList", method.getReturnId());
+
+		// any other segment still falls through to the wildcard
+		method = mockRestProvider.findRestMethod("/api/v1/products/other", "GET", null);
+		assertEquals("/api/v1/products/*", method.getPath());
+	}
+
+	@Test
+	public void testFindRestMethodHttpMethodMismatch() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		assertNull(mockRestProvider.findRestMethod("/api/v1/users/123", "POST", null));
+		assertNotNull(mockRestProvider.findRestMethod("/api/v1/users/123", "get", null));
+	}
+
 	@Test
 	public void testFindRestMethodNotFound() throws Exception {
 		MockRestGeneratorInfo mockRestInfo = jsonProcessor
@@ -166,4 +281,1186 @@ public class MockRestProviderTest {
 		assertEquals(1, pathParams.size());
 		assertEquals("123", pathParams.get("userId"));
 	}
+
+	@Test
+	public void testMatchReturnsMethodAndPathVariables() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		RouteMatch match = mockRestProvider.match("/api/v1/users/123/", "GET", null);
+
+		assertNotNull(match);
+		assertEquals("/api/v1/users/{userId}", match.getMethodInfo().getPath());
+		assertEquals(Map.of("userId", "123"), match.getPathVariables());
+
+		// * segments match but are not captured
+		match = mockRestProvider.match("/api/v1/products/abc123", "GET", null);
+		assertNotNull(match);
+		assertTrue(match.getPathVariables().isEmpty());
+
+		assertNull(mockRestProvider.match("/api/v1/users/123/extra", "GET", null));
+	}
+
+	@Test
+	public void testMatchReturnsPreparedResponse() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		RouteMatch match = mockRestProvider.match("/api/v1/users/123", "GET", null);
+		PreparedResponse response = match.getResponse();
+
+		assertEquals(200, response.getStatus());
+		assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+		assertArrayEquals(objectMapper.writeValueAsBytes(mockRestProvider.getResponseObject(match.getMethodInfo())),
+				response.getBody().getBytes());
+		assertThrows(UnsupportedOperationException.class, () -> response.getHeaders().add("X-Test", "value"));
+
+		// bodies are rendered once per object and shared between routes
+		RouteMatch catchAll = mockRestProvider.match("/api/v1/users", "GET", null);
+		assertEquals("user1", catchAll.getMethodInfo().getReturnId());
+		assertSame(response.getBody(), catchAll.getResponse().getBody());
+	}
+
+	@Test
+	public void testETagRecomputedOnReload() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		PreparedBody user = mockRestProvider.match("/api/v1/users/123", "GET", null).getResponse().getBody();
+		PreparedBody product = mockRestProvider.match("/api/v1/products/abc", "GET", null).getResponse().getBody();
+		assertEquals("\"" + DigestUtils.md5DigestAsHex(user.getBytes()) + "\"", user.getETag());
+		assertNotEquals(user.getETag(), product.getETag());
+
+		// point the route at another object and reload
+		mockRestInfo.getMockRestApis().get(0).getMethods().get(0).setReturnId("product1");
+		mockRestProvider.reload(mockRestInfo);
+
+		PreparedBody reloaded = mockRestProvider.match("/api/v1/users/123", "GET", null).getResponse().getBody();
+		assertEquals(product.getETag(), reloaded.getETag());
+	}
+
+	@Test
+	public void testStreamedListResponse() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		RouteMatch match = mockRestProvider.match("/api/v1/users/stream", "GET", null);
+		List<?> users = (List<?>) mockRestProvider.getResponseObject(match.getMethodInfo());
+		PreparedResponse ndjson = match.getResponse();
+		assertEquals(MediaType.APPLICATION_NDJSON, ndjson.getHeaders().getContentType());
+		assertTrue(ndjson.getBody().hasElements());
+		assertEquals(StreamMode.NDJSON, ndjson.getStream());
+		assertEquals(List.of(objectMapper.writeValueAsString(users.get(0)) + "\n",
+				objectMapper.writeValueAsString(users.get(1)) + "\n"), elementsAsStrings(ndjson.getBody()));
+
+		PreparedResponse sse = mockRestProvider.match("/api/v1/users/events", "GET", null).getResponse();
+		assertEquals(MediaType.TEXT_EVENT_STREAM, sse.getHeaders().getContentType());
+		assertEquals("data:" + objectMapper.writeValueAsString(users.get(0)) + "\n\n",
+				elementsAsStrings(sse.getBody()).get(0));
+
+		// only List objects can be streamed
+		mockRestInfo.getMockRestApis().get(0).getMethods().get(0).setStream(StreamMode.NDJSON);
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+	}
+
+	@Test
+	public void testPaginatedListResponse() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		RouteMatch match = mockRestProvider.match("/api/v1/users/paged", "GET", Map.of("cursor", "abc"));
+		List<?> users = (List<?>) mockRestProvider.getResponseObject(match.getMethodInfo());
+		PreparedResponse response = match.getResponse();
+		Pagination pagination = response.getPagination();
+
+		// elements are serialized on their own, without stream framing
+		assertNull(response.getStream());
+		assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+		assertEquals(objectMapper.writeValueAsString(users.get(1)), elementsAsStrings(response.getBody()).get(1));
+
+		Page first = pagination.resolve(null, users.size());
+		assertEquals(0, first.getFrom());
+		assertEquals(1, first.getTo());
+		assertTrue(first.hasNext());
+
+		Page second = pagination.resolve(Map.of("cursor", pagination.encodeCursor(first.getNextOffset())),
+				users.size());
+		assertEquals(1, second.getFrom());
+		assertEquals(2, second.getTo());
+		assertFalse(second.hasNext());
+		assertEquals(0, second.getPreviousOffset());
+
+		// limits are capped at maxLimit
+		assertEquals(5, pagination.resolve(Map.of("limit", "50"), users.size()).getLimit());
+
+		assertThrows(IllegalArgumentException.class, () -> pagination.resolve(Map.of("cursor", "abc"), 2));
+		assertThrows(IllegalArgumentException.class, () -> pagination.resolve(Map.of("limit", "0"), 2));
+	}
+
+	@Test
+	public void testInvalidPagination() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		mockRestProvider.initialize(mockRestInfo);
+		Pagination pagination = mockRestInfo.getMockRestApis().stream()
+				.flatMap(api -> api.getMethods().stream())
+				.map(MockRestMethodInfo::getPagination)
+				.filter(Objects::nonNull)
+				.findFirst().orElseThrow();
+
+		// a limit of 0 would divide by zero when the last page is resolved
+		pagination.setMaxLimit(0);
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+		pagination.setMaxLimit(5);
+		pagination.setDefaultLimit(0);
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+		pagination.setDefaultLimit(1);
+		pagination.setLimitParameter(" ");
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+		pagination.setLimitParameter("cursor");
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+		pagination.setLimitParameter("limit");
+		mockRestProvider.reload(mockRestInfo);
+	}
+
+	@Test
+	public void testPageBounds() {
+		Page page = new Page(40, 20, 45);
+		assertEquals(40, page.getFrom());
+		assertEquals(45, page.getTo());
+		assertEquals(20, page.getPreviousOffset());
+		assertEquals(40, page.getLastOffset());
+
+		// offsets past the end give an empty page
+		page = new Page(60, 20, 45);
+		assertEquals(page.getFrom(), page.getTo());
+		assertFalse(page.hasNext());
+		assertEquals(25, page.getPreviousOffset());
+	}
+
+	@Test
+	public void testLatencyPercentiles() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		Latency latency = mockRestProvider.match("/api/v1/users/slow", "GET", null).getMethodInfo().getLatency();
+		assertEquals(Latency.Distribution.PERCENTILES, latency.getDistribution());
+
+		Random random = new Random(42);
+		long[] delays = new long[100_000];
+		for (int i = 0; i < delays.length; i++) {
+			delays[i] = latency.sampleNanos(random);
+		}
+		Arrays.sort(delays);
+		assertEquals(20, TimeUnit.NANOSECONDS.toMillis(delays[delays.length / 2]), 1);
+		assertEquals(50, TimeUnit.NANOSECONDS.toMillis(delays[delays.length * 9 / 10]), 2);
+		assertEquals(200, TimeUnit.NANOSECONDS.toMillis(delays[delays.length * 99 / 100]), 10);
+		assertTrue(delays[delays.length - 1] <= TimeUnit.MILLISECONDS.toNanos(300));
+	}
+
+	@Test
+	public void testLatencyDistributions() {
+		Random random = new Random(42);
+
+		Latency fixed = new Latency();
+		fixed.setValue(15.0);
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(15), fixed.sampleNanos(random));
+
+		Latency uniform = new Latency();
+		uniform.setDistribution(Latency.Distribution.fromValue("uniform"));
+		uniform.setMin(10.0);
+		uniform.setMax(20.0);
+		Latency logNormal = new Latency();
+		logNormal.setDistribution(Latency.Distribution.fromValue("log-normal"));
+		logNormal.setMean(100.0);
+		logNormal.setStdDev(50.0);
+		Latency normal = new Latency();
+		normal.setDistribution(Latency.Distribution.NORMAL);
+		normal.setMean(5.0);
+		normal.setStdDev(10.0);
+
+		double logNormalSum = 0;
+		for (int i = 0; i < 100_000; i++) {
+			long delay = uniform.sampleNanos(random);
+			assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(10) && delay <= TimeUnit.MILLISECONDS.toNanos(20));
+			// delays are never negative
+			assertTrue(normal.sampleNanos(random) >= 0);
+			logNormalSum += logNormal.sampleNanos(random);
+		}
+		assertEquals(100, logNormalSum / 100_000 / TimeUnit.MILLISECONDS.toNanos(1), 2);
+
+		Latency missingStdDev = new Latency();
+		missingStdDev.setDistribution(Latency.Distribution.NORMAL);
+		missingStdDev.setMean(5.0);
+		assertThrows(IllegalArgumentException.class, missingStdDev::validate);
+
+		Latency decreasing = new Latency();
+		decreasing.setDistribution(Latency.Distribution.PERCENTILES);
+		decreasing.setP50(50.0);
+		decreasing.setP90(20.0);
+		assertThrows(IllegalArgumentException.class, decreasing::validate);
+	}
+
+	@Test
+	public void testThrottleChunks() {
+		Throttle bandwidth = new Throttle();
+		bandwidth.setBytesPerSecond(1000L);
+		bandwidth.validate();
+		assertEquals(50, bandwidth.chunkBytes());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(50), bandwidth.intervalNanos());
+
+		// below one byte per tick, single bytes are paced further apart
+		bandwidth.setBytesPerSecond(4L);
+		assertEquals(1, bandwidth.chunkBytes());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(250), bandwidth.intervalNanos());
+
+		Throttle drip = new Throttle();
+		drip.setChunkSize(8);
+		drip.setIntervalMs(100L);
+		drip.validate();
+		assertEquals(8, drip.chunkBytes());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), drip.intervalNanos());
+
+		drip.setBytesPerSecond(1000L);
+		assertThrows(IllegalArgumentException.class, drip::validate);
+		assertThrows(IllegalArgumentException.class, new Throttle()::validate);
+	}
+
+	@Test
+	public void testFaultSelection() {
+		Faults faults = new Faults();
+		faults.setErrorRate(0.1);
+		faults.setResetRate(0.05);
+		faults.setTruncateRate(0.05);
+		faults.setHangRate(0.01);
+		faults.validate();
+
+		assertEquals(Faults.Fault.ERROR, faults.select(0));
+		assertEquals(Faults.Fault.ERROR, faults.select(0.099));
+		assertEquals(Faults.Fault.RESET, faults.select(0.1));
+		assertEquals(Faults.Fault.TRUNCATE, faults.select(0.19));
+		assertEquals(Faults.Fault.HANG, faults.select(0.205));
+		assertNull(faults.select(0.211));
+		assertNull(new Faults().select(0));
+
+		faults.setHangRate(0.9);
+		assertThrows(IllegalArgumentException.class, faults::validate);
+		faults.setHangRate(0);
+		faults.setErrorStatus(404);
+		assertThrows(IllegalArgumentException.class, faults::validate);
+	}
+
+	@Test
+	public void testCapacityRateLimit() {
+		Capacity capacity = new Capacity();
+		capacity.setRequestsPerSecond(2.0);
+		capacity.setBurst(3);
+		capacity.validate();
+		CapacityLimiter limiter = new CapacityLimiter(capacity);
+
+		// a full bucket admits a burst, then a token every 500ms
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limiter.tryTakeToken());
+		}
+		long wait = limiter.tryTakeToken();
+		assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(500));
+		assertEquals(1, limiter.retryAfterSeconds(wait));
+		assertEquals(1, limiter.getStats().getRateLimited());
+	}
+
+	@Test
+	public void testCapacityBulkhead() {
+		Capacity capacity = new Capacity();
+		capacity.setMaxInFlight(1);
+		capacity.setMaxQueue(1);
+		capacity.setQueueTimeoutMs(200);
+		capacity.setRetryAfterSeconds(5);
+		CapacityLimiter limiter = new CapacityLimiter(capacity);
+
+		CapacityLimiter.Permit first = limiter.acquire().block();
+		assertFalse(first.isRejected());
+		Mono<CapacityLimiter.Permit> queued = limiter.acquire().cache();
+		queued.subscribe();
+		assertEquals(1, limiter.getStats().getQueued());
+		// the queue is full
+		assertTrue(limiter.acquire().block().isRejected());
+		assertEquals(5, limiter.retryAfterSeconds(0));
+
+		// the queued request gets the permit of the first one
+		first.release();
+		first.release();
+		CapacityLimiter.Permit second = queued.block();
+		assertFalse(second.isRejected());
+		assertEquals(1, limiter.getStats().getInFlight());
+		assertEquals(0, limiter.getStats().getQueued());
+
+		// queued requests time out
+		StepVerifier.create(limiter.acquire())
+				.expectNextMatches(CapacityLimiter.Permit::isRejected)
+				.verifyComplete();
+		second.release();
+		assertEquals(0, limiter.getStats().getInFlight());
+		assertEquals(2, limiter.getStats().getRejected());
+	}
+
+	@Test
+	public void testCapacityQueueTimeoutDisposed() throws Exception {
+		AtomicInteger timeouts = new AtomicInteger();
+		Schedulers.onScheduleHook("queueTimeouts", task -> () -> {
+			timeouts.incrementAndGet();
+			task.run();
+		});
+		try {
+			Capacity capacity = new Capacity();
+			capacity.setMaxInFlight(1);
+			capacity.setMaxQueue(10);
+			capacity.setQueueTimeoutMs(100);
+			CapacityLimiter limiter = new CapacityLimiter(capacity);
+
+			// requests handed a permit, or cancelled, before their timeout leave no timer behind
+			CapacityLimiter.Permit first = limiter.acquire().block();
+			Mono<CapacityLimiter.Permit> queued = limiter.acquire().cache();
+			queued.subscribe();
+			limiter.acquire().subscribe().dispose();
+			first.release();
+			queued.block().release();
+			Thread.sleep(300);
+			assertEquals(0, timeouts.get());
+			assertEquals(0, limiter.getStats().getQueued());
+		} finally {
+			Schedulers.resetOnScheduleHook("queueTimeouts");
+		}
+	}
+
+	@Test
+	public void testRouteCapacityShared() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		Capacity capacity = new Capacity();
+		capacity.setMaxInFlight(10);
+		mockRestInfo.getMockRestApis().get(0).getMethods().get(0).setCapacity(capacity);
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		RouteMatch match = mockRestProvider.match("/api/v1/users/1", "GET", null);
+		assertNotNull(match.getRoute().getLimiter());
+		assertSame(match.getRoute().getLimiter(),
+				mockRestProvider.match("/api/v1/users/2", "GET", null).getRoute().getLimiter());
+		assertNull(mockRestProvider.match("/api/v1/users/slow", "GET", null).getRoute().getLimiter());
+
+		capacity.setMaxInFlight(0);
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+	}
+
+	@Test
+	public void testReturnIdSequence() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		MockRestMethodInfo job = new MockRestMethodInfo();
+		job.setPath("/jobs/{id}");
+		job.setHttpMethod("GET");
+		job.setReturnId("greeting, greeting, product1");
+		job.setStatusCode(202);
+		mockRestInfo.getMockRestApis().get(0).getMethods().add(job);
+
+		mockRestProvider.initialize(new LinkedHashMap<>(Map.of("billing", mockRestInfo)));
+
+		// the last response repeats
+		assertFalse(scenarioResponse("/api/v1/jobs/1", "GET", null).contains("Product ABC"));
+		assertFalse(scenarioResponse("/api/v1/jobs/1", "GET", null).contains("Product ABC"));
+		assertTrue(scenarioResponse("/api/v1/jobs/1", "GET", null).startsWith("202 "));
+		assertTrue(scenarioResponse("/api/v1/jobs/1", "GET", null).contains("Product ABC"));
+
+		mockRestProvider.resetScenarios();
+		assertFalse(scenarioResponse("/api/v1/jobs/1", "GET", null).contains("Product ABC"));
+
+		Scenario scenario = new Scenario();
+		scenario.setName("jobs");
+		job.setScenario(scenario);
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+	}
+
+	@Test
+	public void testScenarioScopedByHeader() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		Scenario.State pending = scenarioState("greeting", 202, null);
+		Scenario.State paid = scenarioState("product1", null, null);
+		MockRestMethodInfo status = scenarioRoute("/orders/{id}/status", "GET",
+				Map.of("Started", pending, "Paid", paid));
+		MockRestMethodInfo pay = scenarioRoute("/orders/{id}/pay", "POST",
+				Map.of("Started", scenarioState(null, 200, "Paid"), Scenario.ANY_STATE, scenarioState(null, 409, null)));
+		mockRestInfo.getMockRestApis().get(0).getMethods().addAll(List.of(status, pay));
+
+		mockRestProvider.initialize(mockRestInfo);
+
+		assertTrue(scenarioResponse("/api/v1/orders/1/status", "GET", "a").startsWith("202 "));
+		assertEquals("200 ", scenarioResponse("/api/v1/orders/1/pay", "POST", "a"));
+		assertEquals("409 ", scenarioResponse("/api/v1/orders/1/pay", "POST", "a"));
+		assertTrue(scenarioResponse("/api/v1/orders/1/status", "GET", "a").contains("Product ABC"));
+		assertEquals("Paid", mockRestProvider.getScenarioState("checkout", "a"));
+
+		// other clients, and requests without the header, have a state of their own
+		assertTrue(scenarioResponse("/api/v1/orders/1/status", "GET", "b").startsWith("202 "));
+		assertEquals("Started", mockRestProvider.getScenarioState("checkout", "b"));
+		assertEquals("Started", mockRestProvider.getScenarioState("checkout", null));
+		assertNull(mockRestProvider.getScenarioState("unknown", null));
+
+		// past maxScopes header values, the least recently seen one starts over
+		mockRestProvider.setScenarioMaxScopes(2);
+		mockRestProvider.reload(mockRestInfo);
+		assertEquals("200 ", scenarioResponse("/api/v1/orders/1/pay", "POST", "a"));
+		assertEquals("200 ", scenarioResponse("/api/v1/orders/1/pay", "POST", "b"));
+		assertEquals("Paid", mockRestProvider.getScenarioState("checkout", "a"));
+		scenarioResponse("/api/v1/orders/1/status", "GET", "c");
+		assertEquals("Paid", mockRestProvider.getScenarioState("checkout", "a"));
+		assertEquals("Started", mockRestProvider.getScenarioState("checkout", "b"));
+
+		// routes sharing a scenario must agree on its scope
+		pay.getScenario().setScopeHeader(null);
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+		pay.getScenario().setScopeHeader("X-Client");
+		pay.getScenario().setStates(null);
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+	}
+
+	@Test
+	public void testScenarioConcurrentPolling() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		MockRestMethodInfo job = new MockRestMethodInfo();
+		job.setPath("/jobs/{id}");
+		job.setHttpMethod("GET");
+		job.setReturnId("user1,greeting,product1");
+		mockRestInfo.getMockRestApis().get(0).getMethods().add(job);
+		mockRestProvider.initialize(mockRestInfo);
+		RouteMatch match = mockRestProvider.match("/api/v1/jobs/1", "GET", null);
+
+		int threads = 8;
+		int polls = 1000;
+		Map<PreparedBody, Integer> counts = new ConcurrentHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < polls; i++) {
+					PreparedBody body = match.getRoute().getScenario().advance(null).getBody();
+					counts.merge(body, 1, Integer::sum);
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		// every transition is taken exactly once, however the polls interleave
+		assertEquals(3, counts.size());
+		assertEquals(threads * polls - 2,
+				counts.values().stream().mapToInt(Integer::intValue).max().getAsInt());
+		assertEquals(2, counts.values().stream().filter(count -> count == 1).count());
+	}
+
+	@Test
+	public void testWeightedVariants() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		MockRestMethodInfo banner = variantRoute(null);
+		mockRestInfo.getMockRestApis().get(0).getMethods().add(banner);
+		mockRestProvider.initialize(mockRestInfo);
+
+		RouteMatch match = mockRestProvider.match("/api/v1/banners/1", "GET", null);
+		int draws = 200_000;
+		int products = 0;
+		for (int i = 0; i < draws; i++) {
+			PreparedResponse response = match.getRoute().getVariantSelector().select(null, null, null);
+			if (new String(response.getBody().getBytes(), StandardCharsets.UTF_8).contains("Product ABC")) {
+				assertEquals(201, response.getStatus());
+				products++;
+			} else {
+				assertEquals(200, response.getStatus());
+			}
+		}
+		assertEquals(0.1, (double) products / draws, 0.01);
+
+		banner.getVariants().get(0).setWeight(0);
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+		banner.getVariants().get(0).setWeight(9);
+		banner.setVariantKey("cookie.id");
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+	}
+
+	@Test
+	public void testHashedVariants() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		mockRestInfo.getMockRestApis().get(0).getMethods().add(variantRoute("path.id"));
+		mockRestProvider.initialize(mockRestInfo);
+
+		// the same id always gets the same variant, and the ids follow the weights
+		int ids = 20_000;
+		int products = 0;
+		for (int id = 0; id < ids; id++) {
+			RouteMatch match = mockRestProvider.match("/api/v1/banners/" + id, "GET", null);
+			PreparedResponse response = match.getRoute().getVariantSelector()
+					.select(match.getPathVariables(), null, null);
+			for (int i = 0; i < 3; i++) {
+				assertSame(response, match.getRoute().getVariantSelector()
+						.select(match.getPathVariables(), null, null));
+			}
+			if (response.getStatus() == 201) {
+				products++;
+			}
+		}
+		assertEquals(0.1, (double) products / ids, 0.02);
+	}
+
+	private MockRestMethodInfo variantRoute(String variantKey) {
+		Variant user = new Variant();
+		user.setReturnId("user1");
+		user.setWeight(9);
+		Variant product = new Variant();
+		product.setReturnId("product1");
+		product.setStatusCode(201);
+		MockRestMethodInfo method = new MockRestMethodInfo();
+		method.setPath("/banners/{id}");
+		method.setHttpMethod("GET");
+		method.setVariants(new ArrayList<>(List.of(user, product)));
+		method.setVariantKey(variantKey);
+		return method;
+	}
+
+	private MockRestMethodInfo scenarioRoute(String path, String httpMethod, Map<String, Scenario.State> states) {
+		Scenario scenario = new Scenario();
+		scenario.setName("checkout");
+		scenario.setScopeHeader("X-Client");
+		scenario.setStates(states);
+		MockRestMethodInfo method = new MockRestMethodInfo();
+		method.setPath(path);
+		method.setHttpMethod(httpMethod);
+		method.setScenario(scenario);
+		return method;
+	}
+
+	private static Scenario.State scenarioState(String returnId, Integer statusCode, String next) {
+		Scenario.State state = new Scenario.State();
+		state.setReturnId(returnId);
+		state.setStatusCode(statusCode);
+		state.setNext(next);
+		return state;
+	}
+
+	/**
+	 * Answers a request from the scenario of its route, as "status body".
+	 */
+	private String scenarioResponse(String path, String httpMethod, String scope) {
+		RouteMatch match = mockRestProvider.match(path, httpMethod, null);
+		PreparedResponse response = match.getRoute().getScenario().advance(scope);
+		if (response == null) {
+			response = match.getResponse();
+		}
+		return response.getStatus() + " "
+				+ (response.hasBody() ? new String(response.getBody().getBytes(), StandardCharsets.UTF_8) : "");
+	}
+
+	@Test
+	public void testResourceCrud() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = accountsResource();
+		mockRestProvider.initialize(mockRestInfo);
+
+		ResourceStore store = mockRestProvider.getResourceStore("/api/v1/accounts");
+		assertEquals(2, store.size());
+		RouteMatch list = mockRestProvider.match("/api/v1/accounts", "GET", null);
+		assertSame(store, list.getRoute().getResourceStore());
+		assertEquals(Operation.LIST, list.getRoute().getResourceOperation());
+		RouteMatch patch = mockRestProvider.match("/api/v1/accounts/2", "PATCH", null);
+		assertEquals(Operation.UPDATE, patch.getRoute().getResourceOperation());
+		assertEquals("2", patch.getPathVariables().get("id"));
+
+		// ids are generated past the highest seeded one
+		Result created = store.execute(Operation.CREATE, null, json("{\"data1\":\"User 3\"}"));
+		assertEquals(201, created.getStatus());
+		assertEquals("3", created.getId());
+		assertEquals(409, store.execute(Operation.CREATE, null, json("{\"data2\":1}")).getStatus());
+		assertEquals(400, store.execute(Operation.CREATE, null, json("[1]")).getStatus());
+
+		Result patched = store.execute(Operation.UPDATE, "3", json("{\"data1\":\"Patched\",\"data3\":null}"));
+		assertEquals(200, patched.getStatus());
+		assertEquals(objectMapper.readTree("{\"data1\":\"Patched\",\"data2\":3}"),
+				objectMapper.readTree(store.execute(Operation.GET, "3", null).getBody()));
+
+		// the id of the path wins over the one of the body
+		store.execute(Operation.REPLACE, "1", json("{\"data1\":\"Replaced\",\"data2\":9}"));
+		assertEquals(404, store.execute(Operation.GET, "9", null).getStatus());
+		assertEquals(404, store.execute(Operation.REPLACE, "9", json("{}")).getStatus());
+
+		assertEquals(204, store.execute(Operation.DELETE, "2", null).getStatus());
+		assertEquals(404, store.execute(Operation.DELETE, "2", null).getStatus());
+		assertEquals(objectMapper.readTree("[{\"data1\":\"Replaced\",\"data2\":1},{\"data1\":\"Patched\",\"data2\":3}]"),
+				objectMapper.readTree(store.execute(Operation.LIST, null, null).getBody()));
+
+		// reloading resets the collection to its seed
+		mockRestProvider.reload(mockRestInfo);
+		assertEquals(2, mockRestProvider.getResourceStore("/api/v1/accounts").size());
+
+		mockRestInfo.getMockRestApis().get(mockRestInfo.getMockRestApis().size() - 1).getResource().setSeedId("user1");
+		assertThrows(BeanInitializationException.class, () -> mockRestProvider.reload(mockRestInfo));
+	}
+
+	@Test
+	public void testResourceStoreMatchesHashMap() {
+		ResourceStore store = new ResourceStore(objectMapper, "id");
+		Map<String, String> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 50_000; i++) {
+			// a small key space, so probe chains are built up and torn down by deletes
+			String id = random.nextInt(10) == 0 ? "key" + random.nextInt(50) : String.valueOf(random.nextInt(2000) - 100);
+			String body = "{\"id\":\"" + id + "\",\"n\":" + i + "}";
+			switch (random.nextInt(4)) {
+				case 0 -> assertEquals(expected.putIfAbsent(id, body) == null ? 201 : 409,
+						store.execute(Operation.CREATE, null, json(body)).getStatus());
+				case 1 -> assertEquals(expected.remove(id) != null ? 204 : 404,
+						store.execute(Operation.DELETE, id, null).getStatus());
+				default -> {
+					Result result = store.execute(Operation.GET, id, null);
+					assertEquals(expected.containsKey(id) ? 200 : 404, result.getStatus());
+				}
+			}
+		}
+		assertEquals(expected.size(), store.size());
+	}
+
+	@Test
+	public void testResourceIdsOutOfLongRange() throws Exception {
+		ResourceStore store = new ResourceStore(objectMapper, "id");
+		assertEquals(404, store.execute(Operation.GET, "9999999999999999999", null).getStatus());
+		assertEquals(404, store.execute(Operation.DELETE, "-9223372036854775809", null).getStatus());
+
+		// out of range ids are named ids, the bounds of a long numeric ones
+		Result created = store.execute(Operation.CREATE, null, json("{\"id\":9999999999999999999}"));
+		assertEquals(201, created.getStatus());
+		assertEquals("9999999999999999999", created.getId());
+		assertEquals(200, store.execute(Operation.GET, "9999999999999999999", null).getStatus());
+		assertEquals(200,
+				store.execute(Operation.UPDATE, "9999999999999999999", json("{\"name\":\"big\"}")).getStatus());
+		assertEquals(201, store.execute(Operation.CREATE, null, json("{\"id\":9223372036854775807}")).getStatus());
+		assertEquals(201, store.execute(Operation.CREATE, null, json("{\"id\":-9223372036854775808}")).getStatus());
+		assertEquals(200, store.execute(Operation.GET, "9223372036854775807", null).getStatus());
+		assertEquals(200, store.execute(Operation.GET, "-9223372036854775808", null).getStatus());
+		assertEquals(objectMapper.readTree(
+				"[{\"id\":-9223372036854775808},{\"id\":9223372036854775807},{\"id\":\"9999999999999999999\",\"name\":\"big\"}]"),
+				objectMapper.readTree(store.execute(Operation.LIST, null, null).getBody()));
+		assertEquals(204, store.execute(Operation.DELETE, "9999999999999999999", null).getStatus());
+	}
+
+	@Test
+	public void testResourceStoreConcurrentWrites() throws Exception {
+		ResourceStore store = new ResourceStore(objectMapper, "id");
+		store.execute(Operation.CREATE, null, json("{\"id\":1,\"count\":0}"));
+		int threads = 8;
+		int writes = 2_000;
+		Set<String> ids = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < writes; i++) {
+						Result created = store.execute(Operation.CREATE, null, json("{\"name\":\"x\"}"));
+						ids.add(created.getId());
+						if (i % 2 == 0) {
+							store.execute(Operation.DELETE, created.getId(), null);
+						}
+						store.execute(Operation.UPDATE, "1", json("{\"last\":" + i + "}"));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// every generated id is unique and every odd write survived
+		assertEquals(threads * writes, ids.size());
+		assertEquals(1 + threads * writes / 2, store.size());
+		assertEquals(1 + threads * writes / 2,
+				objectMapper.readTree(store.execute(Operation.LIST, null, null).getBody()).size());
+	}
+
+	@Test
+	public void testResourcePersistedAcrossRestarts(@TempDir Path stateDirectory) throws Exception {
+		MockRestGeneratorInfo mockRestInfo = accountsResource();
+		mockRestProvider.setResourceStateDirectory(stateDirectory, 10_000);
+		mockRestProvider.initialize(mockRestInfo);
+		ResourceStore store = mockRestProvider.getResourceStore("/api/v1/accounts");
+		// the seed is snapshotted in the background
+		store.compact().get(5, TimeUnit.SECONDS);
+		store.execute(Operation.CREATE, null, json("{\"data1\":\"User 3\"}")).getCommitted().get(5, TimeUnit.SECONDS);
+		store.execute(Operation.UPDATE, "1", json("{\"data1\":\"Patched\"}")).getCommitted().get(5, TimeUnit.SECONDS);
+		store.execute(Operation.DELETE, "2", null).getCommitted().get(5, TimeUnit.SECONDS);
+		byte[] list = store.execute(Operation.LIST, null, null).getBody();
+		mockRestProvider.close();
+		assertTrue(Files.exists(stateDirectory.resolve("api_v1_accounts").resolve("snapshot.bin")));
+
+		// restarting restores the state instead of seeding, from the seed's snapshot and the log since
+		MockRestProvider restarted = restartedProvider(stateDirectory, mockRestInfo);
+		ResourceStore restored = restarted.getResourceStore("/api/v1/accounts");
+		assertEquals(objectMapper.readTree(list),
+				objectMapper.readTree(restored.execute(Operation.LIST, null, null).getBody()));
+		assertEquals(2, restored.getJournalStats().getRestoredElements());
+		assertEquals(3, restored.getJournalStats().getReplayedRecords());
+		assertEquals("4", restored.execute(Operation.CREATE, null, json("{}")).getId());
+
+		// a reload keeps the store of a persisted resource
+		restarted.reload(mockRestInfo);
+		assertSame(restored, restarted.getResourceStore("/api/v1/accounts"));
+		restored.compact().get(5, TimeUnit.SECONDS);
+		restarted.close();
+
+		MockRestProvider compacted = restartedProvider(stateDirectory, mockRestInfo);
+		assertEquals(3, compacted.getResourceStore("/api/v1/accounts").getJournalStats().getRestoredElements());
+		assertEquals(0, compacted.getResourceStore("/api/v1/accounts").getJournalStats().getReplayedRecords());
+		compacted.close();
+	}
+
+	@Test
+	public void testResourceJournalGroupCommitAndCompaction(@TempDir Path stateDirectory) throws Exception {
+		ResourceStore store = new ResourceStore(objectMapper, "id");
+		assertFalse(store.persistTo(stateDirectory, 500));
+		int threads = 8;
+		int writes = 1_000;
+		int named = 50;
+		for (int i = 0; i < named; i++) {
+			store.execute(Operation.CREATE, null, json("{\"id\":\"key" + i + "\"}"));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<List<Result>>> futures = new ArrayList<>();
+		try {
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					List<Result> results = new ArrayList<>();
+					for (int i = 0; i < writes; i++) {
+						String id = String.valueOf(i % 100);
+						results.add(store.execute(Operation.CREATE, null,
+								json("{\"name\":\"t" + thread + "-" + i + "\"}")));
+						results.add(store.execute(Operation.UPDATE, id, json("{\"by\":" + thread + "}")));
+						// named ids are journaled under their own locks, racing with snapshots as well
+						results.add(store.execute(Operation.UPDATE, "key" + (i % named),
+								json("{\"by\":" + thread + "}")));
+					}
+					return results;
+				}));
+			}
+			for (Future<List<Result>> future : futures) {
+				for (Result result : future.get(30, TimeUnit.SECONDS)) {
+					result.getCommitted().get(30, TimeUnit.SECONDS);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		byte[] list = store.execute(Operation.LIST, null, null).getBody();
+		JournalStats stats = store.getJournalStats();
+		store.close();
+
+		// concurrent mutations share syncs, and snapshots were taken while writing
+		assertTrue(stats.getCommits() < stats.getRecords(), stats.toString());
+		assertTrue(stats.getCompactions() > 0, stats.toString());
+
+		// a torn record at the end of the log is ignored
+		Path lastLog;
+		try (var logs = Files.list(stateDirectory)) {
+			lastLog = logs.filter(path -> path.getFileName().toString().endsWith(".log")).sorted()
+					.reduce((first, second) -> second).orElseThrow();
+		}
+		Files.write(lastLog, new byte[] { 0, 0, 0, 42, 1, 2 }, StandardOpenOption.APPEND);
+
+		ResourceStore restored = new ResourceStore(objectMapper, "id");
+		assertTrue(restored.persistTo(stateDirectory, 500));
+		assertEquals(threads * writes + named, restored.size());
+		assertEquals(objectMapper.readTree(list),
+				objectMapper.readTree(restored.execute(Operation.LIST, null, null).getBody()));
+		restored.close();
+	}
+
+	private MockRestGeneratorInfo accountsResource() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		MockRestInfo accounts = new MockRestInfo();
+		accounts.setBasePath("/api/v1/accounts");
+		ResourceInfo resource = new ResourceInfo();
+		resource.setSeedId("userList");
+		resource.setIdField("data2");
+		accounts.setResource(resource);
+		mockRestInfo.getMockRestApis().add(accounts);
+		return mockRestInfo;
+	}
+
+	private MockRestProvider restartedProvider(Path stateDirectory, MockRestGeneratorInfo mockRestInfo) {
+		MockRestProvider provider = new MockRestProvider();
+		provider.setJsonProcessor(jsonProcessor);
+		provider.setResourceStateDirectory(stateDirectory, 10_000);
+		provider.initialize(mockRestInfo);
+		return provider;
+	}
+
+	private static byte[] json(String json) {
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private List<String> elementsAsStrings(PreparedBody body) {
+		return body.getElements().stream().map(element -> new String(element, StandardCharsets.UTF_8)).toList();
+	}
+
+	@Test
+	public void testBodiesRenderedInAdditionalFormats() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		MediaType indented = MediaType.parseMediaType("application/vnd.indented+json");
+		ObjectMapper indentedMapper = objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT);
+		mockRestProvider.setFormatMappers(Map.of(indented, indentedMapper));
+		mockRestProvider.initialize(mockRestInfo);
+
+		RouteMatch match = mockRestProvider.match("/api/v1/users/1", "GET", null);
+		PreparedBody body = match.getResponse().getBody();
+		assertEquals(List.of(indented), List.copyOf(body.getFormats()));
+
+		PreparedBody format = body.getFormat(indented);
+		assertArrayEquals(indentedMapper.writeValueAsBytes(mockRestProvider.getResponseObject(match.getMethodInfo())),
+				format.getBytes());
+		assertNotEquals(body.getETag(), format.getETag());
+		assertEquals(objectMapper.readTree(body.getBytes()), objectMapper.readTree(format.getBytes()));
+
+		// file-backed bodies have no other formats
+		assertTrue(mockRestProvider.match("/api/v1/reports/latest", "GET", null).getResponse().getBody().getFormats()
+				.isEmpty());
+	}
+
+	@Test
+	public void testLazyObjectsBoundOnFirstUse() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		mockRestProvider.initialize(mockRestInfo);
+		byte[] expected = mockRestProvider.match("/api/v1/users/1", "GET", null).getResponse().getBody().getBytes();
+		assertEquals(0, mockRestProvider.getUntouchedObjectCount());
+
+		MockRestProvider lazyProvider = new MockRestProvider();
+		lazyProvider.setJsonProcessor(jsonProcessor);
+		lazyProvider.setLazy(true);
+		lazyProvider.setReleaseSource(true);
+		lazyProvider.initialize(mockRestInfo);
+
+		// file-backed objects need no binding, every other object is untouched
+		int objects = mockRestInfo.getMockObjects().size();
+		assertEquals(objects - 1, lazyProvider.getUntouchedObjectCount());
+		assertEquals(objects, lazyProvider.getObjectMap().size());
+		assertEquals(objects - 1, lazyProvider.getUntouchedObjectCount());
+
+		RouteMatch match = lazyProvider.match("/api/v1/users/1", "GET", null);
+		assertArrayEquals(expected, match.getResponse().getBody().getBytes());
+		assertEquals(objects - 2, lazyProvider.getUntouchedObjectCount());
+		assertEquals("John Doe", ((SampleData) lazyProvider.getResponseObject(match.getMethodInfo())).getData1());
+
+		// the source tree of a bound object is released, the others are kept
+		assertNull(mockRestInfo.getMockObjects().get(0).getObjectValue());
+		assertNotNull(mockRestInfo.getMockObjects().get(1).getObjectValue());
+	}
+
+	@Test
+	public void testBodiesSpilledBeyondHeapBudget(@TempDir Path spillDirectory) throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.initialize(mockRestInfo);
+		byte[] expected = mockRestProvider.match("/api/v1/users/1", "GET", null).getResponse().getBody().getBytes();
+
+		try (TieredBodyStore store = new TieredBodyStore(0, spillDirectory)) {
+			mockRestProvider.setBodyStore(store);
+			mockRestProvider.reload(mockRestInfo);
+
+			// nothing fits a budget of 0, so every body is read from the spill file
+			StorageStats stats = store.getStats();
+			assertEquals(0, stats.getHeapBytes());
+			assertEquals(0, stats.getHeapBodies());
+			assertTrue(stats.getSpilledBodies() > 0);
+			assertTrue(stats.getSpillFileSize() >= stats.getSpilledBytes());
+
+			PreparedBody body = mockRestProvider.match("/api/v1/users/1", "GET", null).getResponse().getBody();
+			assertTrue(body.isSpilled());
+			ByteBuffer content = body.getContent();
+			byte[] read = new byte[content.remaining()];
+			content.get(read);
+			assertArrayEquals(expected, read);
+			assertArrayEquals(expected, body.getBytes());
+			// bodies larger than a quarter of the budget are never promoted
+			assertTrue(body.isSpilled());
+			assertEquals(2, store.getStats().getSpilledReads());
+		}
+	}
+
+	@Test
+	public void testSpilledBodyPromotedAfterRepeatedReads(@TempDir Path spillDirectory) throws Exception {
+		PreparedBody first = new PreparedBody(new byte[100]);
+		PreparedBody second = new PreparedBody(new byte[100]);
+		PreparedBody third = new PreparedBody(new byte[100]);
+
+		try (TieredBodyStore store = new TieredBodyStore(400, spillDirectory, 2)) {
+			store.replace(null, List.of(first, second, third));
+			assertEquals(300, store.getStats().getHeapBytes());
+			assertFalse(first.isSpilled());
+
+			// reading the new bodies of a reload past the budget spills the least recently read
+			second.getContent();
+			third.getContent();
+			PreparedBody fourth = new PreparedBody(new byte[100]);
+			PreparedBody fifth = new PreparedBody(new byte[100]);
+			store.replace(null, List.of(fourth, fifth));
+			assertTrue(first.isSpilled() || fourth.isSpilled() || fifth.isSpilled());
+			assertFalse(second.isSpilled());
+			assertFalse(third.isSpilled());
+			assertEquals(400, store.getStats().getHeapBytes());
+			assertEquals(1, store.getStats().getEvictions());
+
+			PreparedBody spilled = first.isSpilled() ? first : fourth.isSpilled() ? fourth : fifth;
+			spilled.getContent();
+			assertTrue(spilled.isSpilled());
+			spilled.getContent();
+			assertFalse(spilled.isSpilled());
+			assertEquals(1, store.getStats().getPromotions());
+			assertEquals(2, store.getStats().getEvictions());
+			assertEquals(400, store.getStats().getHeapBytes());
+
+			// released bodies no longer count against the budget
+			store.replace(List.of(second, third), List.of());
+			assertEquals(200, store.getStats().getHeapBytes());
+		}
+	}
+
+	@Test
+	public void testTemplatedResponse() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		MediaType indented = MediaType.parseMediaType("application/vnd.indented+json");
+		mockRestProvider.setCompressionMinSize(0);
+		mockRestProvider.setFormatMappers(Map.of(indented, objectMapper.copy()));
+		mockRestProvider.initialize(mockRestInfo);
+
+		// bodies without placeholders are not templates
+		PreparedResponse plain = mockRestProvider.match("/api/v1/users/1", "GET", null).getResponse();
+		assertNull(plain.getTemplate());
+		assertFalse(plain.getBody().getEncodings().isEmpty());
+		assertFalse(plain.getBody().getFormats().isEmpty());
+
+		RouteMatch match = mockRestProvider.match("/api/v1/users/7/greeting", "GET", null);
+		ResponseTemplate template = match.getResponse().getTemplate();
+		assertNotNull(template);
+		// templates are rendered per request, so their body has no variants
+		assertTrue(match.getResponse().getBody().getEncodings().isEmpty());
+		assertTrue(match.getResponse().getBody().getFormats().isEmpty());
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("X-Client", "the \"web\" app");
+		MultiValueMap<String, String> query = MultiValueMap.fromSingleValue(Map.of("lang", "en"));
+		PreparedBody body = template.render(match.getPathVariables(), query, headers);
+		ObjectNode rendered = (ObjectNode) objectMapper.readTree(body.getBytes());
+		assertEquals("Hello 7 from the \"web\" app", rendered.get("message").asText());
+		assertEquals("en", rendered.get("lang").asText());
+		assertEquals("\"" + DigestUtils.md5DigestAsHex(body.getBytes()) + "\"", body.getETag());
+
+		// the same values reuse the memoized body, other values render another one
+		assertSame(body, template.render(match.getPathVariables(), query, headers));
+		PreparedBody other = template.render(match.getPathVariables(), null, null);
+		assertNotEquals(body.getETag(), other.getETag());
+		assertEquals("Hello 7 from ", objectMapper.readTree(other.getBytes()).get("message").asText());
+		assertEquals(1, template.getCacheStats().getHits());
+		assertEquals(2, template.getCacheStats().getMisses());
+	}
+
+	@Test
+	public void testTemplateCompilation() {
+		byte[] body = "{{path.id}}-{{ query.q }}/{{other.x}}/{{header.h".getBytes(StandardCharsets.UTF_8);
+		ResponseTemplate template = ResponseTemplate.compile(body, false, 1);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("h", "ignored");
+		// parameters with several values render their first one, as variant keys resolve them
+		PreparedBody rendered = template.render(Map.of("id", "a\"b"),
+				MultiValueMap.fromMultiValue(Map.of("q", List.of("c", "d"))), headers);
+		// unknown sources and unterminated placeholders stay literal, values are not escaped
+		assertEquals("a\"b-c/{{other.x}}/{{header.h", new String(rendered.getBytes(), StandardCharsets.UTF_8));
+
+		assertNull(ResponseTemplate.compile("{\"a\":{\"b\":1}}".getBytes(StandardCharsets.UTF_8), true, 1));
+	}
+
+	@Test
+	public void testFileBackedResponse() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.setCompressionMinSize(0);
+		mockRestProvider.initialize(mockRestInfo);
+
+		PreparedResponse response = mockRestProvider.match("/api/v1/reports/latest", "GET", null).getResponse();
+		PreparedBody body = response.getBody();
+		byte[] file = new ClassPathResource("mockdata/files/report.csv").getContentAsByteArray();
+
+		// the file is served as is, never deserialized or compressed
+		assertTrue(body.isFileBacked());
+		assertNull(body.getBytes());
+		assertTrue(body.getEncodings().isEmpty());
+		assertEquals(file.length, body.getContentLength());
+		assertEquals("\"" + DigestUtils.md5DigestAsHex(file) + "\"", body.getETag());
+		assertEquals(MediaType.parseMediaType("text/csv"), response.getHeaders().getContentType());
+		assertArrayEquals(file, body.getResource().getContentAsByteArray());
+	}
+
+	@Test
+	public void testFileBackedObjectMustExist() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		mockRestInfo.getMockObjects().get(mockRestInfo.getMockObjects().size() - 1).setFile("files/missing.csv");
+
+		assertThrows(RuntimeException.class, () -> mockRestProvider.initialize(mockRestInfo));
+	}
+
+	@Test
+	public void testCompressedResponseVariants() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		// disabled by default
+		mockRestProvider.initialize(mockRestInfo);
+		assertTrue(mockRestProvider.match("/api/v1/products/featured", "GET", null).getResponse().getBody()
+				.getEncodings().isEmpty());
+
+		mockRestProvider.setCompressionMinSize(64);
+		mockRestProvider.reload(mockRestInfo);
+
+		PreparedBody body = mockRestProvider.match("/api/v1/products/featured", "GET", null).getResponse().getBody();
+		assertEquals(List.of("gzip", "deflate"), List.copyOf(body.getEncodings()));
+		try (InputStream gzip = new GZIPInputStream(
+				new ByteArrayInputStream(body.getEncoding("gzip").getBytes()))) {
+			assertArrayEquals(body.getBytes(), gzip.readAllBytes());
+		}
+		try (InputStream deflate = new InflaterInputStream(
+				new ByteArrayInputStream(body.getEncoding("deflate").getBytes()))) {
+			assertArrayEquals(body.getBytes(), deflate.readAllBytes());
+		}
+
+		// every variant has its own strong ETag
+		assertNotEquals(body.getETag(), body.getEncoding("gzip").getETag());
+		assertNotEquals(body.getETag(), body.getEncoding("deflate").getETag());
+
+		// bodies below the minimum size are not compressed
+		mockRestProvider.setCompressionMinSize(Integer.MAX_VALUE);
+		mockRestProvider.reload(mockRestInfo);
+		body = mockRestProvider.match("/api/v1/products/featured", "GET", null).getResponse().getBody();
+		assertTrue(body.getEncodings().isEmpty());
+		assertNull(body.getEncoding("gzip"));
+	}
+
+	@Test
+	public void testRouteCache() throws Exception {
+		MockRestGeneratorInfo mockRestInfo = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+
+		mockRestProvider.setRouteCacheSize(10);
+		mockRestProvider.initialize(mockRestInfo);
+
+		Map<String, String> queryParams = new LinkedHashMap<>();
+		queryParams.put("active", "false");
+		queryParams.put("role", "admin");
+		assertEquals("product1", mockRestProvider.findRestMethod("/api/v1/users", "GET", queryParams).getReturnId());
+
+		// same query in a different order hits the cache
+		Map<String, String> reordered = new LinkedHashMap<>();
+		reordered.put("role", "admin");
+		reordered.put("active", "false");
+		assertEquals("product1", mockRestProvider.findRestMethod("/api/v1/users", "GET", reordered).getReturnId());
+
+		// misses are cached too
+		assertNull(mockRestProvider.findRestMethod("/api/v1/notfound", "GET", null));
+		assertNull(mockRestProvider.findRestMethod("/api/v1/notfound", "GET", null));
+
+		CacheStats stats = mockRestProvider.getRouteCacheStats();
+		assertEquals(2, stats.getHits());
+		assertEquals(2, stats.getMisses());
+		assertEquals(2, stats.getSize());
+		assertEquals(0.5, stats.getHitRatio());
+
+		// reloading the route table invalidates the cache
+		mockRestProvider.reload(mockRestInfo);
+		assertEquals(0, mockRestProvider.getRouteCacheStats().getSize());
+		RouteMatch match = mockRestProvider.match("/api/v1/users/7", "GET", null);
+		assertEquals("7", match.getPathVariables().get("userId"));
+	}
+
+	@Test
+	public void testLruCache() {
+		// small caches are a single segment, evicting the least recently used entry
+		LruCache<String, Integer> small = new LruCache<>(2);
+		small.put("a", 1);
+		small.put("b", 2);
+		assertEquals(1, small.get("a"));
+		small.put("c", 3);
+		assertNull(small.get("b"));
+		assertEquals(1, small.get("a"));
+		assertEquals(3, small.computeIfAbsent("c", key -> 4));
+		assertEquals(5, small.computeIfAbsent("d", key -> 5));
+		assertEquals(2, small.getStats().getSize());
+
+		// larger caches are split into segments whose sizes add up to the bound
+		LruCache<Integer, Integer> large = new LruCache<>(1000);
+		for (int i = 0; i < 10_000; i++) {
+			large.put(i, i);
+		}
+		CacheStats stats = large.getStats();
+		assertTrue(stats.getSize() <= 1000 && stats.getSize() > 900, "size " + stats.getSize());
+		assertEquals(1000, stats.getMaxSize());
+		assertEquals(9_999, large.get(9_999));
+		large.clear();
+		assertEquals(0, large.getStats().getSize());
+	}
+
+	@Test
+	public void testInitializeFromMultipleSources() throws Exception {
+		MockRestGeneratorInfo first = jsonProcessor
+				.buildMockRestInfoObjectFromJson("mockdata/" + this.getClass().getSimpleName());
+		MockRestGeneratorInfo second = jsonProcessor.buildMockRestInfoObjectFromStream(
+				getClass().getClassLoader().getResourceAsStream("mockdata/" + this.getClass().getSimpleName() + ".json"),
+				"second copy");
+		second.getMockRestApis().get(0).setBasePath("/api/v2");
+		((ObjectNode) second.getMockObjectById("user1").getObjectValue()).put("data1", "Jane Doe");
+
+		Map<String, MockRestGeneratorInfo> sources = new LinkedHashMap<>();
+		sources.put("first", first);
+		sources.put("second", second);
+		mockRestProvider.initialize(sources);
+
+		// both files define an object with id user1, each route returns its own file's object
+		MockRestMethodInfo method = mockRestProvider.findRestMethod("/api/v1/users/123", "GET", null);
+		assertEquals("first:user1", method.getReturnId());
+		assertEquals("John Doe", ((SampleData) mockRestProvider.getResponseObject(method)).getData1());
+
+		method = mockRestProvider.findRestMethod("/api/v2/users/123", "GET", null);
+		assertEquals("second:user1", method.getReturnId());
+		assertEquals("Jane Doe", ((SampleData) mockRestProvider.getResponseObject(method)).getData1());
+	}
 }